@@ -15,6 +15,7 @@ public class BSTNode<E extends Comparable<E>>
 	 private E data;
      private BSTNode<E> left;
      private BSTNode<E> right;
+     private int size; // number of nodes in the subtree rooted here
      
      /**
       * One parameter constructor for a node.
@@ -25,6 +26,7 @@ public class BSTNode<E extends Comparable<E>>
          // set references to null
          this.left = null;
          this.right = null;
+         this.size = 1;
      }
      
      /**
@@ -51,6 +53,16 @@ public class BSTNode<E extends Comparable<E>>
     	 return right;
      }
      
+     /**
+      * Getter method for the size of the subtree rooted at this node.
+      * The size is kept up to date by the setters for the subtrees,
+      * so children have to be linked before their parent (bottom-up).
+      * @return number of nodes in this subtree, including this node
+      */
+     public int getSize() {
+    	 return size;
+     }
+     
      /**
       * Setter method for this node's data.
       * @param new data to be stored in node
@@ -65,6 +77,7 @@ public class BSTNode<E extends Comparable<E>>
       */
      public void setLeft(BSTNode<E> left) {
     	 this.left = left;
+    	 updateSize();
      }
      
      /**
@@ -73,6 +86,12 @@ public class BSTNode<E extends Comparable<E>>
       */
      public void setRight(BSTNode<E> right) {
     	 this.right = right;
+    	 updateSize();
+     }
+     
+     // recompute the subtree size from the sizes of the children
+     private void updateSize() {
+    	 size = 1 + (left == null ? 0 : left.size) + (right == null ? 0 : right.size);
      }
      
      /** 
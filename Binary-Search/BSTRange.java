@@ -0,0 +1,156 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class provides a live view of a contiguous range of elements
+ * of a binary search tree, in the style of the subSet/headSet/tailSet
+ * views of java.util.NavigableSet. The view stores only its bounds;
+ * changes to the underlying tree are visible through it.
+ *
+ * The bounds are translated into in-order ranks using the subtree sizes
+ * kept in the nodes, so size() costs O(height) and iteration only visits
+ * the nodes inside the range (plus one path from the root to reach it).
+ */
+public class BSTRange<E extends Comparable<E>> implements Iterable<E> {
+
+	// private data fields
+	private final MyBST<E> tree;
+	private final E lo; // null means unbounded
+	private final boolean loInclusive;
+	private final E hi; // null means unbounded
+	private final boolean hiInclusive;
+
+	/**
+	 * Constructor for a range view. Use the headSet, tailSet and subSet
+	 * methods of MyBST rather than calling it directly.
+	 *
+	 * @param the tree that is viewed, the lower and upper bounds (null for
+	 * no bound) and whether each bound is part of the range
+	 */
+	BSTRange(MyBST<E> tree, E lo, boolean loInclusive, E hi, boolean hiInclusive) {
+		this.tree = tree;
+		this.lo = lo;
+		this.loInclusive = loInclusive;
+		this.hi = hi;
+		this.hiInclusive = hiInclusive;
+	}
+
+	// rank of the first element in the range
+	private int fromRank() {
+		return (lo == null) ? 0 : tree.rank(lo, !loInclusive);
+	}
+
+	// rank one past the last element in the range
+	private int toRank() {
+		return (hi == null) ? MyBST.sizeOf(tree.root) : tree.rank(hi, hiInclusive);
+	}
+
+	/**
+	 * Returns the number of elements in the range.
+	 *
+	 * @return number of elements of the tree that lie between the bounds
+	 */
+	public int size() {
+		return Math.max(0, toRank() - fromRank());
+	}
+
+	/**
+	 * Checks whether the range is empty.
+	 *
+	 * @return true if no element of the tree lies between the bounds
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Checks whether the given element lies in the range and is stored in the tree.
+	 *
+	 * @param Generic element e
+	 * @return true if the element is within the bounds and in the tree
+	 */
+	public boolean contains(E e) {
+		return inRange(e) && tree.contains(e);
+	}
+
+	private boolean inRange(E e) {
+		if (lo != null) {
+			int cmp = e.compareTo(lo);
+			if (cmp < 0 || (cmp == 0 && !loInclusive))
+				return false;
+		}
+		if (hi != null) {
+			int cmp = e.compareTo(hi);
+			if (cmp > 0 || (cmp == 0 && !hiInclusive))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Methods that return the lowest and the highest element in the range.
+	 *
+	 * @return Generic element E
+	 * @throws NoSuchElementException if the range is empty
+	 */
+	public E first() throws NoSuchElementException {
+		int from = fromRank();
+		if (from >= toRank())
+			throw new NoSuchElementException();
+		return tree.select(from);
+	}
+	public E last() throws NoSuchElementException {
+		int from = fromRank();
+		int to = toRank();
+		if (from >= to)
+			throw new NoSuchElementException();
+		return tree.select(to - 1);
+	}
+
+	/**
+	 * Returns an iterator over the range in ascending order.
+	 *
+	 * @return iterator over the elements between the bounds
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		return Spliterators.iterator(spliterator());
+	}
+
+	/**
+	 * Returns an iterator over the range in descending order.
+	 *
+	 * @return reverse iterator over the elements between the bounds
+	 */
+	public Iterator<E> descendingIterator() {
+		return tree.descendingIterator(fromRank(), toRank());
+	}
+
+	/**
+	 * Returns a sized spliterator over the range in ascending order.
+	 *
+	 * @return spliterator over the elements between the bounds
+	 */
+	@Override
+	public Spliterator<E> spliterator() {
+		int from = fromRank();
+		return tree.spliterator(from, Math.max(from, toRank()));
+	}
+
+	/**
+	 * Methods that return a sequential or parallel stream over the range.
+	 *
+	 * @return stream of the elements between the bounds
+	 */
+	public Stream<E> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+	public Stream<E> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+
+}
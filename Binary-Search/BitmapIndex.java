@@ -0,0 +1,120 @@
+/**
+ * This class indexes the low-cardinality columns of a TreeColumns store
+ * (status, health and borough) with one CompressedBitmap per value,
+ * holding the row ordinals that have that value. Counts for any
+ * combination of values are computed by intersecting and uniting the
+ * bitmaps word by word instead of scanning the rows.
+ */
+public class BitmapIndex {
+
+	// private data fields, one bitmap per code of TreeColumns.STATUS, HEALTH and BORO
+	// (the last borough bitmap holds the rows of TreeColumns.UNKNOWN_BORO)
+	private final CompressedBitmap[] status;
+	private final CompressedBitmap[] health;
+	private final CompressedBitmap[] boro;
+	private final CompressedBitmap all;
+
+	/**
+	 * Constructor that builds the bitmaps in one pass over the columns.
+	 *
+	 * @param the columns to be indexed
+	 */
+	public BitmapIndex(TreeColumns columns) {
+		status = create(TreeColumns.STATUS.length);
+		health = create(TreeColumns.HEALTH.length);
+		boro = create(TreeColumns.BORO.length + 1);
+		// row ordinals are added in ascending order, the fast path of CompressedBitmap.add
+		for (int r=0; r<columns.size; r++) {
+			status[columns.status[r]].add(r);
+			health[columns.health[r]].add(r);
+			boro[columns.boro[r]].add(r);
+		}
+		all = CompressedBitmap.range(columns.size);
+	}
+
+	private static CompressedBitmap[] create(int n) {
+		CompressedBitmap[] bitmaps = new CompressedBitmap[n];
+		for (int i=0; i<n; i++)
+			bitmaps[i] = new CompressedBitmap();
+		return bitmaps;
+	}
+
+	/**
+	 * Getter methods for the bitmap of one value (case insensitive).
+	 * An unknown value gets an empty bitmap. The returned bitmaps belong
+	 * to the index and must not be modified.
+	 *
+	 * @param string value of the field
+	 * @return bitmap of the rows with that value
+	 */
+	public CompressedBitmap getStatus(String value) {
+		return lookup(status, TreeColumns.STATUS, value);
+	}
+	public CompressedBitmap getHealth(String value) {
+		return lookup(health, TreeColumns.HEALTH, value);
+	}
+	public CompressedBitmap getBorough(String value) {
+		return lookup(boro, TreeColumns.BORO, value);
+	}
+	public CompressedBitmap getAll() {
+		return all;
+	}
+
+	// bitmaps by code, used by TreeFilter
+	CompressedBitmap[] getBitmaps(int column) {
+		return (column == 0) ? status : (column == 1) ? health : boro;
+	}
+
+	private static CompressedBitmap lookup(CompressedBitmap[] bitmaps, String[] table, String value) {
+		int code = TreeColumns.code(table, value);
+		return (code < 0) ? new CompressedBitmap() : bitmaps[code];
+	}
+
+	/**
+	 * Returns the number of rows that are located in the borough.
+	 *
+	 * @param string 'boroName' representing the borough's name (case insensitive)
+	 * @return number of trees in the borough, 0 for an unknown name
+	 */
+	public int getCountByBorough(String boroName) {
+		return getBorough(boroName).cardinality();
+	}
+
+	/**
+	 * Returns the number of rows with the given status, health and borough.
+	 * A null argument matches any value of that field.
+	 *
+	 * @param strings for status, health and borough (case insensitive), or null
+	 * @return number of trees that match all given values
+	 */
+	public int count(String statusValue, String healthValue, String boroName) {
+		CompressedBitmap result = null;
+		if (statusValue != null)
+			result = getStatus(statusValue);
+		if (healthValue != null)
+			result = (result == null) ? getHealth(healthValue) : result.and(getHealth(healthValue));
+		if (boroName != null) {
+			if (result == null)
+				return getCountByBorough(boroName);
+			return result.andCardinality(getBorough(boroName)); // last step only needs the count
+		}
+		return (result == null) ? all.cardinality() : result.cardinality();
+	}
+
+	/**
+	 * Returns an estimate of the memory used by all bitmaps.
+	 *
+	 * @return number of bytes held by the index
+	 */
+	public long sizeInBytes() {
+		long bytes = all.sizeInBytes();
+		for (CompressedBitmap b : status)
+			bytes += b.sizeInBytes();
+		for (CompressedBitmap b : health)
+			bytes += b.sizeInBytes();
+		for (CompressedBitmap b : boro)
+			bytes += b.sizeInBytes();
+		return bytes;
+	}
+
+}
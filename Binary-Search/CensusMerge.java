@@ -0,0 +1,309 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Scanner;
+import java.util.TreeMap;
+
+/**
+ * This class compares several tree censuses (e.g. 1995, 2005 and 2015)
+ * in a single pass. Every input must deliver its trees in the order of
+ * Tree.compareTo (species name, then tree id), as the in-order iterator
+ * of a TreeCollection does. The inputs are combined with a k-way merge on
+ * a priority queue that holds one tree per input, so the merge itself only
+ * keeps k trees in memory no matter how many rows the inputs have; the
+ * results are kept per species.
+ *
+ * A tree that appears with the same species and id in consecutive censuses
+ * is the same tree. Between census i-1 and census i a species
+ * gains the trees that only appear in census i, loses the trees that only
+ * appear in census i-1, and counts the trees present in both whose health
+ * changed.
+ */
+public class CensusMerge {
+
+	// private data fields
+	private String[] labels; // name of every input, e.g. the census year
+	private int[] totalCount; // number of trees in every input
+	private TreeMap<String, SpeciesDelta> species = new TreeMap<String, SpeciesDelta>();
+
+	/**
+	 * Constructor that prepares a merge of the given number of censuses.
+	 *
+	 * @param labels naming the inputs in chronological order
+	 */
+	public CensusMerge(String... labels) {
+		this.labels = labels.clone();
+		this.totalCount = new int[labels.length];
+	}
+
+	/**
+	 * Merges the inputs and accumulates the per-census counts and the
+	 * species-level deltas. Inputs are given in the same order as the labels.
+	 *
+	 * Inputs that hold a file (see sortedCsv) are closed when the merge ends,
+	 * whether it completes or fails.
+	 *
+	 * @param inputs sorted iterators over the trees of every census
+	 * @throws IllegalArgumentException if the number of inputs does not match
+	 * the labels, or if an input is not sorted
+	 */
+	public void merge(List<? extends Iterator<Tree>> inputs) throws IllegalArgumentException {
+		try {
+			mergeInputs(inputs);
+		}
+		finally {
+			for (Iterator<Tree> input : inputs) {
+				if (input instanceof SortedInput)
+					((SortedInput) input).close();
+			}
+		}
+	}
+
+	private void mergeInputs(List<? extends Iterator<Tree>> inputs) throws IllegalArgumentException {
+		int k = labels.length;
+		if (inputs.size() != k)
+			throw new IllegalArgumentException("Expected " + k + " inputs.");
+
+		// one head per input; ties are broken by input index
+		PriorityQueue<Head> heads = new PriorityQueue<Head>(Math.max(1, k));
+		for (int i=0; i<k; i++) {
+			Iterator<Tree> input = inputs.get(i);
+			if (input.hasNext())
+				heads.add(new Head(input.next(), i, input));
+		}
+
+		Tree[] group = new Tree[k]; // the same tree in every census, null if absent
+		while (!heads.isEmpty()) {
+			// take every head that holds the same (species, id) key
+			Head first = heads.poll();
+			Tree key = first.tree;
+			group[first.input] = first.tree;
+			advance(heads, first);
+			while (!heads.isEmpty() && heads.peek().tree.compareTo(key) == 0) {
+				Head same = heads.poll();
+				group[same.input] = same.tree;
+				advance(heads, same);
+			}
+			record(key, group);
+			for (int i=0; i<k; i++)
+				group[i] = null;
+		}
+	}
+
+	// move the head to the next tree of its input, checking the order
+	private static void advance(PriorityQueue<Head> heads, Head head) {
+		if (!head.rest.hasNext())
+			return;
+		Tree next = head.rest.next();
+		if (next.compareTo(head.tree) <= 0)
+			throw new IllegalArgumentException("Input " + head.input + " is not sorted at tree " + next.getId() + ".");
+		head.tree = next;
+		heads.add(head);
+	}
+
+	// add one merged tree to the counts
+	private void record(Tree key, Tree[] group) {
+		String name = key.getSpeciesName().toLowerCase();
+		SpeciesDelta delta = species.get(name);
+		if (delta == null) {
+			delta = new SpeciesDelta(labels.length);
+			species.put(name, delta);
+		}
+		for (int i=0; i<group.length; i++) {
+			if (group[i] != null) {
+				totalCount[i]++;
+				delta.count[i]++;
+			}
+		}
+		for (int i=1; i<group.length; i++) {
+			Tree before = group[i-1];
+			Tree after = group[i];
+			if (before == null && after != null)
+				delta.gained[i]++;
+			else if (before != null && after == null)
+				delta.lost[i]++;
+			else if (before != null && !before.getHealth().equalsIgnoreCase(after.getHealth()))
+				delta.healthChanged[i]++;
+		}
+	}
+
+	/**
+	 * Getter methods for the inputs of the merge.
+	 *
+	 * @param int input index, in the order of the labels
+	 * @return the number of inputs, and the label of an input
+	 */
+	public int getInputCount() {
+		return labels.length;
+	}
+	public String getLabel(int input) {
+		return labels[input];
+	}
+
+	/**
+	 * Returns the total number of trees in the census with the given index.
+	 *
+	 * @param int input index, in the order of the labels
+	 * @return number of trees in that census
+	 */
+	public int getTotalCount(int input) {
+		return totalCount[input];
+	}
+
+	/**
+	 * Returns all species seen in any of the censuses, in alphabetical order.
+	 *
+	 * @return collection of lower case species names
+	 */
+	public Collection<String> getSpecies() {
+		return species.keySet();
+	}
+
+	/**
+	 * Getter methods for the per-species results. Gains, losses and health
+	 * changes of input i are relative to input i-1 and are 0 for input 0.
+	 * Unknown species have a count of 0. Species names are case insensitive.
+	 *
+	 * @param string 'speciesName' and the input index
+	 * @return number of trees
+	 */
+	public int getCount(String speciesName, int input) {
+		SpeciesDelta delta = species.get(speciesName.toLowerCase());
+		return (delta == null) ? 0 : delta.count[input];
+	}
+	public int getGained(String speciesName, int input) {
+		SpeciesDelta delta = species.get(speciesName.toLowerCase());
+		return (delta == null) ? 0 : delta.gained[input];
+	}
+	public int getLost(String speciesName, int input) {
+		SpeciesDelta delta = species.get(speciesName.toLowerCase());
+		return (delta == null) ? 0 : delta.lost[input];
+	}
+	public int getHealthChanged(String speciesName, int input) {
+		SpeciesDelta delta = species.get(speciesName.toLowerCase());
+		return (delta == null) ? 0 : delta.healthChanged[input];
+	}
+
+	/**
+	 * Returns an input for the merge that streams a CSV file whose rows are
+	 * already sorted by species name and tree id. Rows are parsed one at a
+	 * time with NYCStreetTrees.parseLine; invalid rows are skipped. The
+	 * file stays open until the input is closed, which merge does.
+	 *
+	 * @param the file to be read
+	 * @return iterator over the valid trees of the file
+	 * @throws FileNotFoundException if the file cannot be opened
+	 */
+	public static SortedInput sortedCsv(File file) throws FileNotFoundException {
+		final Scanner in = new Scanner(file);
+		return new SortedInput() {
+			private Tree next = fetch();
+
+			private Tree fetch() {
+				while (in.hasNextLine()) {
+					Tree t = NYCStreetTrees.parseLine(in.nextLine());
+					if (t != null)
+						return t;
+				}
+				return null;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public Tree next() {
+				if (next == null)
+					throw new NoSuchElementException();
+				Tree t = next;
+				next = fetch();
+				return t;
+			}
+
+			@Override
+			public void close() {
+				next = null;
+				in.close();
+			}
+		};
+	}
+
+	/**
+	 * Input of the merge that holds an open file.
+	 */
+	public interface SortedInput extends Iterator<Tree>, Closeable {
+		@Override
+		void close(); // closing a Scanner does not throw
+	}
+
+	/**
+	 * Overrides the toString method to display the number of trees in
+	 * every census and the change from the previous one.
+	 *
+	 * @return a string with one line per census
+	 */
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+		for (int i=0; i<labels.length; i++) {
+			str.append(String.format("%-10s:%,10d", labels[i], totalCount[i]));
+			if (i > 0) {
+				int gained = 0, lost = 0, changed = 0;
+				for (SpeciesDelta delta : species.values()) {
+					gained += delta.gained[i];
+					lost += delta.lost[i];
+					changed += delta.healthChanged[i];
+				}
+				str.append(String.format("  (+%,d  -%,d  health changed %,d)", gained, lost, changed));
+			}
+			str.append("\n");
+		}
+		return str.toString();
+	}
+
+	/*
+	 * Current tree of one input together with the rest of that input.
+	 */
+	private static class Head implements Comparable<Head> {
+		private Tree tree;
+		private final int input;
+		private final Iterator<Tree> rest;
+
+		Head(Tree tree, int input, Iterator<Tree> rest) {
+			this.tree = tree;
+			this.input = input;
+			this.rest = rest;
+		}
+
+		@Override
+		public int compareTo(Head other) {
+			int cmp = tree.compareTo(other.tree);
+			return (cmp != 0) ? cmp : Integer.compare(input, other.input);
+		}
+	}
+
+	/*
+	 * Counts of one species, indexed by input.
+	 */
+	private static class SpeciesDelta {
+		private final int[] count;
+		private final int[] gained;
+		private final int[] lost;
+		private final int[] healthChanged;
+
+		SpeciesDelta(int k) {
+			count = new int[k];
+			gained = new int[k];
+			lost = new int[k];
+			healthChanged = new int[k];
+		}
+	}
+
+}
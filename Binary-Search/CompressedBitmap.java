@@ -0,0 +1,452 @@
+import java.util.Arrays;
+
+/**
+ * This class implements a compressed set of non-negative ints in the
+ * layout used by Roaring bitmaps. The 32-bit values are split into
+ * a 16-bit key (the high half) and a 16-bit low half; all values with
+ * the same key are stored in one container, which is either
+ *
+ *   - an array container: the sorted low halves, used while it holds
+ *     at most 4096 values (at most 8 KB), or
+ *   - a bitmap container: 1024 longs with one bit per low half (8 KB).
+ *
+ * Dense containers are combined a word at a time (AND/OR of longs plus
+ * Long.bitCount), sparse ones by merging or probing, so intersections and
+ * unions of large sets cost a few thousand word operations.
+ */
+public class CompressedBitmap {
+
+	// largest number of values kept in an array container
+	private static final int ARRAY_MAX = 4096;
+	private static final int WORDS = 1024; // longs in a bitmap container
+
+	// private data fields: containers sorted by key
+	private char[] keys = new char[4];
+	private Container[] containers = new Container[4];
+	private int count; // number of containers in use
+
+	/**
+	 * A default constructor that creates an empty set.
+	 */
+	public CompressedBitmap() {
+	}
+
+	/**
+	 * Returns the set of all values from 0 to n-1.
+	 *
+	 * @param int n representing the number of values
+	 * @return bitmap holding 0 .. n-1
+	 */
+	public static CompressedBitmap range(int n) {
+		CompressedBitmap b = new CompressedBitmap();
+		for (int start=0; start<n; start+=1<<16) {
+			int len = Math.min(1 << 16, n - start);
+			long[] words = new long[WORDS];
+			for (int w=0; w<len/64; w++)
+				words[w] = -1L;
+			if (len % 64 != 0)
+				words[len/64] = (1L << (len % 64)) - 1;
+			b.append((char) (start >>> 16), normalize(new BitmapContainer(words, len)));
+		}
+		return b;
+	}
+
+	/**
+	 * Adds a value to the set. Adding values in ascending order is the
+	 * fastest, since the last container is found without a search.
+	 *
+	 * @param int value, cannot be negative
+	 * @throws IllegalArgumentException if value is negative
+	 */
+	public void add(int value) throws IllegalArgumentException {
+		if (value < 0)
+			throw new IllegalArgumentException("Negative value.");
+		char key = (char) (value >>> 16);
+		char low = (char) value;
+		int i;
+		if (count > 0 && keys[count - 1] == key)
+			i = count - 1;
+		else {
+			i = find(key);
+			if (i < 0) {
+				i = -i - 1;
+				insert(i, key, new ArrayContainer());
+			}
+		}
+		containers[i] = containers[i].add(low);
+	}
+
+	/**
+	 * Checks whether the set contains a value.
+	 *
+	 * @param int value
+	 * @return true if the value was added to the set
+	 */
+	public boolean contains(int value) {
+		if (value < 0)
+			return false;
+		int i = find((char) (value >>> 16));
+		return i >= 0 && containers[i].contains((char) value);
+	}
+
+	/**
+	 * Returns the number of values in the set.
+	 *
+	 * @return cardinality of the set
+	 */
+	public int cardinality() {
+		int card = 0;
+		for (int i=0; i<count; i++)
+			card += containers[i].cardinality();
+		return card;
+	}
+
+	/**
+	 * Methods that return the intersection, the union and the difference
+	 * (values of this set that are not in the other) of two sets.
+	 *
+	 * @param the other set
+	 * @return a new set; neither input is modified
+	 */
+	public CompressedBitmap and(CompressedBitmap other) {
+		CompressedBitmap result = new CompressedBitmap();
+		int i = 0, j = 0;
+		while (i < count && j < other.count) {
+			if (keys[i] < other.keys[j])
+				i++;
+			else if (keys[i] > other.keys[j])
+				j++;
+			else {
+				Container c = and(containers[i], other.containers[j]);
+				if (c.cardinality() > 0)
+					result.append(keys[i], c);
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+	public CompressedBitmap or(CompressedBitmap other) {
+		CompressedBitmap result = new CompressedBitmap();
+		int i = 0, j = 0;
+		while (i < count || j < other.count) {
+			if (j == other.count || (i < count && keys[i] < other.keys[j]))
+				result.append(keys[i], containers[i++].copy());
+			else if (i == count || keys[i] > other.keys[j])
+				result.append(other.keys[j], other.containers[j++].copy());
+			else
+				result.append(keys[i], or(containers[i++], other.containers[j++]));
+		}
+		return result;
+	}
+	public CompressedBitmap andNot(CompressedBitmap other) {
+		CompressedBitmap result = new CompressedBitmap();
+		int j = 0;
+		for (int i=0; i<count; i++) {
+			while (j < other.count && other.keys[j] < keys[i])
+				j++;
+			Container c = (j < other.count && other.keys[j] == keys[i])
+					? andNot(containers[i], other.containers[j]) : containers[i].copy();
+			if (c.cardinality() > 0)
+				result.append(keys[i], c);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the size of the intersection without building it.
+	 *
+	 * @param the other set
+	 * @return number of values in both sets
+	 */
+	public int andCardinality(CompressedBitmap other) {
+		int card = 0;
+		int i = 0, j = 0;
+		while (i < count && j < other.count) {
+			if (keys[i] < other.keys[j])
+				i++;
+			else if (keys[i] > other.keys[j])
+				j++;
+			else
+				card += andCardinality(containers[i++], other.containers[j++]);
+		}
+		return card;
+	}
+
+	/**
+	 * Returns an estimate of the memory used by the set.
+	 *
+	 * @return number of bytes held by the containers and the key arrays
+	 */
+	public long sizeInBytes() {
+		long bytes = 2L * keys.length + 8L * containers.length;
+		for (int i=0; i<count; i++)
+			bytes += containers[i].sizeInBytes();
+		return bytes;
+	}
+
+	// index of the container with the key, or -(insertion point)-1
+	private int find(char key) {
+		int lo = 0, hi = count - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keys[mid] < key)
+				lo = mid + 1;
+			else if (keys[mid] > key)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -(lo + 1);
+	}
+
+	private void insert(int i, char key, Container c) {
+		if (count == keys.length) {
+			keys = Arrays.copyOf(keys, 2 * count);
+			containers = Arrays.copyOf(containers, 2 * count);
+		}
+		System.arraycopy(keys, i, keys, i + 1, count - i);
+		System.arraycopy(containers, i, containers, i + 1, count - i);
+		keys[i] = key;
+		containers[i] = c;
+		count++;
+	}
+
+	// add a container with a key larger than all others
+	private void append(char key, Container c) {
+		insert(count, key, c);
+	}
+
+
+	// ============== CONTAINERS ==============
+
+	private static abstract class Container {
+		abstract Container add(char low); // may return a converted container
+		abstract boolean contains(char low);
+		abstract int cardinality();
+		abstract long sizeInBytes();
+		abstract Container copy(); // containers are mutable, results never share them
+	}
+
+	private static class ArrayContainer extends Container {
+		private char[] values;
+		private int n;
+
+		ArrayContainer() {
+			values = new char[4];
+		}
+
+		ArrayContainer(char[] values, int n) {
+			this.values = values;
+			this.n = n;
+		}
+
+		@Override
+		Container add(char low) {
+			int i = (n > 0 && values[n - 1] < low) ? -(n + 1) : Arrays.binarySearch(values, 0, n, low);
+			if (i >= 0)
+				return this; // already present
+			if (n == ARRAY_MAX)
+				return toBitmap().add(low);
+			i = -i - 1;
+			if (n == values.length)
+				values = Arrays.copyOf(values, Math.min(ARRAY_MAX, 2 * n));
+			System.arraycopy(values, i, values, i + 1, n - i);
+			values[i] = low;
+			n++;
+			return this;
+		}
+
+		@Override
+		boolean contains(char low) {
+			return Arrays.binarySearch(values, 0, n, low) >= 0;
+		}
+
+		@Override
+		int cardinality() {
+			return n;
+		}
+
+		@Override
+		long sizeInBytes() {
+			return 16 + 2L * values.length;
+		}
+
+		@Override
+		Container copy() {
+			return new ArrayContainer(Arrays.copyOf(values, values.length), n);
+		}
+
+		BitmapContainer toBitmap() {
+			long[] words = new long[WORDS];
+			for (int i=0; i<n; i++)
+				words[values[i] >>> 6] |= 1L << values[i];
+			return new BitmapContainer(words, n);
+		}
+	}
+
+	private static class BitmapContainer extends Container {
+		private final long[] words;
+		private int card;
+
+		BitmapContainer(long[] words, int card) {
+			this.words = words;
+			this.card = card;
+		}
+
+		@Override
+		Container add(char low) {
+			long bit = 1L << low;
+			if ((words[low >>> 6] & bit) == 0) {
+				words[low >>> 6] |= bit;
+				card++;
+			}
+			return this;
+		}
+
+		@Override
+		boolean contains(char low) {
+			return (words[low >>> 6] & (1L << low)) != 0;
+		}
+
+		@Override
+		int cardinality() {
+			return card;
+		}
+
+		@Override
+		long sizeInBytes() {
+			return 16 + 8L * WORDS;
+		}
+
+		@Override
+		Container copy() {
+			return new BitmapContainer(words.clone(), card);
+		}
+
+		ArrayContainer toArray() {
+			char[] values = new char[Math.max(1, card)];
+			int n = 0;
+			for (int w=0; w<WORDS; w++) {
+				long word = words[w];
+				while (word != 0) {
+					values[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return new ArrayContainer(values, n);
+		}
+	}
+
+	// use the smaller representation for the number of values
+	private static Container normalize(BitmapContainer c) {
+		return (c.card <= ARRAY_MAX) ? c.toArray() : c;
+	}
+
+	private static Container and(Container a, Container b) {
+		if (a instanceof BitmapContainer && b instanceof BitmapContainer) {
+			long[] x = ((BitmapContainer) a).words, y = ((BitmapContainer) b).words;
+			long[] words = new long[WORDS];
+			int card = 0;
+			for (int w=0; w<WORDS; w++) {
+				words[w] = x[w] & y[w];
+				card += Long.bitCount(words[w]);
+			}
+			return normalize(new BitmapContainer(words, card));
+		}
+		if (a instanceof BitmapContainer) { // make a the array container
+			Container t = a;
+			a = b;
+			b = t;
+		}
+		ArrayContainer arr = (ArrayContainer) a;
+		char[] values = new char[Math.max(1, arr.n)];
+		int n = 0;
+		if (b instanceof BitmapContainer) {
+			for (int i=0; i<arr.n; i++) {
+				if (b.contains(arr.values[i]))
+					values[n++] = arr.values[i];
+			}
+		}
+		else {
+			ArrayContainer other = (ArrayContainer) b;
+			int i = 0, j = 0;
+			while (i < arr.n && j < other.n) {
+				if (arr.values[i] < other.values[j])
+					i++;
+				else if (arr.values[i] > other.values[j])
+					j++;
+				else {
+					values[n++] = arr.values[i++];
+					j++;
+				}
+			}
+		}
+		return new ArrayContainer(values, n);
+	}
+
+	private static int andCardinality(Container a, Container b) {
+		if (a instanceof BitmapContainer && b instanceof BitmapContainer) {
+			long[] x = ((BitmapContainer) a).words, y = ((BitmapContainer) b).words;
+			int card = 0;
+			for (int w=0; w<WORDS; w++)
+				card += Long.bitCount(x[w] & y[w]);
+			return card;
+		}
+		return and(a, b).cardinality();
+	}
+
+	private static Container or(Container a, Container b) {
+		if (a instanceof ArrayContainer && b instanceof ArrayContainer
+				&& a.cardinality() + b.cardinality() <= ARRAY_MAX) {
+			ArrayContainer x = (ArrayContainer) a, y = (ArrayContainer) b;
+			char[] values = new char[Math.max(1, x.n + y.n)];
+			int i = 0, j = 0, n = 0;
+			while (i < x.n || j < y.n) {
+				if (j == y.n || (i < x.n && x.values[i] < y.values[j]))
+					values[n++] = x.values[i++];
+				else if (i == x.n || x.values[i] > y.values[j])
+					values[n++] = y.values[j++];
+				else {
+					values[n++] = x.values[i++];
+					j++;
+				}
+			}
+			return new ArrayContainer(values, n);
+		}
+		long[] x = bitmapOf(a).words, y = bitmapOf(b).words;
+		long[] words = new long[WORDS];
+		int card = 0;
+		for (int w=0; w<WORDS; w++) {
+			words[w] = x[w] | y[w];
+			card += Long.bitCount(words[w]);
+		}
+		return new BitmapContainer(words, card);
+	}
+
+	private static Container andNot(Container a, Container b) {
+		if (a instanceof BitmapContainer) {
+			long[] x = ((BitmapContainer) a).words, y = bitmapOf(b).words;
+			long[] words = new long[WORDS];
+			int card = 0;
+			for (int w=0; w<WORDS; w++) {
+				words[w] = x[w] & ~y[w];
+				card += Long.bitCount(words[w]);
+			}
+			return normalize(new BitmapContainer(words, card));
+		}
+		ArrayContainer arr = (ArrayContainer) a;
+		char[] values = new char[Math.max(1, arr.n)];
+		int n = 0;
+		for (int i=0; i<arr.n; i++) {
+			if (!b.contains(arr.values[i]))
+				values[n++] = arr.values[i];
+		}
+		return new ArrayContainer(values, n);
+	}
+
+	private static BitmapContainer bitmapOf(Container c) {
+		return (c instanceof BitmapContainer) ? (BitmapContainer) c : ((ArrayContainer) c).toBitmap();
+	}
+
+}
@@ -0,0 +1,132 @@
+/**
+ * This class implements a Count-Min sketch, an approximate frequency table
+ * for strings that uses a fixed amount of memory no matter how many keys
+ * are counted. Every key is counted in one cell of each of depth rows of
+ * width counters, chosen by a hash of the key, and its estimate is the
+ * smallest of those cells.
+ *
+ * Estimates never undercount. With probability at least 1 - delta they
+ * overcount by at most epsilon * N, where N is the total of all counts added,
+ * for width = e / epsilon and depth = ln(1 / delta).
+ */
+public class CountMinSketch {
+
+	// private data fields
+	private final int width;
+	private final int depth;
+	private final long[] counts; // depth rows of width counters, row after row
+	private long total;
+
+	/**
+	 * Constructor for a sketch with the given error bound.
+	 *
+	 * @param double epsilon (relative overcount) and double delta (probability
+	 * that an estimate exceeds the bound), both between 0 and 1
+	 * @throws IllegalArgumentException if epsilon or delta is out of range
+	 */
+	public CountMinSketch(double epsilon, double delta) throws IllegalArgumentException {
+		if (!(epsilon > 0 && epsilon < 1) || !(delta > 0 && delta < 1))
+			throw new IllegalArgumentException("Epsilon and delta must be between 0 and 1.");
+		width = (int) Math.ceil(Math.E / epsilon);
+		depth = (int) Math.ceil(Math.log(1 / delta));
+		counts = new long[width * depth];
+	}
+
+	/**
+	 * Counts one occurrence of a key.
+	 *
+	 * @param the key, cannot be null
+	 */
+	public void add(String key) {
+		add(key, 1);
+	}
+
+	/**
+	 * Counts several occurrences of a key.
+	 *
+	 * @param the key, cannot be null, and the number of occurrences
+	 * @throws IllegalArgumentException if count is negative
+	 */
+	public void add(String key, long count) throws IllegalArgumentException {
+		if (count < 0)
+			throw new IllegalArgumentException("Count cannot be negative.");
+		long h = hash(key);
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32);
+		// the cells of the rows are derived from two halves of one hash (h1 + i*h2)
+		for (int i=0; i<depth; i++)
+			counts[i * width + cell(h1, h2, i)] += count;
+		total += count;
+	}
+
+	/**
+	 * Returns the estimated number of occurrences of a key.
+	 *
+	 * @param the key, cannot be null
+	 * @return an estimate that is never below the true count
+	 */
+	public long estimate(String key) {
+		long h = hash(key);
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32);
+		long min = Long.MAX_VALUE;
+		for (int i=0; i<depth; i++)
+			min = Math.min(min, counts[i * width + cell(h1, h2, i)]);
+		return min;
+	}
+
+	private int cell(int h1, int h2, int row) {
+		return ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+	}
+
+	/**
+	 * Getter methods for the parameters of the sketch.
+	 *
+	 * @return the relative error epsilon, the failure probability delta,
+	 * the total of all counts added, and the overcount bound epsilon * total
+	 */
+	public double getEpsilon() {
+		return Math.E / width;
+	}
+	public double getDelta() {
+		return Math.exp(-depth);
+	}
+	public long getTotal() {
+		return total;
+	}
+	public long getErrorBound() {
+		return (long) Math.ceil(getEpsilon() * total);
+	}
+
+	/**
+	 * Returns the memory used by the counters.
+	 *
+	 * @return number of bytes
+	 */
+	public long sizeInBytes() {
+		return 8L * counts.length;
+	}
+
+	/**
+	 * Returns a 64-bit hash of a string: FNV-1a over the characters followed
+	 * by the finalizer of MurmurHash3, which spreads the bits of short keys
+	 * over the whole word. Also used by HyperLogLog.
+	 *
+	 * @param the string to be hashed
+	 * @return the hash
+	 */
+	static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (int i=0; i<key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
@@ -0,0 +1,715 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * This class keeps a TreeCollection in a directory so that it survives a
+ * restart. Every add and remove that changes the collection is appended to
+ * a write-ahead log before the call returns, and the whole collection is
+ * written from time to time as a checkpoint. On startup the checkpoint is
+ * loaded and only the log written after it is replayed.
+ *
+ * Files in the directory:
+ *
+ *   checkpoint    - sequence number of the last mutation it includes, the
+ *                   species in order of first appearance, every tree in key
+ *                   order, and a CRC-32 of all of it; written to a temporary
+ *                   file and renamed, so it is always complete
+ *   wal-<n>.log   - log segments; n is the sequence number of the first
+ *                   record, a new segment is started at every checkpoint
+ *
+ * A log record is the length of its body (int), the body, and a CRC-32 of
+ * the body (int). The body is the sequence number (long), the operation
+ * (byte) and the tree, in the record format of OutOfCoreTreeCollection.
+ * A record that is cut short or fails its checksum is the end of the log (a
+ * write interrupted by a crash); recovery truncates the segment there.
+ *
+ * Mutations are applied and their records buffered under the write lock;
+ * the caller then waits until its record is on disk. The first waiting
+ * thread writes and forces the buffer, including the records of every
+ * thread that appended in the meantime, so concurrent writers share one
+ * fsync (group commit). Queries hold the read lock, and may see a mutation
+ * a moment before it is durable.
+ */
+public class DurableTreeCollection implements TreeCounts, Closeable {
+
+	public static final long DEFAULT_CHECKPOINT_BYTES = 64L << 20; // log bytes between checkpoints
+	private static final int MAGIC = 0x54524545; // "TREE", first int of a checkpoint
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+	private static final String CHECKPOINT = "checkpoint";
+
+	// private data fields
+	private final File directory;
+	private final boolean force;
+	private final long checkpointBytes;
+	private TreeCollection trees;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final ReentrantLock checkpointLock = new ReentrantLock();
+
+	// log state, guarded by commitLock
+	private final ReentrantLock commitLock = new ReentrantLock();
+	private final Condition synced = commitLock.newCondition();
+	private ByteArrayOutputStream buffer = new ByteArrayOutputStream(); // records not yet written
+	private FileChannel segment;
+	private long segmentBytes; // written and buffered in the current segment
+	private long appended; // sequence number of the last record buffered
+	private long durable; // sequence number of the last record on disk
+	private boolean flushing;
+	private IOException failure; // the log cannot be trusted after a failed write
+	private boolean closed;
+	private long syncs, recordsWritten;
+
+	// recovery metrics
+	private long recoveryNanos;
+	private int checkpointTrees;
+	private int replayed;
+
+	/**
+	 * Constructor that recovers the collection kept in a directory, forcing
+	 * every commit to disk and checkpointing after DEFAULT_CHECKPOINT_BYTES
+	 * of log.
+	 *
+	 * @param the directory, created if it does not exist
+	 * @throws IOException if the directory cannot be read or written, or its
+	 * checkpoint is damaged
+	 */
+	public DurableTreeCollection(File directory) throws IOException {
+		this(directory, true, DEFAULT_CHECKPOINT_BYTES);
+	}
+
+	/**
+	 * Constructor that recovers the collection kept in a directory.
+	 *
+	 * @param the directory (created if it does not exist), whether commits
+	 * are forced to the disk (if not, they only survive a crash of the
+	 * program, not of the system), and the log bytes between automatic
+	 * checkpoints (0 for none)
+	 * @throws IOException if the directory cannot be read or written, or its
+	 * checkpoint is damaged
+	 * @throws IllegalArgumentException if checkpointBytes is negative
+	 */
+	public DurableTreeCollection(File directory, boolean force, long checkpointBytes) throws IOException,
+		IllegalArgumentException {
+		if (checkpointBytes < 0)
+			throw new IllegalArgumentException("The log size between checkpoints cannot be negative.");
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("The directory '" + directory + "' cannot be created.");
+		this.directory = directory;
+		this.force = force;
+		this.checkpointBytes = checkpointBytes;
+		long start = System.nanoTime();
+		recover();
+		recoveryNanos = System.nanoTime() - start;
+	}
+
+
+	// ============== RECOVERY ==============
+
+	private void recover() throws IOException {
+		long last = loadCheckpoint();
+		File[] segments = segments();
+		int end = 0;
+		for (int k=0; k<segments.length; k++) {
+			byte[] log = Files.readAllBytes(segments[k].toPath());
+			end = 0;
+			while (true) {
+				Record r = Record.read(log, end);
+				if (r == null)
+					break;
+				end = r.end;
+				if (r.sequence <= last)
+					continue; // already in the checkpoint
+				if (r.sequence != last + 1)
+					throw new IOException("The log has no record " + (last + 1) + " (found " + r.sequence + ").");
+				apply(r.operation, r.tree);
+				last = r.sequence;
+				replayed++;
+			}
+			if (end < log.length && k < segments.length - 1) // only the last segment can be torn
+				throw new IOException("The log segment '" + segments[k].getName() + "' is damaged.");
+		}
+		appended = durable = last;
+		if (segments.length == 0) {
+			startSegment(last + 1);
+			return;
+		}
+		// continue the last segment after its last valid record, dropping a torn tail
+		segment = FileChannel.open(segments[segments.length - 1].toPath(), StandardOpenOption.WRITE);
+		segment.truncate(end);
+		segment.position(end);
+		segment.force(true);
+		segmentBytes = end;
+	}
+
+	// load the checkpoint (if any) into trees, and return its sequence number
+	private long loadCheckpoint() throws IOException {
+		File file = new File(directory, CHECKPOINT);
+		if (!file.exists()) {
+			trees = new TreeCollection();
+			return 0;
+		}
+		CRC32 crc = new CRC32();
+		try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+				new BufferedInputStream(new FileInputStream(file), 1 << 16), crc))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException("'" + file + "' is not a checkpoint.");
+			long sequence = in.readLong();
+			ArrayList<String> species = new ArrayList<String>();
+			for (int i=in.readInt(); i>0; i--)
+				species.add(in.readUTF());
+			Object[] sorted = new Object[in.readInt()];
+			int[] boroCount = new int[TreeColumns.BORO.length];
+			TreeCollection empty = new TreeCollection();
+			for (int i=0; i<sorted.length; i++) {
+				Tree t = OutOfCoreTreeCollection.readRecord(in);
+				if (t == null)
+					throw new EOFException();
+				int b = empty.boroIndex(t.getBoro());
+				if (b >= 0)
+					boroCount[b]++;
+				sorted[i] = t;
+			}
+			long expected = crc.getValue();
+			if (in.readInt() != (int) expected)
+				throw new IOException("The checkpoint '" + file + "' is damaged.");
+			// the trees are in key order, so a balanced tree is built without comparisons
+			trees = new TreeCollection(MyBST.<Tree>build(sorted, 0, sorted.length), boroCount, species);
+			checkpointTrees = sorted.length;
+			return sequence;
+		}
+		catch (EOFException e) {
+			throw new IOException("The checkpoint '" + file + "' is incomplete.");
+		}
+	}
+
+	// log segments in sequence order
+	private File[] segments() {
+		File[] files = directory.listFiles((dir, name) -> name.matches("wal-\\d+\\.log"));
+		if (files == null)
+			return new File[0];
+		Arrays.sort(files, (a, b) -> Long.compare(firstSequence(a), firstSequence(b)));
+		return files;
+	}
+
+	private static long firstSequence(File segment) {
+		String name = segment.getName();
+		return Long.parseLong(name.substring("wal-".length(), name.length() - ".log".length()));
+	}
+
+	// open a new, empty segment whose first record will have the given sequence number
+	private void startSegment(long first) throws IOException {
+		File file = new File(directory, String.format("wal-%019d.log", first));
+		segment = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		segmentBytes = 0;
+		forceDirectory(directory);
+	}
+
+	// make a new or renamed file in the directory survive a crash (not possible on every system)
+	static void forceDirectory(File directory) {
+		try (FileChannel dir = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+			dir.force(true);
+		}
+		catch (IOException e) {
+			// the file data is forced anyway; only its directory entry may be lost
+		}
+	}
+
+	private boolean apply(byte operation, Tree t) throws IOException {
+		if (operation == ADD)
+			return trees.add(t);
+		try {
+			return trees.remove(t);
+		}
+		catch (Exception e) {
+			throw new IOException("The tree could not be removed.", e);
+		}
+	}
+
+
+	// ============== MUTATIONS ==============
+
+	/**
+	 * Adds a tree, as TreeCollection.add, and returns once the addition is in
+	 * the log on disk. Trees that are not added are not logged.
+	 *
+	 * @param Tree object t
+	 * @return true if tree was successfully added; false otherwise
+	 * @throws IOException if the log cannot be written
+	 * @throws IllegalStateException if the collection is closed
+	 */
+	public boolean add(Tree t) throws IOException, IllegalStateException {
+		if (t == null)
+			throw new NullPointerException();
+		ArrayList<Tree> one = new ArrayList<Tree>(1);
+		one.add(t);
+		return addAll(one) == 1;
+	}
+
+	/**
+	 * Adds a batch of trees with a single commit: the call returns once all
+	 * of them are in the log on disk.
+	 *
+	 * @param the trees, none of them null
+	 * @return the number of trees added
+	 * @throws IOException if the log cannot be written
+	 * @throws IllegalStateException if the collection is closed
+	 */
+	public int addAll(Collection<Tree> batch) throws IOException, IllegalStateException {
+		int added = 0;
+		long sequence;
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			checkOpen();
+			for (Tree t : batch) {
+				if (trees.add(t)) {
+					append(ADD, t);
+					added++;
+				}
+			}
+			sequence = appended();
+		}
+		finally {
+			write.unlock();
+		}
+		commit(sequence);
+		checkpointIfDue();
+		return added;
+	}
+
+	/**
+	 * Removes a tree, as TreeCollection.remove, and returns once the removal
+	 * is in the log on disk.
+	 *
+	 * @param Object o representing the tree to be removed
+	 * @return true if the tree was removed; false if it was not in the collection
+	 * @throws IOException if the log cannot be written
+	 * @throws IllegalStateException if the collection is closed
+	 */
+	public boolean remove(Object o) throws Exception {
+		if (o == null)
+			throw new NullPointerException();
+		long sequence;
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			checkOpen();
+			if (!trees.remove(o))
+				return false;
+			sequence = append(REMOVE, (Tree) o);
+		}
+		finally {
+			write.unlock();
+		}
+		commit(sequence);
+		checkpointIfDue();
+		return true;
+	}
+
+	private void checkOpen() throws IOException {
+		if (closed)
+			throw new IllegalStateException("The collection is closed.");
+		commitLock.lock();
+		try {
+			if (failure != null)
+				throw new IOException("The log could not be written.", failure);
+		}
+		finally {
+			commitLock.unlock();
+		}
+	}
+
+	// buffer the record of a mutation, holding the write lock, and return its sequence number
+	private long append(byte operation, Tree t) throws IOException {
+		commitLock.lock();
+		try {
+			long sequence = appended + 1;
+			int size = Record.write(buffer, sequence, operation, t);
+			appended = sequence;
+			segmentBytes += size;
+			return sequence;
+		}
+		finally {
+			commitLock.unlock();
+		}
+	}
+
+	private long appended() {
+		commitLock.lock();
+		try {
+			return appended;
+		}
+		finally {
+			commitLock.unlock();
+		}
+	}
+
+	/*
+	 * Waits until the record with the given sequence number is on disk. If no
+	 * thread is writing, this one writes (and forces) everything buffered so
+	 * far, outside the lock so that other threads can keep appending; the
+	 * others wait for it and find their records written as well.
+	 */
+	private void commit(long sequence) throws IOException {
+		commitLock.lock();
+		try {
+			while (durable < sequence) {
+				if (failure != null)
+					throw new IOException("The log could not be written.", failure);
+				if (flushing) {
+					synced.awaitUninterruptibly();
+					continue;
+				}
+				flushing = true;
+				ByteBuffer batch = ByteBuffer.wrap(buffer.toByteArray());
+				buffer.reset();
+				long last = appended;
+				long records = last - durable;
+				FileChannel channel = segment;
+				commitLock.unlock();
+				try {
+					while (batch.hasRemaining())
+						channel.write(batch);
+					if (force)
+						channel.force(false);
+				}
+				catch (IOException e) {
+					failure = e;
+				}
+				finally {
+					commitLock.lock();
+					flushing = false;
+					synced.signalAll();
+				}
+				if (failure == null) {
+					durable = last;
+					syncs++;
+					recordsWritten += records;
+				}
+			}
+		}
+		finally {
+			commitLock.unlock();
+		}
+	}
+
+
+	// ============== CHECKPOINTS ==============
+
+	private void checkpointIfDue() throws IOException {
+		// a thread that finds another one taking the checkpoint does not wait for it
+		if (checkpointBytes == 0 || segmentBytes() < checkpointBytes || !checkpointLock.tryLock())
+			return;
+		try {
+			if (segmentBytes() >= checkpointBytes)
+				takeCheckpoint();
+		}
+		finally {
+			checkpointLock.unlock();
+		}
+	}
+
+	private long segmentBytes() {
+		commitLock.lock();
+		try {
+			return segmentBytes;
+		}
+		finally {
+			commitLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes all trees to a new checkpoint and deletes the log that it makes
+	 * unnecessary. Mutations are blocked only while the trees are copied and
+	 * a new log segment is started, not while the checkpoint is written.
+	 *
+	 * @throws IOException if the checkpoint or the log cannot be written
+	 * @throws IllegalStateException if the collection is closed
+	 */
+	public void checkpoint() throws IOException, IllegalStateException {
+		checkpointLock.lock();
+		try {
+			takeCheckpoint();
+		}
+		finally {
+			checkpointLock.unlock();
+		}
+	}
+
+	private void takeCheckpoint() throws IOException {
+		Tree[] sorted;
+		ArrayList<String> species;
+		long sequence;
+		FileChannel old;
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			checkOpen();
+			sequence = appended();
+			commit(sequence); // the old segment is complete before the new one starts
+			sorted = new Tree[trees.size()];
+			int i = 0;
+			for (Tree t : trees) // Tree objects never change, so copying the references is enough
+				sorted[i++] = t;
+			species = new ArrayList<String>(trees.getMatchingSpecies(""));
+			commitLock.lock();
+			try {
+				old = segment;
+				startSegment(sequence + 1);
+			}
+			finally {
+				commitLock.unlock();
+			}
+		}
+		finally {
+			write.unlock();
+		}
+		old.close();
+
+		File temporary = new File(directory, CHECKPOINT + ".tmp");
+		CRC32 crc = new CRC32();
+		try (FileOutputStream file = new FileOutputStream(temporary)) {
+			DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+					new BufferedOutputStream(file, 1 << 16), crc));
+			out.writeInt(MAGIC);
+			out.writeLong(sequence);
+			out.writeInt(species.size());
+			for (String name : species)
+				out.writeUTF(name);
+			out.writeInt(sorted.length);
+			for (Tree t : sorted)
+				OutOfCoreTreeCollection.writeRecord(out, t);
+			out.flush();
+			new DataOutputStream(file).writeInt((int) crc.getValue());
+			file.getChannel().force(true);
+		}
+		Files.move(temporary.toPath(), new File(directory, CHECKPOINT).toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		forceDirectory(directory);
+		for (File segment : segments()) {
+			if (firstSequence(segment) <= sequence)
+				Files.delete(segment.toPath());
+		}
+	}
+
+
+	/**
+	 * Writes the buffered records, closes the log and stops accepting
+	 * mutations. Queries still work.
+	 *
+	 * @throws IOException if the log cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		checkpointLock.lock();
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			if (closed)
+				return;
+			closed = true;
+			commit(appended());
+			segment.close();
+		}
+		finally {
+			write.unlock();
+			checkpointLock.unlock();
+		}
+	}
+
+
+	// ============== QUERIES ==============
+
+	// run a query on the trees under the read lock
+	private <T> T read(Supplier<T> query) {
+		Lock read = lock.readLock();
+		read.lock();
+		try {
+			return query.get();
+		}
+		finally {
+			read.unlock();
+		}
+	}
+
+	/**
+	 * Methods of TreeCounts, answered by the collection under the read lock.
+	 */
+	public int getTotalNumberOfTrees() {
+		return read(() -> trees.getTotalNumberOfTrees());
+	}
+	public int getCountByTreeSpecies(String speciesName) {
+		return read(() -> trees.getCountByTreeSpecies(speciesName));
+	}
+	public int getCountByBorough(String boroName) {
+		return read(() -> trees.getCountByBorough(boroName));
+	}
+	public int getCountByTreeSpeciesBorough(String speciesName, String boroName) {
+		return read(() -> trees.getCountByTreeSpeciesBorough(speciesName, boroName));
+	}
+	public Collection<String> getMatchingSpecies(String speciesName) {
+		return read(() -> trees.getMatchingSpecies(speciesName));
+	}
+
+	/**
+	 * Returns the tree with the given id.
+	 *
+	 * @param the tree id
+	 * @return the tree, or null if no tree has that id
+	 */
+	public Tree getById(int id) {
+		return read(() -> trees.getById(id));
+	}
+
+	/**
+	 * Getter methods for the state of the log and the last recovery.
+	 *
+	 * @return the sequence number of the last mutation on disk, the number of
+	 * commits written (each one forced, if forcing is on), the number of log
+	 * records written, the recovery time in nanoseconds, and the number of
+	 * trees loaded from the checkpoint and of log records replayed
+	 */
+	public long getDurableSequence() {
+		commitLock.lock();
+		try {
+			return durable;
+		}
+		finally {
+			commitLock.unlock();
+		}
+	}
+	public long getSyncs() {
+		commitLock.lock();
+		try {
+			return syncs;
+		}
+		finally {
+			commitLock.unlock();
+		}
+	}
+	public long getRecordsWritten() {
+		commitLock.lock();
+		try {
+			return recordsWritten;
+		}
+		finally {
+			commitLock.unlock();
+		}
+	}
+	public long getRecoveryNanos() {
+		return recoveryNanos;
+	}
+	public int getCheckpointTrees() {
+		return checkpointTrees;
+	}
+	public int getReplayedRecords() {
+		return replayed;
+	}
+
+	/**
+	 * Returns the recovery and log metrics.
+	 *
+	 * @return a string with one line per metric
+	 */
+	public String report() {
+		StringBuilder str = new StringBuilder();
+		str.append(String.format("Recovered %,d trees from the checkpoint and %,d log records in %,d ms\n",
+				checkpointTrees, replayed, recoveryNanos / 1000000));
+		str.append(String.format("Log: %,d records in %,d commits%s, last sequence number %,d\n",
+				getRecordsWritten(), getSyncs(), force ? " (forced)" : "", getDurableSequence()));
+		return str.toString();
+	}
+
+	@Override
+	public String toString() {
+		return read(() -> trees.toString());
+	}
+
+
+	/*
+	 * One log record, as read back from a segment.
+	 */
+	private static class Record {
+		final long sequence;
+		final byte operation;
+		final Tree tree;
+		final int end; // offset just past the record
+
+		private Record(long sequence, byte operation, Tree tree, int end) {
+			this.sequence = sequence;
+			this.operation = operation;
+			this.tree = tree;
+			this.end = end;
+		}
+
+		// append a record to out and return its size in bytes
+		static int write(ByteArrayOutputStream out, long sequence, byte operation, Tree t) throws IOException {
+			ByteArrayOutputStream body = new ByteArrayOutputStream(96);
+			DataOutputStream data = new DataOutputStream(body);
+			data.writeLong(sequence);
+			data.writeByte(operation);
+			OutOfCoreTreeCollection.writeRecord(data, t);
+			CRC32 crc = new CRC32();
+			crc.update(body.toByteArray());
+			DataOutputStream record = new DataOutputStream(out);
+			record.writeInt(body.size());
+			body.writeTo(record);
+			record.writeInt((int) crc.getValue());
+			return 4 + body.size() + 4;
+		}
+
+		// the record that starts at offset, or null if there is no complete, valid record there
+		static Record read(byte[] log, int offset) {
+			if (log.length - offset < 4)
+				return null;
+			int length = ByteBuffer.wrap(log, offset, 4).getInt();
+			if (length < 9 || length > log.length - offset - 8)
+				return null;
+			CRC32 crc = new CRC32();
+			crc.update(log, offset + 4, length);
+			if (ByteBuffer.wrap(log, offset + 4 + length, 4).getInt() != (int) crc.getValue())
+				return null;
+			try {
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(log, offset + 4, length));
+				long sequence = in.readLong();
+				byte operation = in.readByte();
+				Tree tree = OutOfCoreTreeCollection.readRecord(in);
+				if (tree == null || (operation != ADD && operation != REMOVE))
+					return null;
+				return new Record(sequence, operation, tree, offset + 8 + length);
+			}
+			catch (IOException e) {
+				return null;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class finds species names that are close to a possibly misspelled
+ * query, e.g. "londn plane" for "london planetree". The names are stored
+ * (lower case) in a trie, together with every part of a name that starts
+ * at a word boundary ("planetree" for "london planetree"), so a query can
+ * match the middle of a name as getMatchingSpecies does.
+ *
+ * A search walks the trie computing one row of the Levenshtein table per
+ * node, which is the row shared by every key below that node, and skips
+ * a subtree as soon as no cell of its row is within the distance. Since the
+ * user is usually typing the start of a name, the distance of a key is the
+ * smallest distance between the query and any prefix of the key.
+ */
+public class FuzzySpeciesIndex {
+
+	// private data fields
+	private final Node root = new Node();
+
+	/**
+	 * Adds a species name.
+	 *
+	 * @param the species name, cannot be null
+	 */
+	public void add(String species) {
+		String key = species.toLowerCase();
+		for (int i=0; i<key.length(); i++) {
+			if (i == 0 || (key.charAt(i - 1) == ' ' && key.charAt(i) != ' ')) {
+				Node node = root;
+				for (int j=i; j<key.length(); j++) {
+					Node child = node.children.get(key.charAt(j));
+					if (child == null) {
+						child = new Node();
+						node.children.put(key.charAt(j), child);
+					}
+					node = child;
+				}
+				if (!node.species.contains(species))
+					node.species.add(species);
+			}
+		}
+	}
+
+	/**
+	 * Returns the species whose name (or a word of it onwards) starts with a
+	 * string within the given edit distance of the query. The closest names
+	 * come first, ties in alphabetical order.
+	 *
+	 * @param the query (case insensitive) and the largest number of inserted,
+	 * deleted or replaced characters
+	 * @return list of matching species names, without duplicates
+	 */
+	public List<String> search(String query, int maxDistance) {
+		String q = query.toLowerCase();
+		final HashMap<String, Integer> distance = new HashMap<String, Integer>();
+		int[] row = new int[q.length() + 1];
+		for (int j=0; j<row.length; j++)
+			row[j] = j; // distance between the empty prefix and q[0..j)
+		search(root, q, row, row[q.length()], maxDistance, distance);
+
+		ArrayList<String> result = new ArrayList<String>(distance.keySet());
+		Collections.sort(result, new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				int cmp = Integer.compare(distance.get(a), distance.get(b));
+				return (cmp != 0) ? cmp : a.compareTo(b);
+			}
+		});
+		return result;
+	}
+
+	// row holds the distances between the key prefix of node and every prefix of q,
+	// best is the smallest distance between q and a prefix of the key so far
+	private void search(Node node, String q, int[] row, int best, int maxDistance,
+			HashMap<String, Integer> distance) {
+		if (best <= maxDistance) {
+			for (String s : node.species) {
+				Integer d = distance.get(s);
+				if (d == null || best < d)
+					distance.put(s, best);
+			}
+		}
+		for (Map.Entry<Character, Node> e : node.children.entrySet()) {
+			char c = e.getKey();
+			int[] next = new int[row.length];
+			next[0] = row[0] + 1;
+			int min = next[0];
+			for (int j=1; j<row.length; j++) {
+				int replace = row[j - 1] + ((q.charAt(j - 1) == c) ? 0 : 1);
+				next[j] = Math.min(replace, Math.min(row[j] + 1, next[j - 1] + 1));
+				min = Math.min(min, next[j]);
+			}
+			int nextBest = Math.min(best, next[q.length()]);
+			// below this node every row is at least min, so only a match found above can remain
+			if (min <= maxDistance || nextBest <= maxDistance)
+				search(e.getValue(), q, next, nextBest, maxDistance, distance);
+		}
+	}
+
+	/*
+	 * Node of the trie: the species whose key ends here and the next characters.
+	 */
+	private static class Node {
+		private final HashMap<Character, Node> children = new HashMap<Character, Node>(4);
+		private final ArrayList<String> species = new ArrayList<String>(1);
+	}
+
+}
@@ -0,0 +1,431 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class computes GROUP BY queries over any columns of the data file in
+ * one streaming pass, e.g. the number of trees and their average diameter
+ * by nta and health:
+ *
+ *   new GroupByQuery("nta,health", "count,avg(tree_dbh)").run(file)
+ *
+ * Columns are named as in the header line of the file. Only the entries of
+ * the columns that the query uses are copied out of each line (the others
+ * are skipped while the line is split), and no Tree is created. Every value
+ * of a grouping column gets a small int code; the codes of a row are turned
+ * into a group number through one primitive long-to-int hash table per
+ * grouping column, and the aggregates of a group are kept in primitive
+ * arrays indexed by that number.
+ *
+ * A line is a row if it has the 41 entries of the file (as parseLine
+ * requires); its entries are split exactly as NYCStreetTrees.splitCSVLine
+ * does. sum, avg, min and max ignore entries that are not numbers.
+ */
+public class GroupByQuery {
+
+	private static final int ENTRIES = 41; // entries of a valid line
+	private static final String[] FUNCTIONS = {"count", "sum", "avg", "min", "max"};
+
+	// private data fields
+	private final String[] groupBy; // grouping column names
+	private final String[] functions; // aggregate function of every aggregate
+	private final String[] arguments; // column of every aggregate, null for count
+	private long rowsScanned;
+	private long entriesCopied;
+
+	/**
+	 * Constructor for a query.
+	 *
+	 * @param the grouping columns and the aggregates, both separated by commas;
+	 * an aggregate is "count" or one of sum, avg, min and max of a column,
+	 * e.g. "avg(tree_dbh)". The grouping columns can be empty (one group).
+	 * @throws IllegalArgumentException if an aggregate is not well formed
+	 */
+	public GroupByQuery(String groupBy, String aggregates) throws IllegalArgumentException {
+		this.groupBy = split(groupBy);
+		String[] specs = split(aggregates);
+		if (specs.length == 0)
+			throw new IllegalArgumentException("At least one aggregate is needed.");
+		functions = new String[specs.length];
+		arguments = new String[specs.length];
+		for (int i=0; i<specs.length; i++) {
+			String spec = specs[i].toLowerCase(Locale.ROOT);
+			int open = spec.indexOf('(');
+			if (spec.equals("count") || spec.equals("count(*)")) {
+				functions[i] = "count";
+				continue;
+			}
+			if (open <= 0 || !spec.endsWith(")") || !Arrays.asList(FUNCTIONS).contains(spec.substring(0, open).trim()))
+				throw new IllegalArgumentException("Unknown aggregate '" + specs[i] + "'.");
+			functions[i] = spec.substring(0, open).trim();
+			arguments[i] = spec.substring(open + 1, spec.length() - 1).trim();
+			if (functions[i].equals("count") || arguments[i].isEmpty())
+				throw new IllegalArgumentException("Unknown aggregate '" + specs[i] + "'.");
+		}
+	}
+
+	private static String[] split(String list) {
+		ArrayList<String> items = new ArrayList<String>();
+		for (String item : list.split(",")) {
+			if (!item.trim().isEmpty())
+				items.add(item.trim());
+		}
+		return items.toArray(new String[0]);
+	}
+
+	/**
+	 * Returns the names of the result columns: the grouping columns, then
+	 * the aggregates.
+	 *
+	 * @return array of column names
+	 */
+	public String[] getColumnNames() {
+		String[] names = Arrays.copyOf(groupBy, groupBy.length + functions.length);
+		for (int i=0; i<functions.length; i++)
+			names[groupBy.length + i] = (arguments[i] == null) ? "count" : functions[i] + "(" + arguments[i] + ")";
+		return names;
+	}
+
+	/**
+	 * Runs the query over a file (decompressed while it is read if its name
+	 * ends in ".gz"). Its first line must be the header.
+	 *
+	 * @param the file to be read
+	 * @return the groups, in the order they first appear in the file
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if a column is not in the header
+	 */
+	public List<Group> run(File file) throws IOException, IllegalArgumentException {
+		InputStream stream = new FileInputStream(file);
+		if (file.getName().toLowerCase().endsWith(".gz"))
+			stream = new GZIPInputStream(stream, 1 << 16);
+		BufferedReader in = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8), 1 << 16);
+		try {
+			String header = in.readLine();
+			if (header == null)
+				throw new IOException("The file is empty.");
+			return run(in, NYCStreetTrees.splitCSVLine(header));
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private List<Group> run(BufferedReader in, List<String> header) throws IOException {
+		// projection: the entries to copy and the slot each one is copied to
+		int[] slotOf = new int[Math.max(ENTRIES, header.size())];
+		Arrays.fill(slotOf, -1);
+		ArrayList<Integer> projected = new ArrayList<Integer>();
+		int[] groupSlots = new int[groupBy.length];
+		for (int i=0; i<groupBy.length; i++)
+			groupSlots[i] = slot(column(header, groupBy[i]), slotOf, projected);
+		int[] argumentSlots = new int[functions.length];
+		boolean[] numeric = new boolean[slotOf.length]; // slots that are parsed as numbers
+		for (int i=0; i<functions.length; i++) {
+			argumentSlots[i] = (arguments[i] == null) ? -1 : slot(column(header, arguments[i]), slotOf, projected);
+			if (argumentSlots[i] >= 0)
+				numeric[argumentSlots[i]] = true;
+		}
+
+		// value codes of every grouping column, and the group tables that chain them
+		ArrayList<HashMap<String, Integer>> codes = new ArrayList<HashMap<String, Integer>>();
+		ArrayList<ArrayList<String>> values = new ArrayList<ArrayList<String>>();
+		LongIntTable[] tables = new LongIntTable[groupBy.length];
+		for (int i=0; i<groupBy.length; i++) {
+			codes.add(new HashMap<String, Integer>());
+			values.add(new ArrayList<String>());
+			tables[i] = new LongIntTable();
+		}
+		Aggregates aggregates = new Aggregates(functions.length);
+
+		String[] entries = new String[projected.size()];
+		double[] numbers = new double[projected.size()];
+		rowsScanned = 0;
+		entriesCopied = 0;
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (project(line, slotOf, entries) != ENTRIES)
+				continue; // not a valid line
+			rowsScanned++;
+			entriesCopied += entries.length;
+
+			int group = 0; // with no grouping columns, every row is in group 0
+			for (int i=0; i<groupBy.length; i++) {
+				String value = entries[groupSlots[i]];
+				Integer code = codes.get(i).get(value);
+				if (code == null) {
+					code = values.get(i).size();
+					codes.get(i).put(value, code);
+					values.get(i).add(value);
+				}
+				group = tables[i].getOrAdd(((long) group << 32) | code);
+			}
+			for (int s=0; s<entries.length; s++) {
+				if (numeric[s])
+					numbers[s] = parseNumber(entries[s]);
+			}
+			aggregates.add(group, argumentSlots, numbers);
+		}
+
+		// walk back from every group to the values of its grouping columns
+		int groups = (groupBy.length == 0) ? aggregates.size : tables[groupBy.length - 1].size();
+		ArrayList<Group> result = new ArrayList<Group>(groups);
+		for (int g=0; g<groups; g++) {
+			String[] key = new String[groupBy.length];
+			int number = g;
+			for (int i=groupBy.length-1; i>=0; i--) {
+				long code = tables[i].keyOf(number);
+				key[i] = values.get(i).get((int) code);
+				number = (int) (code >>> 32); // group of the previous columns
+			}
+			result.add(new Group(key, aggregates.values(g, functions)));
+		}
+		return result;
+	}
+
+	private static int column(List<String> header, String name) {
+		for (int i=0; i<header.size(); i++) {
+			if (header.get(i).equalsIgnoreCase(name))
+				return i;
+		}
+		throw new IllegalArgumentException("There is no column '" + name + "'.");
+	}
+
+	private static int slot(int column, int[] slotOf, ArrayList<Integer> projected) {
+		if (slotOf[column] < 0) {
+			slotOf[column] = projected.size();
+			projected.add(column);
+		}
+		return slotOf[column];
+	}
+
+	// NaN for entries that are not numbers
+	private static double parseNumber(String entry) {
+		if (entry == null || entry.isEmpty())
+			return Double.NaN;
+		try {
+			return Double.parseDouble(entry);
+		}
+		catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/*
+	 * Splits a line as NYCStreetTrees.splitCSVLine does, but only copies the
+	 * entries whose slotOf is not -1 (into entries[slotOf]); of the others
+	 * only the length is followed. Returns the number of entries of the line.
+	 */
+	static int project(String line, int[] slotOf, String[] entries) {
+		Arrays.fill(entries, null);
+		StringBuilder word = new StringBuilder();
+		int length = 0; // length of the current entry, copied or not
+		boolean insideQuotes = false;
+		boolean insideEntry = false;
+		int entry = 0;
+		boolean copy = slotOf[0] >= 0;
+		for (int i=0; i<line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"' || c == '\u201C' || c == '\u201D') {
+				insideQuotes = !insideQuotes;
+				insideEntry = insideQuotes;
+				continue;
+			}
+			if (c == ',' && !insideQuotes) { // end of entry found
+				if (copy)
+					entries[slotOf[entry]] = word.toString();
+				word.setLength(0);
+				length = 0;
+				insideEntry = false;
+				entry++;
+				copy = entry < slotOf.length && slotOf[entry] >= 0;
+				continue;
+			}
+			if (Character.isWhitespace(c)) {
+				if (!insideQuotes && !insideEntry)
+					continue; // spaces between entries
+			}
+			else if (c != ',')
+				insideEntry = true;
+			if (copy)
+				word.append(c);
+			length++;
+		}
+		// the last entry only counts if it is not empty, and is trimmed
+		if (length == 0)
+			return entry;
+		if (copy)
+			entries[slotOf[entry]] = word.toString().trim();
+		return entry + 1;
+	}
+
+	/**
+	 * Getter methods for the statistics of the last run.
+	 *
+	 * @return the number of rows aggregated, and the number of entries copied
+	 * out of the lines (the other entries were skipped)
+	 */
+	public long getRowsScanned() {
+		return rowsScanned;
+	}
+	public long getEntriesCopied() {
+		return entriesCopied;
+	}
+
+	/**
+	 * One row of the result: the values of the grouping columns and the
+	 * aggregates, in the order of getColumnNames().
+	 */
+	public static class Group {
+		private final String[] key;
+		private final double[] values;
+
+		Group(String[] key, double[] values) {
+			this.key = key;
+			this.values = values;
+		}
+
+		public String[] getKey() {
+			return key.clone();
+		}
+		public double[] getValues() {
+			return values.clone();
+		}
+		public double getValue(int i) {
+			return values[i];
+		}
+	}
+
+	/*
+	 * Aggregates of every group in growable primitive arrays: the number of
+	 * rows, and for every aggregate the sum, minimum, maximum and number of
+	 * the numeric entries.
+	 */
+	private static class Aggregates {
+		private final int width;
+		private int size; // number of groups seen
+		private long[] rows = new long[64];
+		private double[] sum, min, max;
+		private long[] numbers;
+
+		Aggregates(int width) {
+			this.width = width;
+			sum = new double[64 * width];
+			min = new double[64 * width];
+			max = new double[64 * width];
+			numbers = new long[64 * width];
+		}
+
+		void add(int group, int[] argumentSlots, double[] entries) {
+			if (group >= rows.length) {
+				int capacity = Math.max(group + 1, rows.length * 2);
+				rows = Arrays.copyOf(rows, capacity);
+				sum = Arrays.copyOf(sum, capacity * width);
+				min = Arrays.copyOf(min, capacity * width);
+				max = Arrays.copyOf(max, capacity * width);
+				numbers = Arrays.copyOf(numbers, capacity * width);
+			}
+			size = Math.max(size, group + 1);
+			rows[group]++;
+			for (int a=0; a<width; a++) {
+				if (argumentSlots[a] < 0)
+					continue;
+				double x = entries[argumentSlots[a]];
+				if (Double.isNaN(x))
+					continue;
+				int i = group * width + a;
+				if (numbers[i] == 0 || x < min[i])
+					min[i] = x;
+				if (numbers[i] == 0 || x > max[i])
+					max[i] = x;
+				sum[i] += x;
+				numbers[i]++;
+			}
+		}
+
+		double[] values(int group, String[] functions) {
+			double[] result = new double[width];
+			for (int a=0; a<width; a++) {
+				int i = group * width + a;
+				switch (functions[a]) {
+				case "count": result[a] = rows[group]; break;
+				case "sum": result[a] = sum[i]; break;
+				case "avg": result[a] = (numbers[i] == 0) ? Double.NaN : sum[i] / numbers[i]; break;
+				case "min": result[a] = (numbers[i] == 0) ? Double.NaN : min[i]; break;
+				default: result[a] = (numbers[i] == 0) ? Double.NaN : max[i]; break;
+				}
+			}
+			return result;
+		}
+	}
+
+	/*
+	 * Open-addressing hash table from long keys to the numbers 0, 1, 2, ...
+	 * in the order the keys were added, with the keys kept by number.
+	 */
+	private static class LongIntTable {
+		private long[] keys = new long[64];
+		private int[] numbers = new int[64]; // number + 1, 0 for an empty slot
+		private long[] byNumber = new long[32];
+		private int size;
+
+		int getOrAdd(long key) {
+			int mask = keys.length - 1;
+			int i = mix(key) & mask;
+			while (numbers[i] != 0) {
+				if (keys[i] == key)
+					return numbers[i] - 1;
+				i = (i + 1) & mask;
+			}
+			keys[i] = key;
+			numbers[i] = size + 1;
+			if (size == byNumber.length)
+				byNumber = Arrays.copyOf(byNumber, size * 2);
+			byNumber[size] = key;
+			if (++size * 2 > keys.length)
+				resize();
+			return size - 1;
+		}
+
+		long keyOf(int number) {
+			return byNumber[number];
+		}
+
+		int size() {
+			return size;
+		}
+
+		private void resize() {
+			long[] oldKeys = keys;
+			int[] oldNumbers = numbers;
+			keys = new long[oldKeys.length * 2];
+			numbers = new int[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for (int j=0; j<oldKeys.length; j++) {
+				if (oldNumbers[j] != 0) {
+					int i = mix(oldKeys[j]) & mask;
+					while (numbers[i] != 0)
+						i = (i + 1) & mask;
+					keys[i] = oldKeys[j];
+					numbers[i] = oldNumbers[j];
+				}
+			}
+		}
+
+		private static int mix(long key) {
+			long h = key * 0x9e3779b97f4a7c15L;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+
+}
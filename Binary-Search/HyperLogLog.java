@@ -0,0 +1,82 @@
+/**
+ * This class implements HyperLogLog, which estimates the number of distinct
+ * strings in a stream with a fixed array of 2^precision small registers.
+ * The first precision bits of a value's hash pick a register, which keeps
+ * the longest run of leading zeros seen in the remaining bits. The relative
+ * standard error of the estimate is about 1.04 / sqrt(2^precision); small
+ * cardinalities are counted from the number of empty registers, which is
+ * nearly exact.
+ */
+public class HyperLogLog {
+
+	// private data fields
+	private final int precision;
+	private final byte[] registers;
+
+	/**
+	 * Constructor for an estimator with 2^precision registers.
+	 *
+	 * @param int precision between 4 and 16
+	 * @throws IllegalArgumentException if precision is out of range
+	 */
+	public HyperLogLog(int precision) throws IllegalArgumentException {
+		if (precision < 4 || precision > 16)
+			throw new IllegalArgumentException("Precision must be between 4 and 16.");
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * Adds a value to the stream.
+	 *
+	 * @param the value, cannot be null
+	 */
+	public void offer(String value) {
+		long h = CountMinSketch.hash(value);
+		int index = (int) (h >>> (64 - precision));
+		// position of the first 1 bit after the index bits; the extra bit caps the run length
+		int rank = Long.numberOfLeadingZeros((h << precision) | (1L << (precision - 1))) + 1;
+		if (rank > registers[index])
+			registers[index] = (byte) rank;
+	}
+
+	/**
+	 * Returns the estimated number of distinct values offered.
+	 *
+	 * @return the estimate
+	 */
+	public long cardinality() {
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte r : registers) {
+			sum += 1.0 / (1L << r);
+			if (r == 0)
+				zeros++;
+		}
+		double alpha = (m == 16) ? 0.673 : (m == 32) ? 0.697 : (m == 64) ? 0.709 : 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0)
+			estimate = m * Math.log((double) m / zeros); // linear counting for small cardinalities
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Returns the relative standard error of the estimate.
+	 *
+	 * @return 1.04 / sqrt(number of registers)
+	 */
+	public double getRelativeError() {
+		return 1.04 / Math.sqrt(registers.length);
+	}
+
+	/**
+	 * Returns the memory used by the registers.
+	 *
+	 * @return number of bytes
+	 */
+	public long sizeInBytes() {
+		return registers.length;
+	}
+
+}
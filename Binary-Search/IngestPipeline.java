@@ -0,0 +1,308 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class reads the data file into a TreeCollection with a three-stage
+ * pipeline instead of the single loop of NYCStreetTrees.readFile:
+ *
+ *   reader   - one thread that fills large byte buffers from the file,
+ *              cut at the last complete line of every buffer;
+ *   parsers  - a pool of threads that split the buffers into lines and
+ *              turn them into batches of validated Tree objects;
+ *   inserter - the calling thread, the only one that touches the
+ *              TreeCollection (which is not thread safe).
+ *
+ * The reader numbers the buffers, and the inserter adds the batches in that
+ * order, holding the ones that a fast parser finished before their turn. The
+ * trees are therefore added in file order, as by readFile: the order of the
+ * species and the tree kept when two rows have the same id do not depend
+ * on the parser threads.
+ *
+ * The stages are connected by bounded RingBuffers. The byte buffers are
+ * allocated once and handed back to the reader once their trees are added,
+ * so a fast stage blocks instead of running ahead. Every stage records how long it was
+ * busy and how long it waited on its neighbours, which shows the stage that
+ * limits throughput (the one that is busy while the others wait).
+ */
+public class IngestPipeline {
+
+	// sizes of the buffers between the stages
+	private static final int CHUNK_SIZE = 1 << 20; // bytes per buffer
+	private static final int BATCH_RING = 16; // parsed batches waiting for the inserter
+
+	// marks the end of the input in both rings
+	private static final Chunk END_OF_INPUT = new Chunk(0);
+	private static final Batch END_OF_BATCHES = new Batch(null, null);
+
+	// private data fields
+	private final int parsers;
+	private final int chunks;
+	private volatile IOException failure;
+
+	// time spent by every stage, in nanoseconds
+	private long readerBusy, readerWait;
+	private final AtomicLong parserBusy = new AtomicLong();
+	private final AtomicLong parserWait = new AtomicLong();
+	private long inserterBusy, inserterWait;
+	private long bytesRead;
+	private final AtomicLong linesParsed = new AtomicLong();
+	private int treesAdded;
+	private long elapsed;
+
+	/**
+	 * Constructor for a pipeline with the given number of parser threads.
+	 *
+	 * @param int parsers representing the size of the parser pool
+	 * @throws IllegalArgumentException if parsers is not positive
+	 */
+	public IngestPipeline(int parsers) throws IllegalArgumentException {
+		if (parsers <= 0)
+			throw new IllegalArgumentException("At least one parser thread is needed.");
+		this.parsers = parsers;
+		this.chunks = 2 * parsers + 2; // enough for every parser plus one being filled
+	}
+
+	/**
+	 * Reads the file and adds every valid tree to the collection.
+	 * Rows are validated exactly as in NYCStreetTrees.readFile.
+	 *
+	 * @param the collection that will hold all Tree objects, and the file to be read
+	 * @throws IOException if the file cannot be read or a line is longer than a buffer
+	 * @throws InterruptedException if the calling thread is interrupted
+	 */
+	public void run(File file, TreeCollection treeCollect) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		final RingBuffer<Chunk> free = new RingBuffer<Chunk>(chunks);
+		final RingBuffer<Chunk> filled = new RingBuffer<Chunk>(chunks + parsers);
+		final RingBuffer<Batch> batches = new RingBuffer<Batch>(BATCH_RING);
+		for (int i=0; i<chunks; i++)
+			free.put(new Chunk(CHUNK_SIZE));
+
+		final InputStream in = new FileInputStream(file);
+		Thread reader = new Thread(() -> read(in, free, filled), "ingest-reader");
+		Thread[] pool = new Thread[parsers];
+		for (int i=0; i<parsers; i++)
+			pool[i] = new Thread(() -> parse(filled, batches), "ingest-parser-" + i);
+		reader.start();
+		for (Thread t : pool)
+			t.start();
+
+		// inserter stage: runs until every parser has finished or a stage failed
+		HashMap<Integer, Batch> early = new HashMap<Integer, Batch>(); // batches before their turn
+		int finished = 0;
+		try {
+			int next = 0; // number of the next buffer of the file
+			while (finished < parsers && failure == null) {
+				long t0 = System.nanoTime();
+				Batch batch = batches.take();
+				long t1 = System.nanoTime();
+				inserterWait += t1 - t0;
+				if (batch == END_OF_BATCHES) {
+					finished++;
+					continue;
+				}
+				early.put(batch.chunk.sequence, batch);
+				while ((batch = early.remove(next)) != null) {
+					for (Tree t : batch.trees) {
+						if (treeCollect.add(t))
+							treesAdded++;
+					}
+					free.put(batch.chunk); // give the buffer back to the reader
+					next++;
+				}
+				inserterBusy += System.nanoTime() - t1;
+			}
+		}
+		finally {
+			// after a failure the other threads can be blocked on a full or empty ring
+			if (finished < parsers) {
+				reader.interrupt();
+				for (Thread t : pool)
+					t.interrupt();
+			}
+			reader.join();
+			for (Thread t : pool)
+				t.join();
+			in.close();
+		}
+		elapsed = System.nanoTime() - start;
+		if (failure != null)
+			throw failure;
+	}
+
+	// reader stage
+	private void read(InputStream in, RingBuffer<Chunk> free, RingBuffer<Chunk> filled) {
+		try {
+			byte[] carry = new byte[CHUNK_SIZE]; // incomplete last line of the previous buffer
+			int carryLength = 0;
+			int sequence = 0; // number of the buffer in the file
+			boolean eof = false;
+			while (!eof) {
+				long t0 = System.nanoTime();
+				Chunk chunk = free.take();
+				long t1 = System.nanoTime();
+				readerWait += t1 - t0;
+				chunk.sequence = sequence++;
+
+				System.arraycopy(carry, 0, chunk.data, 0, carryLength);
+				int length = carryLength;
+				while (length < chunk.data.length) {
+					int n = in.read(chunk.data, length, chunk.data.length - length);
+					if (n < 0) {
+						eof = true;
+						break;
+					}
+					length += n;
+					bytesRead += n;
+				}
+
+				// hand over complete lines only, keep the rest for the next buffer
+				int end = length;
+				if (!eof) {
+					while (end > 0 && chunk.data[end - 1] != '\n')
+						end--;
+					if (end == 0)
+						throw new IOException("Line longer than " + CHUNK_SIZE + " bytes.");
+				}
+				carryLength = length - end;
+				System.arraycopy(chunk.data, end, carry, 0, carryLength);
+				chunk.length = end;
+				readerBusy += System.nanoTime() - t1;
+
+				t0 = System.nanoTime();
+				filled.put(chunk);
+				readerWait += System.nanoTime() - t0;
+			}
+		}
+		catch (IOException e) {
+			failure = e;
+		}
+		catch (InterruptedException e) {
+			if (failure == null)
+				failure = new IOException("Reader interrupted.", e);
+		}
+		finally {
+			// one end marker per parser; the ring has room for all of them
+			for (int i=0; i<parsers; i++) {
+				try {
+					filled.put(END_OF_INPUT);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	// parser stage
+	private void parse(RingBuffer<Chunk> filled, RingBuffer<Batch> batches) {
+		long busy = 0, wait = 0, lines = 0;
+		boolean interrupted = false;
+		try {
+			while (true) {
+				long t0 = System.nanoTime();
+				Chunk chunk = filled.take();
+				long t1 = System.nanoTime();
+				wait += t1 - t0;
+				if (chunk == END_OF_INPUT)
+					break;
+
+				ArrayList<Tree> batch = new ArrayList<Tree>();
+				int start = 0;
+				for (int i=0; i<=chunk.length; i++) {
+					if (i == chunk.length || chunk.data[i] == '\n') {
+						int end = (i > start && chunk.data[i - 1] == '\r') ? i - 1 : i;
+						if (end > start) {
+							Tree t = NYCStreetTrees.parseLine(new String(chunk.data, start, end - start,
+									StandardCharsets.UTF_8));
+							if (t != null)
+								batch.add(t);
+							lines++;
+						}
+						start = i + 1;
+					}
+				}
+				long t2 = System.nanoTime();
+				busy += t2 - t1;
+
+				batches.put(new Batch(chunk, batch));
+				wait += System.nanoTime() - t2;
+			}
+		}
+		catch (InterruptedException e) { // the inserter has stopped
+			interrupted = true;
+			if (failure == null)
+				failure = new IOException("Parser interrupted.", e);
+		}
+		catch (RuntimeException e) { // its buffer will never be added: stop the pipeline
+			if (failure == null)
+				failure = new IOException("Parser failed.", e);
+		}
+		finally {
+			parserBusy.addAndGet(busy);
+			parserWait.addAndGet(wait);
+			linesParsed.addAndGet(lines);
+			try {
+				if (!interrupted)
+					batches.put(END_OF_BATCHES);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Returns a report of the last run: the time every stage was busy and
+	 * the time it waited for an empty or a full buffer. The parser times are
+	 * summed over all parser threads.
+	 *
+	 * @return a string with one line per stage
+	 */
+	public String report() {
+		StringBuilder str = new StringBuilder();
+		str.append(String.format("Ingested %,d trees from %,d lines (%,d bytes) in %,d ms.\n",
+				treesAdded, linesParsed.get(), bytesRead, elapsed / 1000000));
+		str.append(String.format("   %-15s: busy %,8d ms, waiting %,8d ms\n", "reader",
+				readerBusy / 1000000, readerWait / 1000000));
+		str.append(String.format("   %-15s: busy %,8d ms, waiting %,8d ms\n", "parsers (" + parsers + ")",
+				parserBusy.get() / 1000000, parserWait.get() / 1000000));
+		str.append(String.format("   %-15s: busy %,8d ms, waiting %,8d ms\n", "inserter",
+				inserterBusy / 1000000, inserterWait / 1000000));
+		return str.toString();
+	}
+
+	/*
+	 * Reusable byte buffer holding whole lines of the file.
+	 */
+	private static class Chunk {
+		private final byte[] data;
+		private int length;
+		private int sequence; // position of the buffer in the file
+
+		Chunk(int capacity) {
+			data = new byte[capacity];
+		}
+	}
+
+	/*
+	 * Trees parsed from a buffer, which goes back to the reader once they
+	 * are added.
+	 */
+	private static class Batch {
+		private final Chunk chunk;
+		private final ArrayList<Tree> trees;
+
+		Batch(Chunk chunk, ArrayList<Tree> trees) {
+			this.chunk = chunk;
+			this.trees = trees;
+		}
+	}
+
+}
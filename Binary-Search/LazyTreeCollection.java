@@ -0,0 +1,197 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class makes the data file queryable as soon as its rows are parsed,
+ * instead of after the whole TreeCollection has been built. load() only
+ * validates the rows and keeps them in a list; queries are answered by a
+ * linear scan of that list while a background thread adds the rows to a
+ * TreeCollection. When the collection is complete it replaces the scan in
+ * one volatile write, so every query uses the fastest structure available
+ * when it starts, and both give the same answers.
+ */
+public class LazyTreeCollection implements TreeCounts {
+
+	// private data fields
+	private volatile TreeCounts current; // the scan, then the TreeCollection
+	private volatile TreeCollection index;
+	private Thread builder;
+	private long started; // nanoTime of the start of load()
+	private long queryable; // nanoseconds until the rows could be queried
+	private volatile long indexed; // nanoseconds until the TreeCollection was ready
+	private final AtomicLong scanQueries = new AtomicLong();
+	private final AtomicLong indexQueries = new AtomicLong();
+
+	/**
+	 * Reads and validates the file (see NYCStreetTrees.parseLine), makes the
+	 * rows queryable and starts building the TreeCollection in the background.
+	 * Trees whose id has already been read are dropped here, keeping the
+	 * first, as TreeCollection.add does.
+	 *
+	 * @param the file to be read
+	 * @throws FileNotFoundException if the file does not exist
+	 * @throws IllegalStateException if a file has already been loaded
+	 */
+	public void load(File file) throws FileNotFoundException, IllegalStateException {
+		if (current != null)
+			throw new IllegalStateException("A file has already been loaded.");
+		started = System.nanoTime();
+		final ArrayList<Tree> rows = new ArrayList<Tree>();
+		TreeIdIndex ids = new TreeIdIndex();
+		Scanner info = new Scanner(file);
+		while (info.hasNextLine()) {
+			Tree t = NYCStreetTrees.parseLine(info.nextLine());
+			if (t != null && ids.putIfAbsent(t) == null)
+				rows.add(t);
+		}
+		info.close();
+		current = new RowScan(rows);
+		queryable = System.nanoTime() - started;
+
+		builder = new Thread(() -> {
+			TreeCollection treeCollect = new TreeCollection();
+			for (Tree t : rows)
+				treeCollect.add(t);
+			indexed = System.nanoTime() - started;
+			index = treeCollect;
+			current = treeCollect; // swap: queries that start from now on use the tree
+		}, "index-builder");
+		builder.setDaemon(true);
+		builder.start();
+	}
+
+	/**
+	 * Returns whether the TreeCollection is complete.
+	 *
+	 * @return true once queries no longer scan the rows
+	 */
+	public boolean isIndexed() {
+		return index != null;
+	}
+
+	/**
+	 * Waits for the background build and returns the complete collection.
+	 *
+	 * @return the TreeCollection holding all rows
+	 * @throws InterruptedException if the calling thread is interrupted
+	 * @throws IllegalStateException if no file has been loaded
+	 */
+	public TreeCollection awaitIndex() throws InterruptedException, IllegalStateException {
+		if (builder == null)
+			throw new IllegalStateException("No file has been loaded.");
+		builder.join();
+		return index;
+	}
+
+	// structure for the query that is starting, counted for the report
+	private TreeCounts current() throws IllegalStateException {
+		TreeCounts counts = current;
+		if (counts == null)
+			throw new IllegalStateException("No file has been loaded.");
+		if (counts instanceof RowScan)
+			scanQueries.incrementAndGet();
+		else
+			indexQueries.incrementAndGet();
+		return counts;
+	}
+
+	/**
+	 * Methods of TreeCounts, answered by the structure available when they are called.
+	 *
+	 * @throws IllegalStateException if no file has been loaded
+	 */
+	public int getTotalNumberOfTrees() {
+		return current().getTotalNumberOfTrees();
+	}
+	public int getCountByTreeSpecies(String speciesName) {
+		return current().getCountByTreeSpecies(speciesName);
+	}
+	public int getCountByBorough(String boroName) {
+		return current().getCountByBorough(boroName);
+	}
+	public int getCountByTreeSpeciesBorough(String speciesName, String boroName) {
+		return current().getCountByTreeSpeciesBorough(speciesName, boroName);
+	}
+	public Collection<String> getMatchingSpecies(String speciesName) {
+		return current().getMatchingSpecies(speciesName);
+	}
+
+	/**
+	 * Returns the startup metrics: the time until the first query could run,
+	 * the time until the full index was ready (if it is), and the number of
+	 * queries answered by each structure.
+	 *
+	 * @return a string with one line per metric
+	 */
+	public String report() {
+		StringBuilder str = new StringBuilder();
+		str.append(String.format("Time to first query: %,d ms\n", queryable / 1000000));
+		long done = indexed;
+		if (done > 0)
+			str.append(String.format("Time to full index:  %,d ms\n", done / 1000000));
+		else
+			str.append(String.format("Time to full index:  still building after %,d ms\n",
+					(System.nanoTime() - started) / 1000000));
+		str.append(String.format("Queries answered by scan: %,d, by index: %,d\n",
+				scanQueries.get(), indexQueries.get()));
+		return str.toString();
+	}
+
+	/*
+	 * Answers the queries by visiting every row, with the same matching rules
+	 * as TreeCollection.
+	 */
+	private static class RowScan implements TreeCounts {
+		private final ArrayList<Tree> rows;
+
+		RowScan(ArrayList<Tree> rows) {
+			this.rows = rows;
+		}
+
+		public int getTotalNumberOfTrees() {
+			return rows.size();
+		}
+
+		public int getCountByTreeSpecies(String speciesName) {
+			int count = 0;
+			for (Tree t : rows) {
+				if (t.getSpeciesName().contains(speciesName))
+					count++;
+			}
+			return count;
+		}
+
+		public int getCountByBorough(String boroName) {
+			int count = 0;
+			for (Tree t : rows) {
+				if (t.getBoro().equalsIgnoreCase(boroName))
+					count++;
+			}
+			return count;
+		}
+
+		public int getCountByTreeSpeciesBorough(String speciesName, String boroName) {
+			int count = 0;
+			for (Tree t : rows) {
+				if (t.getSpeciesName().contains(speciesName) && t.getBoro().equalsIgnoreCase(boroName))
+					count++;
+			}
+			return count;
+		}
+
+		public Collection<String> getMatchingSpecies(String speciesName) {
+			LinkedHashSet<String> names = new LinkedHashSet<String>(); // in order of first appearance
+			for (Tree t : rows) {
+				if (t.getSpeciesName().contains(speciesName))
+					names.add(t.getSpeciesName());
+			}
+			return new ArrayList<String>(names);
+		}
+	}
+
+}
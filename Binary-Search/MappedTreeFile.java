@@ -0,0 +1,381 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * This class answers the TreeCounts queries over a data file that is mapped
+ * into memory instead of read into Tree objects. Loading keeps, for every
+ * valid row, only the byte offset of its line and codes for its species
+ * and borough, plus the number of trees of every species in every borough.
+ * Rows are validated exactly as parseLine does, and rows whose tree id has
+ * already been seen are dropped as TreeCollection does, so the same rows
+ * are kept.
+ *
+ * Any other column (tree_dbh, zipcode, x_sp, nta, steward, ... any of the
+ * 41 named in the header) is decoded from the mapped lines the first time
+ * it is read and then kept as an array with one entry per row, so a session
+ * that never reads a column never pays for it.
+ */
+public class MappedTreeFile implements TreeCounts {
+
+	private static final int SEGMENT_BITS = 30; // files are mapped in pieces of 1 GB
+	private static final int[] KEPT = {0, 3, 6, 7, 9, 25, 29, 39, 40}; // entries checked by isValidRow
+
+	// private data fields
+	private final MappedByteBuffer[] segments;
+	private final long length;
+	private final List<String> header;
+	private int size;
+	private long[] offsets = new long[1024]; // start of the line of every row
+	private int[] species = new int[1024]; // code into speciesNames
+	private byte[] boros = new byte[1024]; // code into TreeColumns.BORO
+	private final ArrayList<String> speciesNames = new ArrayList<String>(); // in order of first appearance
+	private final HashMap<String, Integer> speciesCodes = new HashMap<String, Integer>();
+	private final ArrayList<int[]> speciesByBoro = new ArrayList<int[]>(); // trees per species and borough
+	private final int[] boroCount = new int[TreeColumns.BORO.length];
+	private final HashMap<String, Object> columns = new HashMap<String, Object>(); // decoded columns
+	private byte[] line = new byte[1024]; // bytes of the line being decoded
+
+	/**
+	 * Constructor that maps the file and indexes its rows. The first line
+	 * must be the header.
+	 *
+	 * @param the data file
+	 * @throws IOException if the file cannot be read or is empty
+	 */
+	public MappedTreeFile(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			length = channel.size();
+			segments = new MappedByteBuffer[(int) ((length + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS)];
+			for (int i=0; i<segments.length; i++) {
+				long start = (long) i << SEGMENT_BITS;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+						Math.min(1L << SEGMENT_BITS, length - start));
+			}
+		}
+		if (length == 0)
+			throw new IOException("The file is empty.");
+		header = NYCStreetTrees.splitCSVLine(decode(0));
+
+		int[] slotOf = new int[41];
+		Arrays.fill(slotOf, -1);
+		for (int column : KEPT)
+			slotOf[column] = column;
+		String[] entries = new String[41];
+		List<String> row = Arrays.asList(entries);
+		IdSet seen = new IdSet();
+		for (long start=0; start<length; start=next(start)) {
+			String text = decode(start);
+			if (GroupByQuery.project(text, slotOf, entries) != 41 || !NYCStreetTrees.isValidRow(row))
+				continue;
+			if (!seen.add(Integer.parseInt(entries[0])))
+				continue; // duplicate tree id, not stored (as in TreeCollection.add)
+			append(start, entries[9].toLowerCase(), TreeColumns.code(TreeColumns.BORO, entries[29]));
+		}
+		offsets = Arrays.copyOf(offsets, size);
+		species = Arrays.copyOf(species, size);
+		boros = Arrays.copyOf(boros, size);
+	}
+
+	private void append(long offset, String name, int boro) {
+		if (size == offsets.length) {
+			offsets = Arrays.copyOf(offsets, size * 2);
+			species = Arrays.copyOf(species, size * 2);
+			boros = Arrays.copyOf(boros, size * 2);
+		}
+		Integer code = speciesCodes.get(name);
+		if (code == null) {
+			code = speciesNames.size();
+			speciesNames.add(name);
+			speciesCodes.put(name, code);
+			speciesByBoro.add(new int[TreeColumns.BORO.length]);
+		}
+		offsets[size] = offset;
+		species[size] = code;
+		boros[size] = (byte) boro;
+		speciesByBoro.get(code)[boro]++;
+		boroCount[boro]++;
+		size++;
+	}
+
+	private byte byteAt(long position) {
+		return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & ((1 << SEGMENT_BITS) - 1)));
+	}
+
+	// position after the end of the line that starts at start
+	private long next(long start) {
+		long p = start;
+		while (p < length && byteAt(p) != '\n')
+			p++;
+		return p + 1;
+	}
+
+	// text of the line that starts at start, without the line break
+	private String decode(long start) {
+		int n = 0;
+		for (long p=start; p<length; p++) {
+			byte b = byteAt(p);
+			if (b == '\n')
+				break;
+			if (n == line.length)
+				line = Arrays.copyOf(line, n * 2);
+			line[n++] = b;
+		}
+		if (n > 0 && line[n - 1] == '\r')
+			n--;
+		return new String(line, 0, n, StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * Methods of TreeCounts, answered from the per-species and per-borough
+	 * counts built at load, with the same matching rules as TreeCollection.
+	 */
+	public int getTotalNumberOfTrees() {
+		return size;
+	}
+	public int getCountByTreeSpecies(String speciesName) {
+		int count = 0;
+		for (int code : matching(speciesName)) {
+			for (int n : speciesByBoro.get(code))
+				count += n;
+		}
+		return count;
+	}
+	public int getCountByBorough(String boroName) {
+		int i = TreeColumns.code(TreeColumns.BORO, boroName);
+		return (i < 0) ? 0 : boroCount[i];
+	}
+	public int getCountByTreeSpeciesBorough(String speciesName, String boroName) {
+		int i = TreeColumns.code(TreeColumns.BORO, boroName);
+		if (i < 0)
+			return 0;
+		int count = 0;
+		for (int code : matching(speciesName))
+			count += speciesByBoro.get(code)[i];
+		return count;
+	}
+	public Collection<String> getMatchingSpecies(String speciesName) {
+		ArrayList<String> names = new ArrayList<String>();
+		for (int code : matching(speciesName))
+			names.add(speciesNames.get(code));
+		return names;
+	}
+
+	// codes of the species whose name contains speciesName, in order of first appearance
+	private ArrayList<Integer> matching(String speciesName) {
+		ArrayList<Integer> codes = new ArrayList<Integer>();
+		for (int i=0; i<speciesNames.size(); i++) {
+			if (speciesNames.get(i).contains(speciesName))
+				codes.add(i);
+		}
+		return codes;
+	}
+
+
+	/**
+	 * Returns the names of the columns, as in the header of the file.
+	 *
+	 * @return list of column names
+	 */
+	public List<String> getColumnNames() {
+		return new ArrayList<String>(header);
+	}
+
+	/**
+	 * Methods that return the species and borough of a row, which are kept
+	 * at load and need no decoding.
+	 *
+	 * @param the row, from 0 to getTotalNumberOfTrees() - 1 in file order
+	 * @return the species name and the borough name (lower case)
+	 * @throws IndexOutOfBoundsException if there is no such row
+	 */
+	public String getSpecies(int row) throws IndexOutOfBoundsException {
+		checkRow(row);
+		return speciesNames.get(species[row]);
+	}
+	public String getBoro(int row) throws IndexOutOfBoundsException {
+		checkRow(row);
+		return TreeColumns.BORO[boros[row]];
+	}
+
+	/**
+	 * Methods that read one entry of a row, for rows 0 to getTotalNumberOfTrees() - 1
+	 * in file order. The first read of a column decodes it for all rows.
+	 *
+	 * @param the column name (case insensitive) and the row
+	 * @return the entry as a number (Integer.MIN_VALUE or NaN if it is not one),
+	 * or as the string in the file (equal strings are shared)
+	 * @throws IllegalArgumentException if there is no such column
+	 * @throws IndexOutOfBoundsException if there is no such row
+	 */
+	public int getInt(String column, int row) throws IllegalArgumentException, IndexOutOfBoundsException {
+		checkRow(row);
+		return ((int[]) column(column, "int"))[row];
+	}
+	public double getDouble(String column, int row) throws IllegalArgumentException, IndexOutOfBoundsException {
+		checkRow(row);
+		return ((double[]) column(column, "double"))[row];
+	}
+	public String getString(String column, int row) throws IllegalArgumentException, IndexOutOfBoundsException {
+		checkRow(row);
+		return ((String[]) column(column, "string"))[row];
+	}
+
+	/**
+	 * Returns the tree of a row, parsed from its line as readFile would.
+	 *
+	 * @param the row
+	 * @return the Tree object
+	 * @throws IndexOutOfBoundsException if there is no such row
+	 */
+	public synchronized Tree getTree(int row) throws IndexOutOfBoundsException {
+		checkRow(row);
+		return NYCStreetTrees.parseLine(decode(offsets[row]));
+	}
+
+	private void checkRow(int row) throws IndexOutOfBoundsException {
+		if (row < 0 || row >= size)
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size + ".");
+	}
+
+	// the decoded column, decoding it on first use
+	private synchronized Object column(String name, String type) throws IllegalArgumentException {
+		int index = -1;
+		for (int i=0; i<header.size(); i++) {
+			if (header.get(i).equalsIgnoreCase(name))
+				index = i;
+		}
+		if (index < 0)
+			throw new IllegalArgumentException("There is no column '" + name + "'.");
+		String key = type + ":" + header.get(index);
+		Object values = columns.get(key);
+		if (values != null)
+			return values;
+
+		int[] slotOf = new int[Math.max(41, header.size())];
+		Arrays.fill(slotOf, -1);
+		slotOf[index] = 0;
+		String[] entry = new String[1];
+		int[] ints = type.equals("int") ? new int[size] : null;
+		double[] doubles = type.equals("double") ? new double[size] : null;
+		String[] strings = type.equals("string") ? new String[size] : null;
+		HashMap<String, String> shared = new HashMap<String, String>();
+		for (int row=0; row<size; row++) {
+			GroupByQuery.project(decode(offsets[row]), slotOf, entry);
+			String text = (entry[0] == null) ? "" : entry[0];
+			if (ints != null) {
+				try {
+					ints[row] = Integer.parseInt(text);
+				}
+				catch (NumberFormatException e) {
+					ints[row] = Integer.MIN_VALUE;
+				}
+			}
+			else if (doubles != null) {
+				try {
+					doubles[row] = Double.parseDouble(text);
+				}
+				catch (NumberFormatException e) {
+					doubles[row] = Double.NaN;
+				}
+			}
+			else {
+				String s = shared.putIfAbsent(text, text);
+				strings[row] = (s == null) ? text : s;
+			}
+		}
+		values = (ints != null) ? ints : (doubles != null) ? doubles : strings;
+		columns.put(key, values);
+		return values;
+	}
+
+	/**
+	 * Returns the names of the columns decoded so far, e.g. "int:tree_dbh".
+	 *
+	 * @return list of decoded columns
+	 */
+	public synchronized List<String> getDecodedColumns() {
+		return new ArrayList<String>(columns.keySet());
+	}
+
+	/**
+	 * Returns the heap used by the row index and the decoded columns (the
+	 * mapped file itself is in the page cache of the operating system).
+	 *
+	 * @return number of bytes
+	 */
+	public synchronized long sizeInBytes() {
+		long bytes = MemoryFootprint.arraySize(size, 8) + MemoryFootprint.arraySize(size, 4)
+				+ MemoryFootprint.arraySize(size, 1);
+		for (Object values : columns.values()) {
+			if (values instanceof int[])
+				bytes += MemoryFootprint.arraySize(size, 4);
+			else if (values instanceof double[])
+				bytes += MemoryFootprint.arraySize(size, 8);
+			else {
+				bytes += MemoryFootprint.arraySize(size, MemoryFootprint.REFERENCE);
+				for (String s : new HashSet<String>(Arrays.asList((String[]) values)))
+					bytes += MemoryFootprint.stringSize(s);
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Overrides the toString method to display the total number of trees
+	 * stored in this file as a string.
+	 *
+	 * @return a string that states how many trees there are across all boroughs
+	 */
+	@Override
+	public String toString() {
+		return String.format("There are a total of %,d trees in NYC. Nice!", size);
+	}
+
+	/*
+	 * Set of tree ids in an open-addressing int table; 0 marks an empty slot,
+	 * so id 0 is tracked apart.
+	 */
+	private static class IdSet {
+		private int[] slots = new int[1024];
+		private int size;
+		private boolean zero;
+
+		boolean add(int id) {
+			if (id == 0) {
+				boolean added = !zero;
+				zero = true;
+				return added;
+			}
+			int mask = slots.length - 1;
+			int i = (id * 0x9e3779b9 >>> 7) & mask;
+			while (slots[i] != 0) {
+				if (slots[i] == id)
+					return false;
+				i = (i + 1) & mask;
+			}
+			slots[i] = id;
+			if (++size * 2 > slots.length) {
+				int[] old = slots;
+				slots = new int[old.length * 2];
+				size = 0;
+				for (int value : old) {
+					if (value != 0)
+						add(value);
+				}
+			}
+			return true;
+		}
+	}
+
+}
@@ -1,4 +1,14 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class provides the implementation for a
@@ -7,11 +17,14 @@ import java.util.NoSuchElementException;
  * @author Joanna Klukowska lecture notes
  * @author Kelly Xie (kyx203)
  */
-public class MyBST<E extends Comparable<E>> {
+public class MyBST<E extends Comparable<E>> implements Iterable<E> {
 
 	// protected access data fields
 	protected BSTNode<E> root;
 	protected int size;
+	private E removed; // element unlinked by the current removal
+	// removeIf deletes the matches one by one when they are fewer than size / FEW
+	protected static final int FEW = 32;
 	
 	/** 
 	 * A default constructor that sets data fields to null.
@@ -65,6 +78,7 @@ public class MyBST<E extends Comparable<E>> {
 	/** 
 	 * Methods for removing node object from the tree using the
 	 * predecessor method. Helper method is implemented recursively.
+	 * The element is located and unlinked in a single descent.
 	 * 
 	 * @param Object o that represents node to be removed from tree
 	 * @return true if the element was removed successfully; false otherwise
@@ -79,14 +93,24 @@ public class MyBST<E extends Comparable<E>> {
 			System.err.print("NullPointerException thrown.");
 		}
 		
-		if (root != null && !contains(o)) {
-			return false; // object not in tree, no removal
-		}
-		else {
-			root = recRemove(root, o);
+		return delete(o) != null;
+	}
+	
+	/**
+	 * Removes the element equal to o and returns the element that was
+	 * stored in the tree, so that subclasses can update derived data.
+	 * 
+	 * @param Object o that represents node to be removed from tree
+	 * @return the removed element, or null if it was not in the tree
+	 */
+	protected E delete(Object o) throws Exception {
+		removed = null;
+		root = recRemove(root, o);
+		E data = removed;
+		removed = null;
+		if (data != null)
 			size--;
-			return true;
-		}
+		return data;
 	}
 	
 	// recursive removal method
@@ -95,14 +119,18 @@ public class MyBST<E extends Comparable<E>> {
 			throws ClassCastException, NullPointerException, Exception { // private helper method
 		if (node == null) {
 			// do nothing, the item is not in the tree
+			return null;
 		}
-		else if (((Comparable<E>) o).compareTo(node.getData()) < 0)
+		int cmp = ((Comparable<E>) o).compareTo(node.getData());
+		if (cmp < 0)
 			node.setLeft( recRemove(node.getLeft(), o) );  // search in the left subtree
-		else if (((Comparable<E>) o).compareTo(node.getData()) > 0)
+		else if (cmp > 0)
 			node.setRight( recRemove(node.getRight(), o) ); // search in the right subtree
-		else // found node
+		else { // found node
+			removed = node.getData();
 			// remove the data stored in the node
 			node = remove(node);
+		}
 		return node;
 	}
 	
@@ -114,11 +142,89 @@ public class MyBST<E extends Comparable<E>> {
 		if (node.getRight() == null)
 			return node.getLeft();
 		// case of two children
-		E data = getPredecessor(node);
-		node.setData(data);
-		node.setLeft( recRemove(node.getLeft(), data) );
+		node.setData( getPredecessor(node) );
+		node.setLeft( removeMax(node.getLeft()) );
 		return node;
-	}		
+	}
+	
+	// unlink the rightmost node of the subtree (the predecessor found above)
+	private BSTNode<E> removeMax(BSTNode<E> node) {
+		if (node.getRight() == null)
+			return node.getLeft();
+		node.setRight( removeMax(node.getRight()) );
+		return node;
+	}
+
+	/**
+	 * Removes every element that satisfies the given predicate, which is
+	 * tested once per element, in order. The nodes of the survivors are
+	 * collected in a single in-order pass. If fewer than size / FEW elements
+	 * matched, they are deleted one by one in O(k log n); otherwise the
+	 * surviving nodes are relinked into a perfectly balanced tree in O(n),
+	 * without allocating new nodes.
+	 * 
+	 * @param filter that returns true for the elements to be removed
+	 * @return true if any element was removed; false otherwise
+	 * @throws NullPointerException if the filter is null
+	 */
+	public boolean removeIf(Predicate<? super E> filter) {
+		if (filter == null)
+			throw new NullPointerException();
+		int n = sizeOf(root);
+		ArrayList<BSTNode<E>> kept = new ArrayList<BSTNode<E>>(n);
+		Object[] matched = new Object[Math.max(1, n / FEW)];
+		int matches = 0;
+		ArrayDeque<BSTNode<E>> stack = new ArrayDeque<BSTNode<E>>();
+		pushLeft(stack, root);
+		while (!stack.isEmpty()) {
+			BSTNode<E> node = stack.pop();
+			pushLeft(stack, node.getRight());
+			if (!filter.test(node.getData()))
+				kept.add(node);
+			else if (matches < matched.length)
+				matched[matches++] = node.getData();
+			else
+				matches++; // too many to delete one by one
+		}
+		if (kept.size() == n)
+			return false; // nothing matched, keep the current shape
+		if (matches < matched.length) {
+			try {
+				for (int i=0; i<matches; i++)
+					delete(matched[i]);
+			}
+			catch (Exception e) { // delete only throws for a node without a predecessor
+				throw new IllegalStateException(e);
+			}
+			return true;
+		}
+		root = relink(kept, 0, kept.size());
+		size = kept.size();
+		return true;
+	}
+	
+	// link the nodes[from, to), in order, into a balanced subtree
+	private static <E extends Comparable<E>> BSTNode<E> relink(List<BSTNode<E>> nodes, int from, int to) {
+		if (from >= to)
+			return null;
+		int mid = (from + to) >>> 1;
+		BSTNode<E> node = nodes.get(mid);
+		node.setLeft( relink(nodes, from, mid) );
+		node.setRight( relink(nodes, mid + 1, to) );
+		return node;
+	}
+	
+	// build a balanced subtree from the sorted elements in sorted[from, to)
+	@SuppressWarnings("unchecked")
+	protected static <E extends Comparable<E>> BSTNode<E> build(Object[] sorted, int from, int to) {
+		if (from >= to)
+			return null;
+		int mid = (from + to) >>> 1;
+		BSTNode<E> node = new BSTNode<E>((E) sorted[mid]);
+		node.setLeft( MyBST.<E>build(sorted, from, mid) );
+		node.setRight( MyBST.<E>build(sorted, mid + 1, to) );
+		return node;
+	}
 
 	// finding predecessor of a given node
 	// aka rightmost node in the node's left subtree
@@ -202,6 +308,435 @@ public class MyBST<E extends Comparable<E>> {
         return current.getData();
 	}
 	
+	/**
+	 * Returns the least element greater than or equal to the given element.
+	 * 
+	 * @param Generic element e to search for
+	 * @return the least element >= e, or null if there is no such element
+	 */
+	public E ceiling(E e) {
+		E candidate = null;
+		BSTNode<E> node = root;
+		while (node != null) {
+			int cmp = e.compareTo(node.getData());
+			if (cmp == 0)
+				return node.getData();
+			else if (cmp < 0) {
+				candidate = node.getData();
+				node = node.getLeft();
+			}
+			else
+				node = node.getRight();
+		}
+		return candidate;
+	}
+	
+	/**
+	 * Returns the greatest element less than or equal to the given element.
+	 * 
+	 * @param Generic element e to search for
+	 * @return the greatest element <= e, or null if there is no such element
+	 */
+	public E floor(E e) {
+		E candidate = null;
+		BSTNode<E> node = root;
+		while (node != null) {
+			int cmp = e.compareTo(node.getData());
+			if (cmp == 0)
+				return node.getData();
+			else if (cmp > 0) {
+				candidate = node.getData();
+				node = node.getRight();
+			}
+			else
+				node = node.getLeft();
+		}
+		return candidate;
+	}
+	
+	/**
+	 * Methods that return a view of the elements strictly less than
+	 * (or, if inclusive, less than or equal to) toElement.
+	 * 
+	 * @param Generic element toElement representing the upper bound
+	 * @return live range view of the tree below the bound
+	 */
+	public BSTRange<E> headSet(E toElement) {
+		return headSet(toElement, false);
+	}
+	public BSTRange<E> headSet(E toElement, boolean inclusive) {
+		return new BSTRange<E>(this, null, false, toElement, inclusive);
+	}
+	
+	/**
+	 * Methods that return a view of the elements greater than or equal to
+	 * (or, if not inclusive, strictly greater than) fromElement.
+	 * 
+	 * @param Generic element fromElement representing the lower bound
+	 * @return live range view of the tree above the bound
+	 */
+	public BSTRange<E> tailSet(E fromElement) {
+		return tailSet(fromElement, true);
+	}
+	public BSTRange<E> tailSet(E fromElement, boolean inclusive) {
+		return new BSTRange<E>(this, fromElement, inclusive, null, false);
+	}
+	
+	/**
+	 * Methods that return a view of the elements between fromElement and toElement.
+	 * By default the lower bound is inclusive and the upper bound is exclusive.
+	 * 
+	 * @param Generic elements fromElement and toElement representing the bounds
+	 * @return live range view of the tree between the bounds
+	 */
+	public BSTRange<E> subSet(E fromElement, E toElement) {
+		return subSet(fromElement, true, toElement, false);
+	}
+	public BSTRange<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+		return new BSTRange<E>(this, fromElement, fromInclusive, toElement, toInclusive);
+	}
+	
+	/**
+	 * Returns the number of elements that are less than the given element
+	 * (or less than or equal to it, if inclusive). Uses the subtree sizes,
+	 * so it only follows a single path from the root.
+	 * 
+	 * @param Generic element e and flag inclusive
+	 * @return in-order rank of the bound
+	 */
+	protected int rank(E e, boolean inclusive) {
+		int rank = 0;
+		int visited = 0;
+		BSTNode<E> node = root;
+		while (node != null) {
+			visited++;
+			int cmp = e.compareTo(node.getData());
+			if (cmp < 0 || (cmp == 0 && !inclusive))
+				node = node.getLeft();
+			else {
+				rank += sizeOf(node.getLeft()) + 1;
+				if (cmp == 0)
+					break;
+				node = node.getRight();
+			}
+		}
+		QueryProfile.countNodes(visited);
+		return rank;
+	}
+	
+	/**
+	 * Returns the element with the given in-order rank.
+	 * 
+	 * @param int rank between 0 and size-1
+	 * @return element at that position in ascending order
+	 * @throws NoSuchElementException if the rank is out of range
+	 */
+	protected E select(int rank) {
+		if (rank < 0 || rank >= sizeOf(root))
+			throw new NoSuchElementException();
+		BSTNode<E> node = root;
+		int visited = 0;
+		while (true) {
+			visited++;
+			int leftSize = sizeOf(node.getLeft());
+			if (rank < leftSize)
+				node = node.getLeft();
+			else if (rank == leftSize) {
+				QueryProfile.countNodes(visited);
+				return node.getData();
+			}
+			else {
+				rank -= leftSize + 1;
+				node = node.getRight();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of elements stored in the tree.
+	 * 
+	 * @return number of elements in the tree
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns an iterator over the elements of the tree in ascending order.
+	 * The traversal is iterative: it keeps the path of pending ancestors on an
+	 * explicit stack, so deep (unbalanced) trees do not overflow the call stack.
+	 * The tree must not be modified while the iterator is in use.
+	 * 
+	 * @return in-order iterator over the elements of the tree
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		return new InOrderIterator<E>(root);
+	}
+	
+	/**
+	 * Returns a spliterator over the elements of the tree in ascending order.
+	 * It reports an exact size and splits at subtree boundaries, which makes
+	 * parallel streams over the tree divide the work evenly between threads.
+	 * The tree must not be modified while the spliterator is in use.
+	 * 
+	 * @return sized, sorted spliterator over the elements of the tree
+	 */
+	@Override
+	public Spliterator<E> spliterator() {
+		return new BSTSpliterator<E>(root, 0, sizeOf(root));
+	}
+	
+	/**
+	 * Returns an iterator over the elements of the tree in descending order.
+	 * 
+	 * @return reverse in-order iterator over the elements of the tree
+	 */
+	public Iterator<E> descendingIterator() {
+		return new DescendingIterator<E>(root, 0, sizeOf(root));
+	}
+	
+	// spliterator and descending iterator over the elements with ranks in [from, to)
+	protected Spliterator<E> spliterator(int from, int to) {
+		return new BSTSpliterator<E>(root, from, to);
+	}
+	protected Iterator<E> descendingIterator(int from, int to) {
+		return new DescendingIterator<E>(root, from, to);
+	}
+	
+	/**
+	 * Returns a sequential stream over the elements of the tree in ascending order.
+	 * 
+	 * @return stream of the elements in the tree
+	 */
+	public Stream<E> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+	
+	/**
+	 * Returns a parallel stream over the elements of the tree.
+	 * 
+	 * @return parallel stream of the elements in the tree
+	 */
+	public Stream<E> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+	
+	// number of nodes in the subtree rooted at node
+	protected static int sizeOf(BSTNode<?> node) {
+		return (node == null) ? 0 : node.getSize();
+	}
+	
+	// push node and the chain of its left descendants onto the stack
+	private static <E extends Comparable<E>> void pushLeft(ArrayDeque<BSTNode<E>> stack, BSTNode<E> node) {
+		int visited = 0;
+		while (node != null) {
+			visited++;
+			stack.push(node);
+			node = node.getLeft();
+		}
+		QueryProfile.countNodes(visited);
+	}
+	
+	/*
+	 * Iterative in-order iterator. The stack holds the nodes whose data
+	 * and right subtree have not been visited yet; the top is the next element.
+	 */
+	private static class InOrderIterator<E extends Comparable<E>> implements Iterator<E> {
+		
+		private final ArrayDeque<BSTNode<E>> stack = new ArrayDeque<BSTNode<E>>();
+		
+		InOrderIterator(BSTNode<E> root) {
+			pushLeft(stack, root);
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return !stack.isEmpty();
+		}
+		
+		@Override
+		public E next() {
+			if (stack.isEmpty())
+				throw new NoSuchElementException();
+			BSTNode<E> node = stack.pop();
+			pushLeft(stack, node.getRight());
+			return node.getData();
+		}
+	}
+	
+	/*
+	 * Reverse in-order iterator over the elements with ranks in [from, to).
+	 * Mirrors InOrderIterator: the stack holds the nodes whose data and
+	 * left subtree have not been visited yet.
+	 */
+	private static class DescendingIterator<E extends Comparable<E>> implements Iterator<E> {
+		
+		private final ArrayDeque<BSTNode<E>> stack = new ArrayDeque<BSTNode<E>>();
+		private int remaining;
+		
+		DescendingIterator(BSTNode<E> root, int from, int to) {
+			remaining = Math.max(0, to - from);
+			if (remaining == 0)
+				return;
+			// seek to the node of rank to-1, keeping the ancestors that precede it
+			int rank = to - 1;
+			int visited = 0;
+			BSTNode<E> node = root;
+			while (node != null) {
+				visited++;
+				int leftSize = sizeOf(node.getLeft());
+				if (rank < leftSize)
+					node = node.getLeft();
+				else {
+					stack.push(node);
+					if (rank == leftSize)
+						break;
+					rank -= leftSize + 1;
+					node = node.getRight();
+				}
+			}
+			QueryProfile.countNodes(visited);
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return remaining > 0;
+		}
+		
+		@Override
+		public E next() {
+			if (remaining == 0)
+				throw new NoSuchElementException();
+			BSTNode<E> node = stack.pop();
+			int visited = 0;
+			for (BSTNode<E> n = node.getLeft(); n != null; n = n.getRight(), visited++)
+				stack.push(n);
+			QueryProfile.countNodes(visited);
+			remaining--;
+			return node.getData();
+		}
+	}
+	
+	/*
+	 * Spliterator over the elements whose in-order rank lies in [index, fence).
+	 * Subtree sizes stored in the nodes give the exact number of remaining
+	 * elements and let the spliterator seek to any rank in O(height).
+	 */
+	private static class BSTSpliterator<E extends Comparable<E>> implements Spliterator<E> {
+		
+		private final BSTNode<E> root;
+		private int index; // rank of the next element
+		private final int fence; // one past the rank of the last element
+		private ArrayDeque<BSTNode<E>> stack; // created on the first advance
+		
+		BSTSpliterator(BSTNode<E> root, int index, int fence) {
+			this.root = root;
+			this.index = index;
+			this.fence = fence;
+		}
+		
+		// build the in-order stack so that its top holds the element of the given rank
+		private void seek(int rank) {
+			stack = new ArrayDeque<BSTNode<E>>();
+			int visited = 0;
+			BSTNode<E> node = root;
+			while (node != null) {
+				visited++;
+				int leftSize = sizeOf(node.getLeft());
+				if (rank < leftSize) {
+					stack.push(node);
+					node = node.getLeft();
+				}
+				else if (rank == leftSize) {
+					stack.push(node);
+					break;
+				}
+				else {
+					rank -= leftSize + 1;
+					node = node.getRight();
+				}
+			}
+			QueryProfile.countNodes(visited);
+		}
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super E> action) {
+			if (action == null)
+				throw new NullPointerException();
+			if (index >= fence)
+				return false;
+			if (stack == null)
+				seek(index);
+			BSTNode<E> node = stack.pop();
+			pushLeft(stack, node.getRight());
+			index++;
+			action.accept(node.getData());
+			return true;
+		}
+		
+		@Override
+		public void forEachRemaining(Consumer<? super E> action) {
+			if (action == null)
+				throw new NullPointerException();
+			if (index >= fence)
+				return;
+			if (stack == null)
+				seek(index);
+			while (index < fence) {
+				BSTNode<E> node = stack.pop();
+				pushLeft(stack, node.getRight());
+				index++;
+				action.accept(node.getData());
+			}
+		}
+		
+		@Override
+		public Spliterator<E> trySplit() {
+			if (fence - index < 2)
+				return null;
+			// find the root of the smallest subtree that holds the whole range;
+			// the range splits into its left part and the root with its right part
+			int split = -1;
+			int base = 0;
+			BSTNode<E> node = root;
+			while (node != null) {
+				int rank = base + sizeOf(node.getLeft());
+				if (fence - 1 < rank)
+					node = node.getLeft();
+				else if (index > rank) {
+					base = rank + 1;
+					node = node.getRight();
+				}
+				else {
+					split = rank;
+					break;
+				}
+			}
+			if (split <= index) // range starts at that root, fall back to the middle rank
+				split = index + (fence - index) / 2;
+			BSTSpliterator<E> prefix = new BSTSpliterator<E>(root, index, split);
+			index = split;
+			stack = null; // re-seek lazily from the new start
+			return prefix;
+		}
+		
+		@Override
+		public long estimateSize() {
+			return fence - index;
+		}
+		
+		@Override
+		public int characteristics() {
+			return ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED | NONNULL;
+		}
+		
+		@Override
+		public Comparator<? super E> getComparator() {
+			return null; // natural ordering
+		}
+	}
+	
 	/**
 	 * Method that overrides the toString method and returns
 	 * a String representation of the binary search tree.
@@ -209,17 +744,15 @@ public class MyBST<E extends Comparable<E>> {
 	 * 
 	 * @return String representation of the tree
 	 */
+	@Override
 	public String toString() {
-		return inOrderTraversal(root);
-	}
-	private String inOrderTraversal(BSTNode<E> node) { // helper method
-		String str = new String();
-		if (node != null) {
-			inOrderTraversal(node.getLeft());
-			str = str + ", " + node.getData();
-			inOrderTraversal(node.getRight());
+		StringBuilder str = new StringBuilder();
+		for (E e : this) {
+			if (str.length() > 0)
+				str.append(", ");
+			str.append(e);
 		}
-		return str;
+		return str.toString();
 	}
 
 }
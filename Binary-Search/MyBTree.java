@@ -0,0 +1,533 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class provides the implementation for a B-tree with the same
+ * contract as MyBST: a sorted set without duplicates with add, remove,
+ * contains, first, last and ordered iteration.
+ *
+ * Every node keeps up to 2t-1 elements in one array (t is the minimum
+ * degree, 32 by default, for a fanout of 64), found by binary search.
+ * A lookup therefore visits about log_64(n) nodes instead of the log_2(n)
+ * nodes of a binary tree, and the elements of a node sit next to each
+ * other in memory. All leaves are at the same depth: nodes are split on the
+ * way down when they are full (insertion) and refilled from a sibling on
+ * the way down when they are minimal (removal), so both take one descent.
+ */
+public class MyBTree<E extends Comparable<E>> implements Iterable<E> {
+
+	// private data fields
+	private final int t; // minimum degree: every node but the root has t-1 to 2t-1 elements
+	private final int maxKeys;
+	private Node root;
+	private int height = 1; // number of levels, a single leaf has height 1
+	private int size;
+
+	/**
+	 * A default constructor for an empty tree of minimum degree 32.
+	 */
+	public MyBTree() {
+		this(32);
+	}
+
+	/**
+	 * Constructor for an empty tree of the given minimum degree.
+	 *
+	 * @param int minDegree, at least 2; nodes hold up to 2*minDegree-1 elements
+	 * @throws IllegalArgumentException if minDegree is less than 2
+	 */
+	public MyBTree(int minDegree) throws IllegalArgumentException {
+		if (minDegree < 2)
+			throw new IllegalArgumentException("Minimum degree must be at least 2.");
+		t = minDegree;
+		maxKeys = 2 * minDegree - 1;
+		root = new Node(maxKeys, true);
+	}
+
+	/**
+	 * Adds an element. It does not allow duplicate entries.
+	 *
+	 * @param Generic datatype E that represents data to be added to the tree
+	 * @return true if the data was added successfully; false if it was already present
+	 * @throws ClassCastException; NullPointerException if e is null
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean add(E e) throws NullPointerException {
+		if (e == null)
+			throw new NullPointerException();
+		if (root.n == maxKeys) { // full root: the tree grows by one level
+			Node newRoot = new Node(maxKeys, false);
+			newRoot.children[0] = root;
+			splitChild(newRoot, 0);
+			root = newRoot;
+			height++;
+		}
+		Node node = root;
+		while (true) {
+			int i = search(node, e);
+			if (i >= 0)
+				return false; // duplicate, not stored
+			i = -i - 1;
+			if (node.children == null) {
+				System.arraycopy(node.keys, i, node.keys, i + 1, node.n - i);
+				node.keys[i] = e;
+				node.n++;
+				size++;
+				return true;
+			}
+			if (node.children[i].n == maxKeys) {
+				splitChild(node, i);
+				int cmp = e.compareTo((E) node.keys[i]); // the median moved up to position i
+				if (cmp == 0)
+					return false;
+				if (cmp > 0)
+					i++;
+			}
+			node = node.children[i];
+		}
+	}
+
+	// split the full child i of parent around its median, which moves up into parent
+	private void splitChild(Node parent, int i) {
+		Node full = parent.children[i];
+		Node right = new Node(maxKeys, full.children == null);
+		System.arraycopy(full.keys, t, right.keys, 0, t - 1);
+		if (full.children != null) {
+			System.arraycopy(full.children, t, right.children, 0, t);
+			Arrays.fill(full.children, t, maxKeys + 1, null);
+		}
+		right.n = t - 1;
+
+		System.arraycopy(parent.keys, i, parent.keys, i + 1, parent.n - i);
+		System.arraycopy(parent.children, i + 1, parent.children, i + 2, parent.n - i);
+		parent.keys[i] = full.keys[t - 1];
+		parent.children[i + 1] = right;
+		parent.n++;
+
+		Arrays.fill(full.keys, t - 1, maxKeys, null);
+		full.n = t - 1;
+	}
+
+	/**
+	 * Removes an element.
+	 *
+	 * @param Object o that represents the element to be removed
+	 * @return true if the element was removed; false if it was not in the tree
+	 * @throws ClassCastException; NullPointerException if o is null
+	 */
+	public boolean remove(Object o) throws NullPointerException {
+		if (o == null)
+			throw new NullPointerException();
+		boolean removed = delete(root, o);
+		if (root.n == 0 && root.children != null) { // empty root: the tree shrinks by one level
+			root = root.children[0];
+			height--;
+		}
+		if (removed)
+			size--;
+		return removed;
+	}
+
+	// remove o from the subtree of node, which has at least t elements unless it is the root
+	@SuppressWarnings("unchecked")
+	private boolean delete(Node node, Object o) {
+		int i = search(node, o);
+		if (node.children == null) {
+			if (i < 0)
+				return false;
+			removeKey(node, i);
+			return true;
+		}
+		if (i >= 0) { // found in an internal node
+			Node left = node.children[i];
+			Node right = node.children[i + 1];
+			if (left.n >= t) { // replace by the predecessor
+				E predecessor = last(left);
+				node.keys[i] = predecessor;
+				return delete(left, predecessor);
+			}
+			if (right.n >= t) { // replace by the successor
+				E successor = first(right);
+				node.keys[i] = successor;
+				return delete(right, successor);
+			}
+			merge(node, i); // both children are minimal: o moves down into the merged node
+			return delete(left, o);
+		}
+		i = -i - 1;
+		if (node.children[i].n < t)
+			i = fill(node, i);
+		return delete(node.children[i], o);
+	}
+
+	// give child i of node at least t elements; returns the index of the child
+	// that now covers the same range (it moves left when merged into its left sibling)
+	private int fill(Node node, int i) {
+		if (i > 0 && node.children[i - 1].n >= t)
+			borrowFromLeft(node, i);
+		else if (i < node.n && node.children[i + 1].n >= t)
+			borrowFromRight(node, i);
+		else if (i < node.n)
+			merge(node, i);
+		else {
+			merge(node, i - 1);
+			i--;
+		}
+		return i;
+	}
+
+	// rotate the last element of the left sibling through the parent into child i
+	private void borrowFromLeft(Node node, int i) {
+		Node child = node.children[i];
+		Node sibling = node.children[i - 1];
+		System.arraycopy(child.keys, 0, child.keys, 1, child.n);
+		child.keys[0] = node.keys[i - 1];
+		if (child.children != null) {
+			System.arraycopy(child.children, 0, child.children, 1, child.n + 1);
+			child.children[0] = sibling.children[sibling.n];
+			sibling.children[sibling.n] = null;
+		}
+		node.keys[i - 1] = sibling.keys[sibling.n - 1];
+		sibling.keys[sibling.n - 1] = null;
+		sibling.n--;
+		child.n++;
+	}
+
+	// rotate the first element of the right sibling through the parent into child i
+	private void borrowFromRight(Node node, int i) {
+		Node child = node.children[i];
+		Node sibling = node.children[i + 1];
+		child.keys[child.n] = node.keys[i];
+		if (child.children != null) {
+			child.children[child.n + 1] = sibling.children[0];
+			System.arraycopy(sibling.children, 1, sibling.children, 0, sibling.n);
+			sibling.children[sibling.n] = null;
+		}
+		node.keys[i] = sibling.keys[0];
+		System.arraycopy(sibling.keys, 1, sibling.keys, 0, sibling.n - 1);
+		sibling.keys[sibling.n - 1] = null;
+		sibling.n--;
+		child.n++;
+	}
+
+	// merge child i+1 and the element between them into child i (both have t-1 elements)
+	private void merge(Node node, int i) {
+		Node left = node.children[i];
+		Node right = node.children[i + 1];
+		left.keys[left.n] = node.keys[i];
+		System.arraycopy(right.keys, 0, left.keys, left.n + 1, right.n);
+		if (left.children != null)
+			System.arraycopy(right.children, 0, left.children, left.n + 1, right.n + 1);
+		left.n += right.n + 1;
+
+		removeKey(node, i);
+		System.arraycopy(node.children, i + 2, node.children, i + 1, node.n - i);
+		node.children[node.n + 1] = null;
+	}
+
+	// remove the element at position i of a node, shifting the rest left
+	private static void removeKey(Node node, int i) {
+		System.arraycopy(node.keys, i + 1, node.keys, i, node.n - i - 1);
+		node.n--;
+		node.keys[node.n] = null;
+	}
+
+	// position of o in the node, or -(insertion point) - 1 if it is not there
+	@SuppressWarnings("unchecked")
+	private int search(Node node, Object o) {
+		Comparable<E> key = (Comparable<E>) o;
+		int lo = 0;
+		int hi = node.n - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = key.compareTo((E) node.keys[mid]);
+			if (cmp < 0)
+				hi = mid - 1;
+			else if (cmp > 0)
+				lo = mid + 1;
+			else
+				return mid;
+		}
+		return -(lo + 1);
+	}
+
+	/**
+	 * Method for determining whether the tree contains an element.
+	 *
+	 * @param Object o that represents the element to be found
+	 * @return true if the tree contains the element; false otherwise
+	 * @throws ClassCastException; NullPointerException
+	 */
+	public boolean contains(Object o) {
+		Node node = root;
+		while (true) {
+			int i = search(node, o);
+			if (i >= 0)
+				return true;
+			if (node.children == null)
+				return false;
+			node = node.children[-i - 1];
+		}
+	}
+
+	/**
+	 * Methods that return the first (lowest) or last (highest) element.
+	 *
+	 * @return Generic element E
+	 * @throws NoSuchElementException if this set is empty
+	 */
+	public E first() throws NoSuchElementException {
+		if (size == 0)
+			throw new NoSuchElementException();
+		return first(root);
+	}
+	public E last() throws NoSuchElementException {
+		if (size == 0)
+			throw new NoSuchElementException();
+		return last(root);
+	}
+
+	@SuppressWarnings("unchecked")
+	private E first(Node node) {
+		while (node.children != null)
+			node = node.children[0];
+		return (E) node.keys[0];
+	}
+	@SuppressWarnings("unchecked")
+	private E last(Node node) {
+		while (node.children != null)
+			node = node.children[node.n];
+		return (E) node.keys[node.n - 1];
+	}
+
+	/**
+	 * Returns the least element greater than or equal to the given element.
+	 *
+	 * @param Generic element e to search for
+	 * @return the least element >= e, or null if there is no such element
+	 */
+	@SuppressWarnings("unchecked")
+	public E ceiling(E e) {
+		E candidate = null;
+		Node node = root;
+		while (node != null) {
+			int i = search(node, e);
+			if (i >= 0)
+				return (E) node.keys[i];
+			i = -i - 1;
+			if (i < node.n)
+				candidate = (E) node.keys[i];
+			node = (node.children == null) ? null : node.children[i];
+		}
+		return candidate;
+	}
+
+	/**
+	 * Returns the greatest element less than or equal to the given element.
+	 *
+	 * @param Generic element e to search for
+	 * @return the greatest element <= e, or null if there is no such element
+	 */
+	@SuppressWarnings("unchecked")
+	public E floor(E e) {
+		E candidate = null;
+		Node node = root;
+		while (node != null) {
+			int i = search(node, e);
+			if (i >= 0)
+				return (E) node.keys[i];
+			i = -i - 1;
+			if (i > 0)
+				candidate = (E) node.keys[i - 1];
+			node = (node.children == null) ? null : node.children[i];
+		}
+		return candidate;
+	}
+
+	/**
+	 * Returns the number of elements stored in the tree.
+	 *
+	 * @return number of elements in the tree
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of levels of the tree.
+	 *
+	 * @return height, 1 for a tree that is a single leaf
+	 */
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * Returns an iterator over the elements in ascending order. The tree
+	 * must not be modified while the iterator is in use.
+	 *
+	 * @return in-order iterator over the elements of the tree
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		return new InOrderIterator();
+	}
+
+	/**
+	 * Returns an iterator over the elements in descending order.
+	 *
+	 * @return reverse in-order iterator over the elements of the tree
+	 */
+	public Iterator<E> descendingIterator() {
+		return new DescendingIterator();
+	}
+
+	/**
+	 * Returns a sized, sorted spliterator over the elements in ascending order.
+	 *
+	 * @return spliterator over the elements of the tree
+	 */
+	@Override
+	public Spliterator<E> spliterator() {
+		return Spliterators.spliterator(iterator(), size,
+				Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL);
+	}
+
+	/**
+	 * Returns a sequential stream over the elements in ascending order.
+	 *
+	 * @return stream of the elements in the tree
+	 */
+	public Stream<E> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	/**
+	 * Method that overrides the toString method and returns
+	 * a String representation of the tree, in ascending order.
+	 *
+	 * @return String representation of the tree
+	 */
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+		for (E e : this) {
+			if (str.length() > 0)
+				str.append(", ");
+			str.append(e);
+		}
+		return str.toString();
+	}
+
+	/*
+	 * Node of the tree: elements keys[0..n) in ascending order and, in an
+	 * internal node, children[0..n] where children[i] holds the elements
+	 * between keys[i-1] and keys[i].
+	 */
+	private static final class Node {
+		private final Object[] keys;
+		private final Node[] children; // null in a leaf
+		private int n;
+
+		Node(int maxKeys, boolean leaf) {
+			keys = new Object[maxKeys];
+			children = leaf ? null : new Node[maxKeys + 1];
+		}
+	}
+
+	/*
+	 * In-order iterator. The stack holds one (node, position) pair per level:
+	 * the top pair is the next element, the pairs below it are its ancestors.
+	 */
+	private class InOrderIterator implements Iterator<E> {
+		private final Node[] nodes = new Node[height];
+		private final int[] index = new int[height];
+		private int depth = -1;
+
+		InOrderIterator() {
+			if (size > 0)
+				pushLeft(root);
+		}
+
+		private void pushLeft(Node node) {
+			while (true) {
+				nodes[++depth] = node;
+				index[depth] = 0;
+				if (node.children == null)
+					break;
+				node = node.children[0];
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return depth >= 0;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public E next() {
+			if (depth < 0)
+				throw new NoSuchElementException();
+			Node node = nodes[depth];
+			int i = index[depth]++;
+			E e = (E) node.keys[i];
+			if (node.children != null)
+				pushLeft(node.children[i + 1]); // the elements after keys[i] come first
+			while (depth >= 0 && index[depth] == nodes[depth].n)
+				depth--; // finished nodes
+			return e;
+		}
+	}
+
+	/*
+	 * Reverse in-order iterator, the mirror image of InOrderIterator:
+	 * the top pair's next element is keys[index - 1].
+	 */
+	private class DescendingIterator implements Iterator<E> {
+		private final Node[] nodes = new Node[height];
+		private final int[] index = new int[height];
+		private int depth = -1;
+
+		DescendingIterator() {
+			if (size > 0)
+				pushRight(root);
+		}
+
+		private void pushRight(Node node) {
+			while (true) {
+				nodes[++depth] = node;
+				index[depth] = node.n;
+				if (node.children == null)
+					break;
+				node = node.children[node.n];
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return depth >= 0;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public E next() {
+			if (depth < 0)
+				throw new NoSuchElementException();
+			Node node = nodes[depth];
+			int i = --index[depth];
+			E e = (E) node.keys[i];
+			if (node.children != null)
+				pushRight(node.children[i]); // the elements before keys[i] come first
+			while (depth >= 0 && index[depth] == 0)
+				depth--;
+			return e;
+		}
+	}
+
+}
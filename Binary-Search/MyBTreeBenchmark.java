@@ -0,0 +1,142 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.function.Supplier;
+
+/**
+ * This program compares MyBTree with MyBST, the binary layout used by
+ * TreeCollection: the time to insert the trees of the data file in random
+ * order, the time to look every one of them up, and the heap used per
+ * element by the structure (the Tree objects are shared and not counted).
+ * The sample file can be scaled up to the size of the full census by
+ * repeating its rows with new tree ids.
+ *
+ * Usage: java MyBTreeBenchmark [data file] [copies of every row]
+ * (by default data/NYCstreettreesdataset-partial.csv, copied 80 times:
+ * about 700,000 trees, as many as the 2015 census)
+ */
+public class MyBTreeBenchmark {
+
+	private static final int ROUNDS = 5; // timed rounds, after as many warm-up rounds
+	private static final int ID_STEP = 10000000; // id offset of every copy of the rows
+
+	public static void main(String[] args) throws Exception {
+		File file = new File(args.length > 0 ? args[0] : "data/NYCstreettreesdataset-partial.csv");
+		int copies = (args.length > 1) ? Integer.parseInt(args[1]) : 80;
+
+		ArrayList<Tree> trees = new ArrayList<Tree>();
+		for (int c=0; c<copies; c++) {
+			Scanner info = new Scanner(file);
+			while (info.hasNextLine()) {
+				Tree t = NYCStreetTrees.parseLine(info.nextLine());
+				if (t != null)
+					trees.add(new Tree(t.getId() + c * ID_STEP, t.getDiam(), t.getStatus(), t.getHealth(),
+							t.getSpeciesName(), t.getZip(), t.getBoro(), t.getX(), t.getY()));
+			}
+			info.close();
+		}
+		Collections.shuffle(trees, new Random(42)); // sorted input would make MyBST a list
+		ArrayList<Tree> lookups = new ArrayList<Tree>(trees);
+		Collections.shuffle(lookups, new Random(43));
+		System.out.printf("%,d trees\n", trees.size());
+		System.out.printf("   %-22s%16s%16s%16s%8s\n", "structure", "insert ns/tree", "lookup ns/tree",
+				"bytes/tree", "height");
+
+		for (int round=0; round<ROUNDS; round++) { // warm-up
+			run(bst(), trees, lookups);
+			run(btree(32), trees, lookups);
+		}
+		report("MyBST (BSTNode)", trees, lookups, () -> bst());
+		for (int minDegree : new int[] {16, 32, 64})
+			report("MyBTree (fanout " + 2 * minDegree + ")", trees, lookups, () -> btree(minDegree));
+	}
+
+	// the operations of MyBST and MyBTree that are measured
+	private interface SortedSet {
+		boolean add(Tree t);
+		boolean contains(Tree t);
+		int height();
+	}
+
+	private static void report(String name, ArrayList<Tree> trees, ArrayList<Tree> lookups,
+			Supplier<SortedSet> structure) {
+		long insert = Long.MAX_VALUE, lookup = Long.MAX_VALUE;
+		int height = 0;
+		for (int round=0; round<ROUNDS; round++) {
+			long[] times = run(structure.get(), trees, lookups);
+			insert = Math.min(insert, times[0]);
+			lookup = Math.min(lookup, times[1]);
+			height = (int) times[2];
+		}
+		long before = usedHeap();
+		SortedSet set = structure.get();
+		for (Tree t : trees)
+			set.add(t);
+		long bytes = usedHeap() - before;
+		if (set.contains(trees.get(0))) // keeps the structure reachable until it is measured
+			System.out.printf("   %-22s%16.0f%16.0f%16.1f%8d\n", name, (double) insert / trees.size(),
+					(double) lookup / trees.size(), (double) bytes / trees.size(), height);
+	}
+
+	// time to insert every tree and to look every tree up, in nanoseconds, and the height
+	private static long[] run(SortedSet set, ArrayList<Tree> trees, ArrayList<Tree> lookups) {
+		long t0 = System.nanoTime();
+		for (Tree t : trees)
+			set.add(t);
+		long t1 = System.nanoTime();
+		int found = 0;
+		for (Tree t : lookups) {
+			if (set.contains(t))
+				found++;
+		}
+		long t2 = System.nanoTime();
+		if (found != trees.size())
+			throw new IllegalStateException("Found " + found + " of " + trees.size() + " trees.");
+		return new long[] {t1 - t0, t2 - t1, set.height()};
+	}
+
+	private static SortedSet btree(int minDegree) {
+		MyBTree<Tree> btree = new MyBTree<Tree>(minDegree);
+		return new SortedSet() {
+			public boolean add(Tree t) {
+				return btree.add(t);
+			}
+			public boolean contains(Tree t) {
+				return btree.contains(t);
+			}
+			public int height() {
+				return btree.height();
+			}
+		};
+	}
+
+	private static SortedSet bst() {
+		MyBST<Tree> bst = new MyBST<Tree>();
+		return new SortedSet() {
+			public boolean add(Tree t) {
+				return bst.add(t);
+			}
+			public boolean contains(Tree t) {
+				return bst.contains(t);
+			}
+			public int height() {
+				return depth(bst.root);
+			}
+		};
+	}
+
+	private static int depth(BSTNode<Tree> node) {
+		return (node == null) ? 0 : 1 + Math.max(depth(node.getLeft()), depth(node.getRight()));
+	}
+
+	// heap in use after garbage collection
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i=0; i<3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
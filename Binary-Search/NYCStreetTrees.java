@@ -1,12 +1,30 @@
 import java.util.Scanner;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 
 public class NYCStreetTrees {
 	
+	private static final int LOAD_BATCH = 4096; // lines handed to a loader thread at once
+	private static final int GROUPS_SHOWN = 20; // largest groups displayed by groupby
+	private static final int PAGE_SIZE = 10; // trees displayed by page
+	private static final String IMPORTED = "imported"; // marker of a complete import in a log directory
+	
 	/**
 	 * This class handles File input and output, opens and reads data, 
 	 * and processes user input. It also handles any exceptions raised by the program.
@@ -50,17 +68,256 @@ public class NYCStreetTrees {
 		// ============== READING FILE ==============
 		
 		Scanner in = new Scanner(System.in);
+		boolean profile = hasOption(args, "-profile"); // explain every species query
+		if (hasOption(args, "-stream")) {
+			// approximate counts in a fixed amount of memory, no Tree objects are kept
+			StreamingCensus census = new StreamingCensus();
+			try {
+				readFile(census, file);
+			}
+			catch (IOException e) {
+				System.err.println("Error: the file '" + args[0] + "' could not be read: " + e.getMessage());
+				System.exit(1);
+			}
+			System.out.println(census);
+			
+			String choice = "";
+			while (!choice.equalsIgnoreCase("quit")) {
+				System.out.print("\nEnter a tree species to learn more about it (\"quit\" to stop): ");
+				choice = in.nextLine();
+				if (choice.equalsIgnoreCase("quit"))
+					break;
+				if (census.getCountByTreeSpecies(choice) > 0)
+					outputEstimate(choice, census);
+				else // the sketch never undercounts, so the species was not seen
+					System.out.print("\nThere are no records of '" + choice + "' on NYC streets.\n");
+			}
+			in.close();
+			System.out.println("\nEnd of Program.");
+			return;
+		}
+		if (hasOption(args, "-outofcore")) {
+			// trees are sorted into runs on disk and merged into a B+tree file,
+			// queries read its pages through a small cache
+			OutOfCoreTreeCollection store = null;
+			try {
+				store = new OutOfCoreTreeCollection();
+				readFile(store, file);
+			}
+			catch (IOException e) {
+				System.err.println("Error: the file '" + args[0] + "' could not be read: " + e.getMessage());
+				System.exit(1);
+			}
+			
+			promptSpecies(in, store, profile);
+			in.close();
+			try {
+				store.close(); // deletes the B+tree file
+			}
+			catch (IOException e) {
+				System.err.println("Error: " + e.getMessage());
+			}
+			System.out.println("\nEnd of Program.");
+			return;
+		}
+		if (hasOption(args, "-sharded")) {
+			// one collection per borough, filled by several loader threads at once
+			ShardedTreeCollection sharded = new ShardedTreeCollection();
+			int loaders = Math.max(2, Runtime.getRuntime().availableProcessors());
+			try {
+				readFile(sharded, file, loaders);
+			}
+			catch (IOException | InterruptedException e) {
+				System.err.println("Error: the file '" + args[0] + "' could not be read: " + e.getMessage());
+				System.exit(1);
+			}
+			promptSpecies(in, sharded, profile);
+			in.close();
+			System.out.println("\nEnd of Program.");
+			return;
+		}
+		if (hasOption(args, "-mapped")) {
+			// only line offsets, species and boroughs are kept; other columns are read on demand
+			MappedTreeFile mapped = null;
+			try {
+				mapped = new MappedTreeFile(file);
+			}
+			catch (IOException e) {
+				System.err.println("Error: the file '" + args[0] + "' could not be read: " + e.getMessage());
+				System.exit(1);
+			}
+			promptSpecies(in, mapped, profile);
+			in.close();
+			System.out.println("\nEnd of Program.");
+			return;
+		}
+		if (hasOption(args, "-wal")) {
+			// corrections are logged in <file>.wal and survive a restart; the file
+			// is read until an import of it has completed there
+			DurableTreeCollection durable = null;
+			try {
+				durable = openDurable(file, new File(file.getPath() + ".wal"));
+			}
+			catch (IOException e) {
+				System.err.println("Error: the file '" + args[0] + "' could not be read: " + e.getMessage());
+				System.exit(1);
+			}
+			System.out.print(durable.report());
+			promptDurable(in, durable, profile);
+			in.close();
+			try {
+				durable.close();
+			}
+			catch (IOException e) {
+				System.err.println("Error: " + e.getMessage());
+			}
+			System.out.println("\nEnd of Program.");
+			return;
+		}
+		if (hasOption(args, "-lazy")) {
+			// rows can be queried by scanning them while the tree is built in the background
+			LazyTreeCollection lazy = new LazyTreeCollection();
+			lazy.load(file);
+			System.out.print(lazy.report());
+			promptSpecies(in, lazy, profile);
+			in.close();
+			System.out.print("\n" + lazy.report());
+			System.out.println("\nEnd of Program.");
+			return;
+		}
+		if (hasOption(args, "-merge")) {
+			// the file and the files after -merge are censuses in chronological order;
+			// each is sorted on disk and the sorted censuses are merged in one pass
+			ArrayList<File> files = new ArrayList<File>();
+			files.add(file);
+			for (int i=optionIndex(args, "-merge") + 1; i<args.length && !args[i].startsWith("-"); i++)
+				files.add(new File(args[i]));
+			String[] labels = new String[files.size()];
+			for (int i=0; i<labels.length; i++)
+				labels[i] = files.get(i).getName();
+			CensusMerge merge = new CensusMerge(labels);
+			try {
+				mergeFiles(merge, files);
+			}
+			catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+				System.err.println("Error: the censuses could not be merged: " + e.getMessage());
+				System.exit(1);
+			}
+			System.out.print(merge);
+			
+			String choice = "";
+			while (!choice.equalsIgnoreCase("quit")) {
+				System.out.print("\nEnter a tree species to learn more about it (\"quit\" to stop): ");
+				choice = in.nextLine();
+				if (choice.equalsIgnoreCase("quit"))
+					break;
+				outputMerge(choice, merge);
+			}
+			in.close();
+			System.out.println("\nEnd of Program.");
+			return;
+		}
+		if (hasOption(args, "-live")) {
+			// the trees are added in the background while queries are answered,
+			// every answer from one version of a persistent collection
+			PersistentTreeCollection live = new PersistentTreeCollection();
+			Thread loader = background("live-loader", () -> {
+				try {
+					readFile(live, file);
+				}
+				catch (FileNotFoundException e) {
+					System.err.println("Error: the file '" + file + "' could not be read: " + e.getMessage());
+				}
+			});
+			promptLive(in, live, loader, profile);
+			in.close();
+			System.out.println("\nEnd of Program.");
+			return;
+		}
 		TreeCollection treeCollect = new TreeCollection(); // create instance for storing all tree objects later on
-		readFile(treeCollect, file); // call method for file processing
+		if (hasOption(args, "-pipeline")) {
+			// read, parse and insert on separate threads and report where the time goes
+			int parsers = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+			IngestPipeline pipeline = new IngestPipeline(parsers);
+			try {
+				pipeline.run(file, treeCollect);
+			}
+			catch (IOException | InterruptedException e) {
+				System.err.println("Error: the file '" + args[0] + "' could not be read: " + e.getMessage());
+				System.exit(1);
+			}
+			System.out.print(pipeline.report());
+		}
+		else {
+			readFile(treeCollect, file); // call method for file processing
+		}
 		
 		// loop for checking frequency of a given tree name as long as user doesn't quit program
 		String choice = "";
+		TreeColumns columns = null; // column store for filters, built on first use
+		BitmapIndex bitmaps = null; // bitmaps over the status, health and borough columns
 		while (!choice.equalsIgnoreCase("quit")) {
 			
 			// prompt user for a name
 			System.out.print("\nEnter a tree species to learn more about it (\"quit\" to stop): ");
 			choice = in.nextLine();
 			
+			// "filter <expression>" counts the trees that match a filter expression
+			if (choice.toLowerCase().startsWith("filter ")) {
+				if (columns == null) {
+					columns = new TreeColumns(treeCollect);
+					bitmaps = new BitmapIndex(columns);
+				}
+				outputFilter(choice.substring("filter ".length()), columns, bitmaps);
+				continue;
+			}
+			
+			// "complete <prefix>" lists the most common species starting with prefix
+			if (choice.toLowerCase().startsWith("complete ")) {
+				outputCompletions(choice.substring("complete ".length()), treeCollect);
+				continue;
+			}
+			
+			// "top <borough or zip code> [k]" lists the most common species there
+			if (choice.toLowerCase().startsWith("top ")) {
+				outputTopSpecies(choice.substring("top ".length()).trim(), treeCollect);
+				continue;
+			}
+			
+			// "groupby <columns> [aggregates]" aggregates any columns of the file in one pass
+			if (choice.toLowerCase().startsWith("groupby ")) {
+				outputGroupBy(choice.substring("groupby ".length()).trim(), file);
+				continue;
+			}
+			
+			// "heatmap <zoom> [species]" draws the density of trees over the city
+			if (choice.toLowerCase().startsWith("heatmap ")) {
+				outputHeatMap(choice.substring("heatmap ".length()).trim(), treeCollect);
+				continue;
+			}
+			
+			// "page <species> [after <tree id>]" lists the trees of a species, PAGE_SIZE at a time
+			if (choice.toLowerCase().startsWith("page ")) {
+				outputPage(choice.substring("page ".length()).trim(), treeCollect);
+				continue;
+			}
+			
+			// "footprint" estimates the memory used by the collection
+			if (choice.trim().equalsIgnoreCase("footprint")) {
+				System.out.print("\n" + treeCollect.footprint());
+				continue;
+			}
+			
+			// "explain <species>" displays the data of a species and the work done by each query
+			if (choice.toLowerCase().startsWith("explain ")) {
+				outputExplain(choice.substring("explain ".length()), treeCollect);
+				continue;
+			}
+			if (profile && !choice.equalsIgnoreCase("quit")) {
+				outputExplain(choice, treeCollect);
+				continue;
+			}
+			
 			// check if the tree species that user entered exists
 			boolean treeExists = false;
 			Collection<String> match = treeCollect.getMatchingSpecies(choice);
@@ -72,8 +329,10 @@ public class NYCStreetTrees {
 				outputData(choice, treeCollect, match); // call method for displaying data about the given tree
 			}
 			else { // if tree does not exist
-				if (!choice.equalsIgnoreCase("quit"))
+				if (!choice.equalsIgnoreCase("quit")) {
 					System.out.print("\nThere are no records of '" + choice + "' on NYC streets.\n");	
+					outputSuggestions(choice, treeCollect);
+				}
 			}
 		}
 		in.close();
@@ -82,6 +341,290 @@ public class NYCStreetTrees {
 	}
 	
 
+	/**
+	 * Prompts for tree species and displays their data until the user enters
+	 * "quit", for the modes that only answer the TreeCounts queries.
+	 * "explain <species>" also displays the profile of the queries.
+	 * 
+	 * @param the scanner reading the user's input, the trees to be queried,
+	 * and whether every query is explained
+	 */
+	public static void promptSpecies(Scanner in, TreeCounts counts, boolean profile) {
+		String choice = "";
+		while (!choice.equalsIgnoreCase("quit")) {
+			System.out.print("\nEnter a tree species to learn more about it (\"quit\" to stop): ");
+			choice = in.nextLine();
+			if (choice.equalsIgnoreCase("quit"))
+				break;
+			outputSpecies(choice, counts, profile);
+		}
+	}
+	
+	
+	/**
+	 * Prompts like promptSpecies while a background thread changes a
+	 * persistent collection. Every report is computed on one snapshot, so
+	 * its counts agree with each other even while trees are added or removed.
+	 * "cleanup" removes the stumps and dead trees in the background, one
+	 * version per tree, once the previous change is done.
+	 * 
+	 * @param the scanner reading the user's input, the persistent collection,
+	 * the thread that is changing it, and whether every query is explained
+	 */
+	public static void promptLive(Scanner in, PersistentTreeCollection live, Thread writer, boolean profile) {
+		String choice = "";
+		while (!choice.equalsIgnoreCase("quit")) {
+			System.out.print("\nEnter a tree species to learn more about it (\"quit\" to stop): ");
+			choice = in.nextLine();
+			if (choice.equalsIgnoreCase("quit"))
+				break;
+			if (choice.trim().equalsIgnoreCase("cleanup")) {
+				if (writer.isAlive()) {
+					System.out.print("\nThe trees are still being changed, try again later.\n");
+					continue;
+				}
+				writer = background("live-cleanup", () -> {
+					for (Tree t : live.snapshot()) {
+						if (!t.getStatus().equals("alive"))
+							live.remove(t);
+					}
+				});
+				System.out.print("\nRemoving the stumps and dead trees in the background.\n");
+				continue;
+			}
+			boolean changing = writer.isAlive();
+			TreeCollection version = live.snapshot(); // held for the whole report
+			outputSpecies(choice, version, profile);
+			if (changing)
+				System.out.printf("\n(Answered from a version of %,d trees; the trees are still being changed.)\n",
+						version.size());
+		}
+	}
+	
+	// start a daemon thread, which does not keep the program running after "quit"
+	private static Thread background(String name, Runnable task) {
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+	
+	
+	/**
+	 * Prompts like promptSpecies for a durable collection, which also accepts
+	 * the corrections "add <line in the format of the data file>" and
+	 * "remove <tree id>", and "checkpoint". Every correction is on disk when
+	 * it is confirmed.
+	 * 
+	 * @param the scanner reading the user's input, the durable collection,
+	 * and whether every query is explained
+	 */
+	public static void promptDurable(Scanner in, DurableTreeCollection durable, boolean profile) {
+		String choice = "";
+		while (!choice.equalsIgnoreCase("quit")) {
+			System.out.print("\nEnter a tree species to learn more about it (\"quit\" to stop): ");
+			choice = in.nextLine();
+			if (choice.equalsIgnoreCase("quit"))
+				break;
+			try {
+				if (choice.toLowerCase().startsWith("add ")) {
+					Tree t = parseLine(choice.substring("add ".length()));
+					if (t == null)
+						System.out.println("\nThe line is not a valid record of the data file.");
+					else if (durable.add(t))
+						System.out.println("\nAdded tree " + t.getId() + ".");
+					else
+						System.out.println("\nTree " + t.getId() + " is already stored.");
+					continue;
+				}
+				if (choice.toLowerCase().startsWith("remove ")) {
+					int id = Integer.parseInt(choice.substring("remove ".length()).trim());
+					Tree t = durable.getById(id);
+					if (t != null && durable.remove(t))
+						System.out.println("\nRemoved tree " + id + ".");
+					else
+						System.out.println("\nThere is no tree " + id + ".");
+					continue;
+				}
+				if (choice.trim().equalsIgnoreCase("checkpoint")) {
+					durable.checkpoint();
+					System.out.println("\nCheckpoint written.");
+					continue;
+				}
+			}
+			catch (NumberFormatException e) {
+				System.out.println("\nUsage: remove <tree id>");
+				continue;
+			}
+			catch (Exception e) {
+				System.err.println("Error: the correction could not be saved: " + e.getMessage());
+				continue;
+			}
+			outputSpecies(choice, durable, profile);
+		}
+	}
+	
+	
+	// displays the data of a species for promptSpecies and promptDurable, or explains it
+	private static void outputSpecies(String choice, TreeCounts counts, boolean profile) {
+		if (profile || choice.toLowerCase().startsWith("explain ")) {
+			outputExplain(profile ? choice : choice.substring("explain ".length()), counts);
+			return;
+		}
+		Collection<String> match = counts.getMatchingSpecies(choice);
+		if (match.size() > 0)
+			outputData(choice, counts, match);
+		else
+			System.out.print("\nThere are no records of '" + choice + "' on NYC streets.\n");
+	}
+	
+	
+	/**
+	 * Displays the number of trees of the matching species in every census
+	 * of a merge, and the trees gained, lost and whose health changed since
+	 * the previous census.
+	 * 
+	 * @param string 'choice' (species name or part of it) and the merged censuses
+	 */
+	public static void outputMerge(String choice, CensusMerge merge) {
+		ArrayList<String> match = new ArrayList<String>();
+		for (String name : merge.getSpecies()) {
+			if (name.contains(choice.toLowerCase()))
+				match.add(name);
+		}
+		if (match.isEmpty()) {
+			System.out.print("\nThere are no records of '" + choice + "' in any census.\n");
+			return;
+		}
+		System.out.println("\nAll matching species: ");
+		for (String name : match)
+			System.out.printf("   %s\n", name);
+		System.out.println("\nChange by census: ");
+		for (int i=0; i<merge.getInputCount(); i++) {
+			int count = 0, gained = 0, lost = 0, changed = 0;
+			for (String name : match) {
+				count += merge.getCount(name, i);
+				gained += merge.getGained(name, i);
+				lost += merge.getLost(name, i);
+				changed += merge.getHealthChanged(name, i);
+			}
+			System.out.printf("   %-30s:%,10d", merge.getLabel(i), count);
+			if (i > 0)
+				System.out.printf("  (+%,d  -%,d  health changed %,d)", gained, lost, changed);
+			System.out.println();
+		}
+	}
+	
+	
+	/**
+	 * Runs a GROUP BY query over the data file and displays the largest groups
+	 * (by the first aggregate). The argument is "<columns> [aggregates]", both
+	 * separated by commas, e.g. "nta,health count,avg(tree_dbh)"; the default
+	 * aggregate is count.
+	 * 
+	 * @param the query and the data file
+	 */
+	public static void outputGroupBy(String argument, File file) {
+		String[] parts = argument.split("\\s+", 2);
+		List<GroupByQuery.Group> groups;
+		GroupByQuery query;
+		try {
+			query = new GroupByQuery(parts[0], (parts.length > 1) ? parts[1] : "count");
+			groups = query.run(file);
+		}
+		catch (IllegalArgumentException | IOException e) {
+			System.out.print("\n" + e.getMessage() + "\nUsage: groupby <column,...> [count|sum|avg|min|max(column),...]\n");
+			return;
+		}
+		groups.sort((a, b) -> Double.compare(b.getValue(0), a.getValue(0)));
+		
+		String[] names = query.getColumnNames();
+		System.out.printf("\n%,d groups in %,d rows:\n   ", groups.size(), query.getRowsScanned());
+		for (String name : names)
+			System.out.printf("%-20s", name);
+		System.out.println();
+		for (int i=0; i<groups.size() && i<GROUPS_SHOWN; i++) {
+			System.out.print("   ");
+			for (String value : groups.get(i).getKey())
+				System.out.printf("%-20s", value);
+			for (double value : groups.get(i).getValues())
+				System.out.printf("%-20s", (value == Math.rint(value)) ? String.format("%,.0f", value)
+						: String.format("%,.2f", value));
+			System.out.println();
+		}
+		if (groups.size() > GROUPS_SHOWN)
+			System.out.printf("   ... and %,d more groups\n", groups.size() - GROUPS_SHOWN);
+	}
+	
+	
+	/**
+	 * Draws the number of trees per cell over the whole city at a zoom level
+	 * (0 to 6, 2^zoom cells per side), north at the top, with darker characters
+	 * for denser cells. The argument is "<zoom> [species]".
+	 * 
+	 * @param the zoom level optionally followed by a species, and the collection
+	 */
+	public static void outputHeatMap(String argument, TreeCollection treeCollect) {
+		String[] parts = argument.split(" ", 2);
+		int zoom;
+		try {
+			zoom = Integer.parseInt(parts[0]);
+		}
+		catch (NumberFormatException e) {
+			System.out.print("\nUsage: heatmap <zoom 0-6> [species]\n");
+			return;
+		}
+		if (zoom < 0 || zoom > 6) {
+			System.out.print("\nUsage: heatmap <zoom 0-6> [species]\n");
+			return;
+		}
+		String species = (parts.length > 1) ? parts[1].trim() : null;
+		int[][] counts = treeCollect.getTileCounts(zoom, TilePyramid.NYC_MIN_X, TilePyramid.NYC_MIN_Y,
+				TilePyramid.NYC_MIN_X + TilePyramid.NYC_SIDE, TilePyramid.NYC_MIN_Y + TilePyramid.NYC_SIDE,
+				species, null);
+		int max = 0, total = 0;
+		for (int[] row : counts) {
+			for (int count : row) {
+				max = Math.max(max, count);
+				total += count;
+			}
+		}
+		String shades = " .:-=+*#%@";
+		System.out.printf("\nTrees%s per %,.0f ft cell (%,d in all, at most %,d in a cell):\n",
+				(species == null) ? "" : " of '" + species + "'", TilePyramid.NYC_SIDE / (1 << zoom), total, max);
+		for (int r=counts.length-1; r>=0; r--) { // north at the top
+			StringBuilder line = new StringBuilder("   ");
+			for (int count : counts[r]) {
+				// shade on a square root scale, so sparse cells still show
+				int shade = (count == 0) ? 0 : 1 + (int) (Math.sqrt((double) count / max) * (shades.length() - 2));
+				line.append(shades.charAt(shade)).append(shades.charAt(shade));
+			}
+			System.out.println(line);
+		}
+	}
+	
+	
+	/**
+	 * Checks whether an option (e.g. "-pipeline") was given on the command line
+	 * after the file name.
+	 * 
+	 * @param the command line arguments and the option to look for
+	 * @return true if the option is present
+	 */
+	public static boolean hasOption(String[] args, String option) {
+		return optionIndex(args, option) > 0;
+	}
+	
+	// position of an option in the arguments after the file name, or -1
+	private static int optionIndex(String[] args, String option) {
+		for (int i=1; i<args.length; i++) {
+			if (args[i].equalsIgnoreCase(option))
+				return i;
+		}
+		return -1;
+	}
+	
+	
 	/**
 	 * Reads and processes file, and creates Tree objects that store data about each tree.
 	 * 
@@ -100,78 +643,13 @@ public class NYCStreetTrees {
 			Scanner info = new Scanner(file);
 			while (info.hasNext()) { // read each line in file
 				String nextLine = info.nextLine();
-				ArrayList<String> treeData = splitCSVLine(nextLine); // call method for splitting CSV lines
-				
-				if (treeData.size() != 41) {
-					// skip over lines that are not valid (they don't have 41 entries exactly)
-					continue;
-				}
-				else {
-					// skip over invalid arguments for all parameters
-					try {
-						if ( !( (Integer)Integer.parseInt(treeData.get(0)) instanceof Integer) || // is tree_id an int?
-								!((Integer)Integer.parseInt(treeData.get(3)) instanceof Integer) || // is tree_dbh an int?
-								!((Integer)Integer.parseInt(treeData.get(25)) instanceof Integer) ||  // is zip an int?
-								!((Double)Double.parseDouble(treeData.get(39)) instanceof Double) || // is x_sp a double?
-								!((Double)Double.parseDouble(treeData.get(40)) instanceof Double) ) { // is y_sp a double?
-							throw new IllegalArgumentException();
-						}
-						if ( ((Integer)Integer.parseInt(treeData.get(0)) < 0) ) { // is tree_id positive?
-							throw new IllegalArgumentException();
-						}
-						if ( ((Integer)Integer.parseInt(treeData.get(3)) < 0) ) { // is tree_dbh positive?
-							throw new IllegalArgumentException();
-						}
-						if ( !( treeData.get(6).equalsIgnoreCase("Alive") || // is status alive?
-								treeData.get(6).equalsIgnoreCase("Dead") || // is status dead?
-								treeData.get(6).equalsIgnoreCase("Stump") || // is status stump?
-								treeData.get(6).equals("") || // is status an empty string?
-								treeData.get(6) == null) ) { // is status null?
-							throw new IllegalArgumentException();
-						}
-						if ( !( treeData.get(7).equalsIgnoreCase("Good") || // is health good?
-								treeData.get(7).equalsIgnoreCase("Fair") || // is health fair?
-								treeData.get(7).equalsIgnoreCase("Poor") || // is health poor?
-								treeData.get(7).equals("") || // is health an empty string?
-								treeData.get(7) == null) ) { // is health null?
-							throw new IllegalArgumentException();
-						}
-						if ( treeData.get(9) == null ) { // is spc_common null?
-							throw new IllegalArgumentException();
-						}
-						if ( ((Integer)Integer.parseInt(treeData.get(25)) < 0) || // is zip a number from 0-99999?
-								((Integer)Integer.parseInt(treeData.get(25)) > 99999) ) {
-							throw new IllegalArgumentException();
-						}
-						if ( !( treeData.get(29).equalsIgnoreCase("Manhattan") || // is boro manhattan?
-								treeData.get(29).equalsIgnoreCase("Bronx") || // is boro bronx?
-								treeData.get(29).equalsIgnoreCase("Brooklyn") || // is boro brooklyn?
-								treeData.get(29).equalsIgnoreCase("Queens") || // is boro queens?
-								treeData.get(29).equalsIgnoreCase("Staten Island")) ) { // is boro staten island?
-							throw new IllegalArgumentException();
-						}
-					} 
-					catch (IllegalArgumentException e) {
-						continue; // ignore the exception and move on to next line
-					}
-					
-					// create tree object using Tree class with 9 parameters passed
-					// only store data from the following indexes: 0, 3, 6, 7, 9, 25, 29, 39, 40
-					// format all character strings to lowercase
-					// format all numeric strings to Integer or Double
-					Tree treeObject = new Tree(Integer.parseInt(treeData.get(0)), 
-							Integer.parseInt(treeData.get(3)), 
-							treeData.get(6).toLowerCase(), 
-							treeData.get(7).toLowerCase(), 
-							treeData.get(9).toLowerCase(), 
-							Integer.parseInt(treeData.get(25)),
-							treeData.get(29).toLowerCase(), 
-							Double.parseDouble(treeData.get(39)), 
-							Double.parseDouble(treeData.get(40)));
-					
-					// add this tree object to the TreeCollection list
-					treeCollect.add(treeObject);
+				Tree treeObject = parseLine(nextLine); // call method for parsing and validating CSV lines
+				if (treeObject == null) {
+					continue; // skip over lines that are not valid
 				}
+				
+				// add this tree object to the TreeCollection list
+				treeCollect.add(treeObject);
 			}
 			info.close();
 		}
@@ -181,6 +659,320 @@ public class NYCStreetTrees {
 	}
 	
 	
+	/**
+	 * Reads and processes a file in streaming mode: every valid line is counted
+	 * in the census and then dropped, so the file can be larger than memory.
+	 * Files whose name ends in ".gz" are decompressed while they are read.
+	 * 
+	 * @param the census that counts the trees, and the file to be read
+	 * @throws IOException if the file cannot be opened or read
+	 */
+	public static void readFile(StreamingCensus census, File file) throws IOException {
+		InputStream stream = new FileInputStream(file);
+		if (file.getName().toLowerCase().endsWith(".gz"))
+			stream = new GZIPInputStream(stream, 1 << 16);
+		Scanner info = new Scanner(stream, "UTF-8");
+		try {
+			while (info.hasNextLine()) { // read each line in file
+				Tree treeObject = parseLine(info.nextLine());
+				if (treeObject != null)
+					census.add(treeObject);
+			}
+			if (info.ioException() != null)
+				throw info.ioException();
+		}
+		finally {
+			info.close();
+		}
+	}
+	
+	
+	/**
+	 * Reads and processes a file into an out-of-core collection, then builds
+	 * its B+tree. Lines are validated by parseLine as in the other modes.
+	 * 
+	 * @param the collection that stores the trees on disk, and the file to be read
+	 * @throws IOException if the file cannot be read or the collection's files
+	 * cannot be written
+	 */
+	public static void readFile(OutOfCoreTreeCollection store, File file) throws IOException {
+		Scanner info = new Scanner(file);
+		try {
+			while (info.hasNextLine()) { // read each line in file
+				Tree treeObject = parseLine(info.nextLine());
+				if (treeObject != null)
+					store.add(treeObject);
+			}
+			if (info.ioException() != null)
+				throw info.ioException();
+		}
+		finally {
+			info.close();
+		}
+		store.build();
+	}
+	
+	
+	/**
+	 * Opens the durable collection kept in a directory, importing a file into
+	 * it unless an earlier import has completed: a marker file is written to
+	 * the directory once the trees are in a checkpoint, and the directory is
+	 * forced before this method returns. An import cut short by a crash
+	 * leaves no marker and is run again at the next start, which only adds
+	 * the trees that are missing, as the ids of the trees already committed
+	 * are taken. Corrections can only be made once the marker is on the disk;
+	 * on a system where the directory cannot be forced, a crash right after
+	 * the import may still lose the marker, and the import run again would
+	 * add back the trees removed since.
+	 * 
+	 * @param the file to be imported and the directory of the collection
+	 * @return the durable collection, holding every tree of the file
+	 * @throws IOException if the file cannot be read or the directory cannot
+	 * be read or written
+	 */
+	public static DurableTreeCollection openDurable(File file, File directory) throws IOException {
+		DurableTreeCollection durable = new DurableTreeCollection(directory);
+		File marker = new File(directory, IMPORTED);
+		if (marker.exists())
+			return durable;
+		try {
+			readFile(durable, file);
+			durable.checkpoint();
+			try (FileOutputStream out = new FileOutputStream(marker)) {
+				out.write((file.getName() + "\n").getBytes(StandardCharsets.UTF_8));
+				out.getFD().sync();
+			}
+			DurableTreeCollection.forceDirectory(directory);
+		}
+		catch (IOException | RuntimeException e) {
+			try {
+				durable.close();
+			}
+			catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+		return durable;
+	}
+	
+	
+	/**
+	 * Reads and processes a file into a durable collection, committing the
+	 * trees to its log in batches of LOAD_BATCH lines. Lines are validated by
+	 * parseLine as in the other modes.
+	 * 
+	 * @param the durable collection and the file to be read
+	 * @throws IOException if the file cannot be read or the log cannot be written
+	 */
+	public static void readFile(DurableTreeCollection durable, File file) throws IOException {
+		Scanner info = new Scanner(file);
+		try {
+			ArrayList<Tree> batch = new ArrayList<Tree>(LOAD_BATCH);
+			while (info.hasNextLine()) {
+				Tree treeObject = parseLine(info.nextLine());
+				if (treeObject != null)
+					batch.add(treeObject);
+				if (batch.size() == LOAD_BATCH || !info.hasNextLine()) {
+					durable.addAll(batch);
+					batch.clear();
+				}
+			}
+			if (info.ioException() != null)
+				throw info.ioException();
+		}
+		finally {
+			info.close();
+		}
+	}
+	
+	
+	/**
+	 * Merges several census files in one pass. Every file is sorted on disk
+	 * by an OutOfCoreTreeCollection, whose trees are read back in the order
+	 * of Tree.compareTo, so the heap used does not grow with the number of
+	 * rows. The temporary files are deleted when the merge ends.
+	 * 
+	 * @param the merge, with one label per file, and the files in chronological order
+	 * @throws IOException if a file cannot be read or sorted
+	 * @throws IllegalArgumentException if the number of files does not match the labels
+	 */
+	public static void mergeFiles(CensusMerge merge, List<File> files) throws IOException,
+		IllegalArgumentException {
+		ArrayList<OutOfCoreTreeCollection> stores = new ArrayList<OutOfCoreTreeCollection>();
+		try {
+			ArrayList<Iterator<Tree>> inputs = new ArrayList<Iterator<Tree>>();
+			for (File file : files) {
+				OutOfCoreTreeCollection store = new OutOfCoreTreeCollection();
+				stores.add(store);
+				readFile(store, file);
+				inputs.add(store.iterator());
+			}
+			merge.merge(inputs);
+		}
+		finally {
+			for (OutOfCoreTreeCollection store : stores)
+				store.close();
+		}
+	}
+	
+	
+	/**
+	 * Reads and processes a file into a persistent collection. Every tree is
+	 * published as a new version, so snapshots taken meanwhile hold the trees
+	 * read so far. Lines are validated by parseLine as in the other modes.
+	 * 
+	 * @param the persistent collection that will hold all Tree objects, and the file to be read
+	 * @throws FileNotFoundException if the file does not exist
+	 */
+	public static void readFile(PersistentTreeCollection live, File file) throws FileNotFoundException {
+		Scanner info = new Scanner(file);
+		while (info.hasNextLine()) {
+			Tree treeObject = parseLine(info.nextLine());
+			if (treeObject != null)
+				live.add(treeObject);
+		}
+		info.close();
+	}
+	
+	
+	/**
+	 * Reads and processes a file into a sharded collection. The lines are read
+	 * in batches by the calling thread; every batch is parsed and added by one
+	 * of the loader threads, so trees of different boroughs are inserted in
+	 * parallel. Lines are validated by parseLine as in the other modes.
+	 * 
+	 * @param the collection that will hold all Tree objects, the file to be read
+	 * and the number of loader threads
+	 * @throws IOException if the file cannot be read
+	 * @throws InterruptedException if the calling thread is interrupted
+	 */
+	public static void readFile(ShardedTreeCollection sharded, File file, int loaders) throws IOException,
+		InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(loaders);
+		Scanner info = new Scanner(file);
+		try {
+			long lineNumber = 0;
+			while (info.hasNextLine()) {
+				final ArrayList<String> lines = new ArrayList<String>(LOAD_BATCH);
+				final long first = lineNumber;
+				while (lines.size() < LOAD_BATCH && info.hasNextLine())
+					lines.add(info.nextLine());
+				lineNumber += lines.size();
+				pool.execute(() -> {
+					ArrayList<Tree> batch = new ArrayList<Tree>(lines.size());
+					for (String line : lines) {
+						Tree treeObject = parseLine(line);
+						if (treeObject != null)
+							batch.add(treeObject);
+					}
+					sharded.addAll(batch, first); // positions keep the species in file order
+				});
+			}
+			if (info.ioException() != null)
+				throw info.ioException();
+		}
+		finally {
+			info.close();
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	
+	/**
+	 * Parses one line of the CSV file and validates the entries that are kept.
+	 * 
+	 * @param nextLine line of text to be parsed
+	 * @return a Tree object holding the data of the line, or null if the line is not
+	 * a valid record (it doesn't have 41 entries or a kept entry has an invalid value)
+	 */
+	public static Tree parseLine(String nextLine) {
+		ArrayList<String> treeData = splitCSVLine(nextLine); // call method for splitting CSV lines
+		if (!isValidRow(treeData)) {
+			return null; // skip over lines that are not valid
+		}
+		
+		// create tree object using Tree class with 9 parameters passed
+		// only store data from the following indexes: 0, 3, 6, 7, 9, 25, 29, 39, 40
+		// format all character strings to lowercase
+		// format all numeric strings to Integer or Double
+		return new Tree(Integer.parseInt(treeData.get(0)), 
+				Integer.parseInt(treeData.get(3)), 
+				treeData.get(6).toLowerCase(), 
+				treeData.get(7).toLowerCase(), 
+				treeData.get(9).toLowerCase(), 
+				Integer.parseInt(treeData.get(25)),
+				treeData.get(29).toLowerCase(), 
+				Double.parseDouble(treeData.get(39)), 
+				Double.parseDouble(treeData.get(40)));
+	}
+	
+	
+	/**
+	 * Checks the entries of one line of the CSV file that are kept in a Tree
+	 * (indexes 0, 3, 6, 7, 9, 25, 29, 39 and 40); the other entries are not read.
+	 * 
+	 * @param the entries of the line, as split by splitCSVLine
+	 * @return true if the line has 41 entries and all kept entries have valid values
+	 */
+	public static boolean isValidRow(List<String> treeData) {
+		if (treeData.size() != 41) {
+			// skip over lines that are not valid (they don't have 41 entries exactly)
+			return false;
+		}
+		
+		// skip over invalid arguments for all parameters
+		try {
+			if ( !( (Integer)Integer.parseInt(treeData.get(0)) instanceof Integer) || // is tree_id an int?
+					!((Integer)Integer.parseInt(treeData.get(3)) instanceof Integer) || // is tree_dbh an int?
+					!((Integer)Integer.parseInt(treeData.get(25)) instanceof Integer) ||  // is zip an int?
+					!((Double)Double.parseDouble(treeData.get(39)) instanceof Double) || // is x_sp a double?
+					!((Double)Double.parseDouble(treeData.get(40)) instanceof Double) ) { // is y_sp a double?
+				throw new IllegalArgumentException();
+			}
+			if ( ((Integer)Integer.parseInt(treeData.get(0)) < 0) ) { // is tree_id positive?
+				throw new IllegalArgumentException();
+			}
+			if ( ((Integer)Integer.parseInt(treeData.get(3)) < 0) ) { // is tree_dbh positive?
+				throw new IllegalArgumentException();
+			}
+			if ( !( treeData.get(6).equalsIgnoreCase("Alive") || // is status alive?
+					treeData.get(6).equalsIgnoreCase("Dead") || // is status dead?
+					treeData.get(6).equalsIgnoreCase("Stump") || // is status stump?
+					treeData.get(6).equals("") || // is status an empty string?
+					treeData.get(6) == null) ) { // is status null?
+				throw new IllegalArgumentException();
+			}
+			if ( !( treeData.get(7).equalsIgnoreCase("Good") || // is health good?
+					treeData.get(7).equalsIgnoreCase("Fair") || // is health fair?
+					treeData.get(7).equalsIgnoreCase("Poor") || // is health poor?
+					treeData.get(7).equals("") || // is health an empty string?
+					treeData.get(7) == null) ) { // is health null?
+				throw new IllegalArgumentException();
+			}
+			if ( treeData.get(9) == null ) { // is spc_common null?
+				throw new IllegalArgumentException();
+			}
+			if ( ((Integer)Integer.parseInt(treeData.get(25)) < 0) || // is zip a number from 0-99999?
+					((Integer)Integer.parseInt(treeData.get(25)) > 99999) ) {
+				throw new IllegalArgumentException();
+			}
+			if ( !( treeData.get(29).equalsIgnoreCase("Manhattan") || // is boro manhattan?
+					treeData.get(29).equalsIgnoreCase("Bronx") || // is boro bronx?
+					treeData.get(29).equalsIgnoreCase("Brooklyn") || // is boro brooklyn?
+					treeData.get(29).equalsIgnoreCase("Queens") || // is boro queens?
+					treeData.get(29).equalsIgnoreCase("Staten Island")) ) { // is boro staten island?
+				throw new IllegalArgumentException();
+			}
+		} 
+		catch (IllegalArgumentException e) {
+			return false; // ignore the exception and skip this line
+		}
+		return true;
+	}
+	
+	
 	/**
 	 * Displays output of data for corresponding tree species.
 	 * Uses methods from the TreeList class to process data.
@@ -191,7 +983,7 @@ public class NYCStreetTrees {
 	 * @author Kelly Xie (kyx203)
 	 */
 	public static void outputData(String choice, 
-			TreeCollection treeCollect, Collection<String> match) {
+			TreeCounts treeCollect, Collection<String> match) {
 		
 		
 		// ============== DISPLAY ALL MATCHING TREE SPECIES ==============
@@ -251,6 +1043,203 @@ public class NYCStreetTrees {
 	}
 	
 	
+	/**
+	 * Displays the estimated popularity of a tree species in streaming mode,
+	 * in the same format as outputData. Species counts are estimates with the
+	 * error bound of the census; the totals are exact.
+	 * 
+	 * @param a string holding the species name (exact, case insensitive) and the census
+	 */
+	public static void outputEstimate(String choice, StreamingCensus census) {
+		System.out.printf("\nPopularity in the city (estimated, at most %,d too high with %.0f%% confidence): \n",
+				census.getErrorBound(), 100 * census.getConfidence());
+		
+		long total = census.getTotalNumberOfTrees();
+		long count = census.getCountByTreeSpecies(choice);
+		System.out.printf("   %-15s:%,10d(%,d)%7.2f%%\n", "NYC", count, total,
+				(total == 0) ? 0 : 100 * ((double) count / (double) total));
+		
+		String[] boroName = {"Manhattan", "Bronx", "Brooklyn", "Queens", "Staten Island"};
+		for (int i=0; i<boroName.length; i++) {
+			long boroTotal = census.getCountByBorough(boroName[i]);
+			long boroCount = census.getCountByTreeSpeciesBorough(choice, boroName[i]);
+			System.out.printf("   %-15s:%,10d(%,d)%7.2f%%\n", boroName[i], boroCount, boroTotal,
+					(boroTotal == 0) ? 0 : 100 * ((double) boroCount / (double) boroTotal));
+		}
+	}
+	
+	
+	/**
+	 * Displays the number of trees that match a filter expression (see TreeFilter),
+	 * in the whole city and in each borough. Filters on status, health and borough
+	 * only are answered from the bitmap index.
+	 * 
+	 * @param a string holding the filter expression, the columns of all trees
+	 * and their bitmap index
+	 */
+	public static void outputFilter(String expression, TreeColumns columns, BitmapIndex bitmaps) {
+		TreeFilter filter;
+		try {
+			filter = TreeFilter.parse(expression);
+		}
+		catch (IllegalArgumentException e) {
+			System.out.println("\nInvalid filter: " + e.getMessage());
+			return;
+		}
+		
+		int[] byBoro = filter.countByBorough(columns, bitmaps);
+		int total = filter.count(columns, bitmaps); // also counts trees of an unknown borough
+		
+		System.out.println("\nTrees matching '" + filter + "': ");
+		System.out.printf("   %-15s:%,10d(%,d)\n", "NYC", total, columns.size());
+		// same order as TreeColumns.BORO
+		String[] boroName = {"Manhattan", "Bronx", "Brooklyn", "Queens", "Staten Island"};
+		for (int i=0; i<boroName.length; i++) {
+			System.out.printf("   %-15s:%,10d\n", boroName[i], byBoro[i]);
+		}
+	}
+	
+	
+	/**
+	 * Displays the species whose names start with a prefix, with the
+	 * number of trees of each, most common first.
+	 * 
+	 * @param a string holding the prefix and the TreeCollection of all trees
+	 */
+	public static void outputCompletions(String prefix, TreeCollection treeCollect) {
+		List<Map.Entry<String, Integer>> completions = treeCollect.completeSpecies(prefix, 10);
+		if (completions.isEmpty()) {
+			System.out.println("\nThere are no species starting with '" + prefix + "'.");
+			return;
+		}
+		System.out.println("\nSpecies starting with '" + prefix + "': ");
+		for (Map.Entry<String, Integer> e : completions) {
+			System.out.printf("   %-30s:%,10d\n", e.getKey(), e.getValue());
+		}
+	}
+	
+	
+	/**
+	 * Displays the data of a tree species like outputData, followed by the
+	 * profile of every query that produced it: BST nodes visited, comparisons,
+	 * Tree objects created, wall time and bytes allocated.
+	 * 
+	 * @param a string representing the species and the trees to be queried
+	 */
+	public static void outputExplain(String choice, TreeCounts counts) {
+		QueryProfiler profiler = new QueryProfiler(counts);
+		Collection<String> match = profiler.getMatchingSpecies(choice);
+		if (match.size() > 0)
+			outputData(choice, profiler, match);
+		else
+			System.out.print("\nThere are no records of '" + choice + "' on NYC streets.\n");
+		System.out.print("\n" + profiler.report());
+	}
+	
+	
+	/**
+	 * Displays one page of the trees of a species, in tree id order, and the
+	 * command that displays the next page. The argument is "<species>" for the
+	 * first page, or "<species> after <tree id>" for the page after that tree.
+	 * 
+	 * @param the argument of the page command and the TreeCollection of all trees
+	 */
+	public static void outputPage(String argument, TreeCollection treeCollect) {
+		String species = argument;
+		int after = 0;
+		int i = argument.toLowerCase().lastIndexOf(" after ");
+		if (i >= 0) {
+			try {
+				after = Integer.parseInt(argument.substring(i + " after ".length()).trim());
+				species = argument.substring(0, i).trim();
+			}
+			catch (NumberFormatException e) {
+				System.out.println("\nUsage: page <species> [after <tree id>]");
+				return;
+			}
+		}
+		List<Tree> page = treeCollect.page(species, after, PAGE_SIZE);
+		if (page.isEmpty()) {
+			System.out.print("\nThere are no more trees of '" + species + "'.\n");
+			return;
+		}
+		System.out.printf("\nTrees of '%s' after id %d:\n", species, after);
+		System.out.printf("   %10s%10s  %-8s%-8s%-8s%s\n", "id", "diameter", "status", "health", "zip", "borough");
+		for (Tree t : page)
+			System.out.printf("   %10d%10d  %-8s%-8s%05d   %s\n", t.getId(), t.getDiam(), t.getStatus(),
+					t.getHealth(), t.getZip(), t.getBoro());
+		if (page.size() == PAGE_SIZE)
+			System.out.println("Next page: page " + species + " after " + page.get(page.size() - 1).getId());
+	}
+	
+	
+	/**
+	 * Displays up to five species with names close to a name that was not
+	 * found, allowing more typing mistakes for longer names.
+	 * 
+	 * @param a string representing the user's input and the TreeCollection of all trees
+	 */
+	public static void outputSuggestions(String choice, TreeCollection treeCollect) {
+		String name = choice.trim();
+		// a short name would match too many species, so no edits are allowed
+		int maxDistance = (name.length() <= 3) ? 0 : (name.length() <= 7) ? 1 : 2;
+		List<String> similar = treeCollect.getSimilarSpecies(name, maxDistance);
+		if (similar.isEmpty())
+			return;
+		System.out.println("Did you mean: ");
+		for (int i=0; i<similar.size() && i<5; i++) {
+			System.out.printf("   %s\n", similar.get(i));
+		}
+	}
+	
+	
+	/**
+	 * Displays the k most common species in a borough or a zip code, k = 10
+	 * unless the argument ends with a number following the borough or zip code.
+	 * 
+	 * @param a string holding the borough name or zip code and optionally k,
+	 * and the TreeCollection of all trees
+	 */
+	public static void outputTopSpecies(String argument, TreeCollection treeCollect) {
+		int k = 10;
+		String place = argument;
+		int space = argument.lastIndexOf(' ');
+		int zip = -1;
+		try {
+			// without a number at the end, the whole argument is the place (e.g. "staten island")
+			if (space > 0 && argument.substring(space + 1).matches("-?\\d+")) {
+				k = Integer.parseInt(argument.substring(space + 1));
+				place = argument.substring(0, space).trim();
+			}
+			if (place.matches("\\d+"))
+				zip = Integer.parseInt(place);
+		}
+		catch (NumberFormatException e) { // k or the zip code does not fit in an int
+			k = 0;
+		}
+		if (k <= 0) {
+			System.out.println("\nUsage: top <borough or zip code> [k], with k > 0");
+			return;
+		}
+		
+		List<Map.Entry<String, Integer>> top;
+		if (zip >= 0)
+			top = treeCollect.topSpecies(zip, k);
+		else
+			top = treeCollect.topSpecies(place, k);
+		if (top.isEmpty()) {
+			System.out.println("\nThere are no records of trees in '" + place + "'.");
+			return;
+		}
+		
+		System.out.println("\nMost common species in " + place + ": ");
+		int rank = 1;
+		for (Map.Entry<String, Integer> e : top) {
+			System.out.printf("   %2d. %-30s:%,10d\n", rank++, e.getKey(), e.getValue());
+		}
+	}
+	
+	
 	/**
 	 * This class splits the given line of a CSV file according to commas and double quotes
 	 * (double quotes are used to surround multi-word entries that may contain commas).
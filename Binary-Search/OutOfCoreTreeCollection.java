@@ -0,0 +1,685 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * This class stores trees on disk instead of the heap, for data sets that
+ * do not fit in memory as objects. It is filled in two phases:
+ *
+ *   ingest - add() collects trees in a buffer of runSize trees; every full
+ *            buffer is sorted (species name, then tree id, as Tree.compareTo)
+ *            and written to a temporary run file;
+ *   build  - the runs are combined with a k-way merge (in several passes if
+ *            there are more than MAX_FAN_IN of them), dropping duplicate
+ *            trees, and the merged stream is bulk loaded bottom up into a
+ *            B+tree of fixed-size pages.
+ *
+ * Leaf pages hold the trees and are chained in key order. Every entry of an
+ * internal page holds a child page, the first key of the child and the number
+ * of trees under the child in each borough, so the number of trees of a
+ * species (in total or per borough) is found with two root-to-leaf descents,
+ * like the subtree sizes of BSTNode. Pages are read through a PageCache of
+ * cachePages pages.
+ *
+ * The heap used is bounded by the run buffer, the merge buffers, the page
+ * cache and the list of species names, none of which grows with the number
+ * of trees.
+ */
+public class OutOfCoreTreeCollection implements TreeCounts, Iterable<Tree>, Closeable {
+
+	public static final int PAGE_SIZE = 4096;
+	private static final int MAX_FAN_IN = 64; // runs merged in one pass
+	private static final int STREAM_BUFFER = 1 << 16; // bytes per run file buffer
+
+	// page layout: type byte, number of entries (short), next leaf page (int, -1 for none)
+	private static final byte LEAF = 0;
+	private static final byte INTERNAL = 1;
+	private static final int HEADER = 7;
+
+	// same order as TreeColumns.BORO
+	private static final String[] BORO = TreeColumns.BORO;
+
+	// private data fields
+	private final File directory;
+	private final boolean ownDirectory; // created by this object, deleted on close
+	private final int cachePages;
+	private Tree[] buffer;
+	private int buffered;
+	private ArrayList<File> runs = new ArrayList<File>();
+	private int runNumber;
+	private ArrayList<String> uniqueSpecies = new ArrayList<String>();
+	private HashSet<String> speciesSeen = new HashSet<String>();
+	private File treeFile;
+	private PageCache cache; // not null once the B+tree is built
+	private int root = -1;
+	private int pageCount;
+	private int size;
+	private int[] boroCount = new int[BORO.length];
+
+	/**
+	 * Default constructor: runs of 50,000 trees and a cache of 256 pages (1 MB),
+	 * in a new temporary directory that is deleted by close().
+	 *
+	 * @throws IOException if the directory cannot be created
+	 */
+	public OutOfCoreTreeCollection() throws IOException {
+		this(Files.createTempDirectory("trees").toFile(), true, 50000, 256);
+	}
+
+	/**
+	 * Constructor for a collection whose files are kept in the given directory.
+	 *
+	 * @param the directory for the run files and the B+tree file, the number of
+	 * trees sorted in memory per run and the number of pages cached
+	 * @throws IOException if the directory does not exist
+	 * @throws IllegalArgumentException if runSize or cachePages is not positive
+	 */
+	public OutOfCoreTreeCollection(File directory, int runSize, int cachePages) throws IOException,
+		IllegalArgumentException {
+		this(directory, false, runSize, cachePages);
+	}
+
+	private OutOfCoreTreeCollection(File directory, boolean ownDirectory, int runSize, int cachePages)
+			throws IOException, IllegalArgumentException {
+		if (runSize <= 0 || cachePages <= 0)
+			throw new IllegalArgumentException("Run size and cache size must be positive.");
+		if (!directory.isDirectory())
+			throw new IOException("Not a directory: " + directory);
+		this.directory = directory;
+		this.ownDirectory = ownDirectory;
+		this.cachePages = cachePages;
+		this.buffer = new Tree[runSize];
+	}
+
+
+	// ============== INGEST ==============
+
+	/**
+	 * Adds a tree. Duplicates (same species and tree id) are only detected
+	 * when the runs are merged by build(); the first one added is kept.
+	 *
+	 * @param Tree object t, cannot be null
+	 * @throws IOException if a run file cannot be written
+	 * @throws IllegalStateException if the collection has already been built
+	 */
+	public void add(Tree t) throws IOException, IllegalStateException {
+		if (t == null)
+			throw new NullPointerException();
+		if (cache != null)
+			throw new IllegalStateException("The collection has already been built.");
+		if (speciesSeen.add(t.getSpeciesName()))
+			uniqueSpecies.add(t.getSpeciesName()); // same order as TreeCollection
+		buffer[buffered++] = t;
+		if (buffered == buffer.length)
+			spill();
+	}
+
+	// sort the buffer and write it to a new run
+	private void spill() throws IOException {
+		Arrays.sort(buffer, 0, buffered); // stable, so equal trees keep their input order
+		File run = newRunFile();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), STREAM_BUFFER));
+		try {
+			for (int i=0; i<buffered; i++) {
+				writeRecord(out, buffer[i]);
+				buffer[i] = null;
+			}
+		}
+		finally {
+			out.close();
+		}
+		runs.add(run);
+		buffered = 0;
+	}
+
+	private File newRunFile() {
+		return new File(directory, "run-" + (runNumber++) + ".dat");
+	}
+
+	/**
+	 * Merges the runs into the B+tree and opens it for queries. No tree can be
+	 * added afterwards.
+	 *
+	 * @throws IOException if a file cannot be read or written
+	 * @throws IllegalStateException if the collection has already been built
+	 */
+	public void build() throws IOException, IllegalStateException {
+		if (cache != null)
+			throw new IllegalStateException("The collection has already been built.");
+		if (buffered > 0)
+			spill();
+		buffer = null;
+
+		// intermediate passes; the merged run replaces its inputs at the front,
+		// so duplicates still resolve to the tree added first
+		while (runs.size() > MAX_FAN_IN) {
+			List<File> group = runs.subList(0, MAX_FAN_IN);
+			File merged = newRunFile();
+			MergeIterator in = new MergeIterator(group);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(merged),
+					STREAM_BUFFER));
+			try {
+				Tree t;
+				while ((t = in.next()) != null)
+					writeRecord(out, t);
+			}
+			finally {
+				in.close();
+				out.close();
+			}
+			for (File f : group)
+				f.delete();
+			group.clear();
+			runs.add(0, merged);
+		}
+
+		// final pass straight into the B+tree
+		treeFile = new File(directory, "trees.btree");
+		MergeIterator in = new MergeIterator(runs);
+		BulkLoader loader = new BulkLoader(treeFile);
+		try {
+			Tree t;
+			while ((t = in.next()) != null)
+				loader.add(t);
+			root = loader.finish();
+		}
+		finally {
+			in.close();
+			loader.close();
+		}
+		for (File f : runs)
+			f.delete();
+		runs.clear();
+		cache = new PageCache(treeFile, PAGE_SIZE, cachePages);
+	}
+
+
+	// ============== QUERIES ==============
+
+	/**
+	 * Methods of TreeCounts, with the same matching rules as TreeCollection.
+	 * Species counts visit two root-to-leaf paths per matching species.
+	 *
+	 * @throws IllegalStateException if the collection has not been built
+	 * @throws UncheckedIOException if a page cannot be read
+	 */
+	public int getTotalNumberOfTrees() {
+		checkBuilt();
+		return size;
+	}
+
+	public int getCountByTreeSpecies(String speciesName) { // includes all names that contain parameter as substring
+		checkBuilt();
+		int count = 0;
+		for (String name : getMatchingSpecies(speciesName)) {
+			for (int c : speciesCounts(name))
+				count += c;
+		}
+		return count;
+	}
+
+	public int getCountByBorough(String boroName) {
+		checkBuilt();
+		int i = TreeColumns.code(BORO, boroName);
+		return (i < 0) ? 0 : boroCount[i];
+	}
+
+	public int getCountByTreeSpeciesBorough(String speciesName, String boroName) {
+		checkBuilt();
+		int i = TreeColumns.code(BORO, boroName);
+		if (i < 0)
+			return 0;
+		int count = 0;
+		for (String name : getMatchingSpecies(speciesName))
+			count += speciesCounts(name)[i];
+		return count;
+	}
+
+	public Collection<String> getMatchingSpecies(String speciesName) {
+		ArrayList<String> matchingSpecies = new ArrayList<String>();
+		for (String name : uniqueSpecies) {
+			if (name.contains(speciesName))
+				matchingSpecies.add(name);
+		}
+		return matchingSpecies;
+	}
+
+	// number of trees of exactly the given species (case insensitive) in every borough
+	private int[] speciesCounts(String name) {
+		try {
+			// name + '\u0000' is the smallest name that sorts after name itself
+			int[] below = countBelow(name, Integer.MIN_VALUE);
+			int[] counts = countBelow(name + '\u0000', Integer.MIN_VALUE);
+			for (int i=0; i<counts.length; i++)
+				counts[i] -= below[i];
+			return counts;
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// number of trees whose key is below (name, id), in every borough:
+	// every child left of the descent path is counted from its entry
+	private synchronized int[] countBelow(String name, int id) throws IOException {
+		int[] result = new int[BORO.length];
+		int page = root;
+		while (page >= 0) {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(cache.get(page)));
+			byte type = in.readByte();
+			int count = in.readShort();
+			in.readInt();
+			if (type == LEAF) {
+				for (int i=0; i<count; i++) {
+					String keyName = in.readUTF();
+					int keyId = in.readInt();
+					if (compare(keyName, keyId, name, id) >= 0)
+						break;
+					result[boroIndex(in.readUTF())]++;
+					skipRest(in);
+				}
+				return result;
+			}
+			int child = in.readInt();
+			int[] counts = readCounts(in);
+			in.readUTF();
+			in.readInt();
+			for (int i=1; i<count; i++) {
+				int next = in.readInt();
+				int[] nextCounts = readCounts(in);
+				String keyName = in.readUTF();
+				int keyId = in.readInt();
+				if (compare(keyName, keyId, name, id) >= 0)
+					break; // the key is in the current child or before it
+				for (int b=0; b<result.length; b++)
+					result[b] += counts[b];
+				child = next;
+				counts = nextCounts;
+			}
+			page = child;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns an iterator over all trees in key order, following the chain
+	 * of leaf pages.
+	 *
+	 * @return iterator over the trees; it throws UncheckedIOException if a page cannot be read
+	 */
+	@Override
+	public Iterator<Tree> iterator() {
+		checkBuilt();
+		return new Iterator<Tree>() {
+			private int page = (root < 0) ? -1 : 0; // the first page written is the first leaf
+			private ArrayList<Tree> leaf = new ArrayList<Tree>();
+			private int index;
+
+			@Override
+			public boolean hasNext() {
+				while (index == leaf.size() && page >= 0) {
+					try {
+						page = readLeaf(page, leaf);
+					}
+					catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					index = 0;
+				}
+				return index < leaf.size();
+			}
+
+			@Override
+			public Tree next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return leaf.get(index++);
+			}
+		};
+	}
+
+	// decode the trees of a leaf page, returns the next leaf page
+	private synchronized int readLeaf(int page, ArrayList<Tree> trees) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(cache.get(page)));
+		in.readByte();
+		int count = in.readShort();
+		int next = in.readInt();
+		trees.clear();
+		for (int i=0; i<count; i++)
+			trees.add(readRecord(in));
+		return next;
+	}
+
+	private void checkBuilt() throws IllegalStateException {
+		if (cache == null)
+			throw new IllegalStateException("The collection has not been built yet, call build().");
+	}
+
+	/**
+	 * Getter methods for the size of the B+tree and the page cache statistics.
+	 *
+	 * @return number of pages in the file, and number of page requests answered
+	 * from the cache or read from the file
+	 */
+	public int getPageCount() {
+		return pageCount;
+	}
+	public long getCacheHits() {
+		return (cache == null) ? 0 : cache.getHits();
+	}
+	public long getCacheMisses() {
+		return (cache == null) ? 0 : cache.getMisses();
+	}
+
+	/**
+	 * Closes the B+tree file and deletes the files of this collection.
+	 *
+	 * @throws IOException if the file cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (cache != null)
+			cache.close();
+		for (File f : runs)
+			f.delete();
+		if (treeFile != null)
+			treeFile.delete();
+		if (ownDirectory)
+			directory.delete();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("There are a total of %,d trees in NYC. Nice!", size);
+	}
+
+
+	// ============== RECORDS AND KEYS ==============
+
+	// the key and the borough come first, so counting can skip the other fields
+	// (also the record format of DurableTreeCollection's log and checkpoints)
+	static void writeRecord(DataOutput out, Tree t) throws IOException {
+		out.writeUTF(t.getSpeciesName());
+		out.writeInt(t.getId());
+		out.writeUTF(t.getBoro());
+		out.writeInt(t.getDiam());
+		out.writeUTF(t.getStatus());
+		out.writeUTF(t.getHealth());
+		out.writeInt(t.getZip());
+		out.writeDouble(t.getX());
+		out.writeDouble(t.getY());
+	}
+
+	// next tree of a stream, or null at the end of the stream
+	static Tree readRecord(DataInput in) throws IOException {
+		String spc;
+		try {
+			spc = in.readUTF();
+		}
+		catch (EOFException e) {
+			return null;
+		}
+		int id = in.readInt();
+		String boro = in.readUTF();
+		int diam = in.readInt();
+		String status = in.readUTF();
+		String health = in.readUTF();
+		int zip = in.readInt();
+		double x = in.readDouble();
+		double y = in.readDouble();
+		return new Tree(id, diam, status, health, spc, zip, boro, x, y);
+	}
+
+	// skip the fields of a record that follow the borough
+	private static void skipRest(DataInput in) throws IOException {
+		in.skipBytes(4);
+		in.skipBytes(in.readUnsignedShort());
+		in.skipBytes(in.readUnsignedShort());
+		in.skipBytes(4 + 8 + 8);
+	}
+
+	private static int[] readCounts(DataInput in) throws IOException {
+		int[] counts = new int[BORO.length];
+		for (int i=0; i<counts.length; i++)
+			counts[i] = in.readInt();
+		return counts;
+	}
+
+	// same order as Tree.compareTo
+	private static int compare(String name1, int id1, String name2, int id2) {
+		int cmp = name1.compareToIgnoreCase(name2);
+		return (cmp != 0) ? cmp : Integer.compare(id1, id2);
+	}
+
+	// trees are validated by parseLine, so the borough is always known
+	private static int boroIndex(String boroName) {
+		return Math.max(0, TreeColumns.code(BORO, boroName));
+	}
+
+
+	/*
+	 * Merges sorted run files into one sorted stream without duplicates.
+	 */
+	private static class MergeIterator implements Closeable {
+		private final DataInputStream[] inputs;
+		private final PriorityQueue<Head> heads;
+		private Tree last;
+
+		MergeIterator(List<File> files) throws IOException {
+			inputs = new DataInputStream[files.size()];
+			heads = new PriorityQueue<Head>(Math.max(1, files.size()));
+			for (int i=0; i<inputs.length; i++) {
+				inputs[i] = new DataInputStream(new BufferedInputStream(new FileInputStream(files.get(i)),
+						STREAM_BUFFER));
+				Tree t = readRecord(inputs[i]);
+				if (t != null)
+					heads.add(new Head(t, i));
+			}
+		}
+
+		// next tree in key order, or null when all runs are exhausted
+		Tree next() throws IOException {
+			while (!heads.isEmpty()) {
+				Head head = heads.poll();
+				Tree t = head.tree;
+				head.tree = readRecord(inputs[head.input]);
+				if (head.tree != null)
+					heads.add(head);
+				if (last == null || t.compareTo(last) != 0) {
+					last = t;
+					return t;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (DataInputStream in : inputs) {
+				if (in != null)
+					in.close();
+			}
+		}
+	}
+
+	/*
+	 * Current tree of one run; ties are broken by run index, earlier runs first.
+	 */
+	private static class Head implements Comparable<Head> {
+		private Tree tree;
+		private final int input;
+
+		Head(Tree tree, int input) {
+			this.tree = tree;
+			this.input = input;
+		}
+
+		@Override
+		public int compareTo(Head o) {
+			int cmp = tree.compareTo(o.tree);
+			return (cmp != 0) ? cmp : Integer.compare(input, o.input);
+		}
+	}
+
+	/*
+	 * Contents of one page being filled by the bulk loader.
+	 */
+	private static class PageBuilder {
+		private final byte[] data = new byte[PAGE_SIZE];
+		private int length = HEADER;
+		private int count;
+		private String firstName; // key of the first entry
+		private int firstId;
+		private int[] counts = new int[BORO.length]; // trees under this page per borough
+		private boolean flushed; // whether a page of this level has been written
+
+		boolean fits(int bytes) {
+			return length + bytes <= PAGE_SIZE;
+		}
+
+		void add(byte[] entry, String name, int id) {
+			if (count == 0) {
+				firstName = name;
+				firstId = id;
+			}
+			System.arraycopy(entry, 0, data, length, entry.length);
+			length += entry.length;
+			count++;
+		}
+
+		void reset() {
+			Arrays.fill(data, (byte) 0);
+			Arrays.fill(counts, 0);
+			length = HEADER;
+			count = 0;
+		}
+	}
+
+	/*
+	 * Builds the B+tree from trees given in key order. Leaves are filled
+	 * one after the other; every full page adds an entry to the level above,
+	 * so only one page per level is held in memory.
+	 */
+	private class BulkLoader implements Closeable {
+		private final RandomAccessFile out;
+		private final PageBuilder leaf = new PageBuilder();
+		private final ArrayList<PageBuilder> levels = new ArrayList<PageBuilder>(); // internal levels, lowest first
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream data = new DataOutputStream(bytes);
+		private int previousLeaf = -1;
+
+		BulkLoader(File file) throws IOException {
+			file.delete();
+			out = new RandomAccessFile(file, "rw");
+		}
+
+		void add(Tree t) throws IOException {
+			bytes.reset();
+			writeRecord(data, t);
+			byte[] record = bytes.toByteArray(); // bytes is reused by flushLeaf
+			if (!leaf.fits(record.length)) {
+				if (leaf.count == 0)
+					throw new IOException("Tree " + t.getId() + " does not fit in a page.");
+				flushLeaf();
+			}
+			leaf.add(record, t.getSpeciesName(), t.getId());
+			int b = boroIndex(t.getBoro());
+			leaf.counts[b]++;
+			boroCount[b]++;
+			size++;
+		}
+
+		// write the current leaf and link the previous leaf to it
+		private void flushLeaf() throws IOException {
+			int page = write(leaf, LEAF);
+			if (previousLeaf >= 0) {
+				out.seek((long) previousLeaf * PAGE_SIZE + 3);
+				out.writeInt(page);
+			}
+			previousLeaf = page;
+			addEntry(0, page, leaf);
+			leaf.reset();
+		}
+
+		// add an entry for a written child page to the given internal level
+		private void addEntry(int level, int page, PageBuilder child) throws IOException {
+			bytes.reset();
+			data.writeInt(page);
+			for (int c : child.counts)
+				data.writeInt(c);
+			data.writeUTF(child.firstName);
+			data.writeInt(child.firstId);
+			byte[] entry = bytes.toByteArray();
+
+			if (level == levels.size())
+				levels.add(new PageBuilder());
+			PageBuilder b = levels.get(level);
+			if (!b.fits(entry.length)) {
+				int p = write(b, INTERNAL);
+				b.flushed = true;
+				addEntry(level + 1, p, b);
+				b.reset();
+			}
+			b.add(entry, child.firstName, child.firstId);
+			for (int i=0; i<b.counts.length; i++)
+				b.counts[i] += child.counts[i];
+		}
+
+		private int write(PageBuilder b, byte type) throws IOException {
+			int page = pageCount++;
+			b.data[0] = type;
+			b.data[1] = (byte) (b.count >>> 8);
+			b.data[2] = (byte) b.count;
+			b.data[3] = b.data[4] = b.data[5] = b.data[6] = (byte) 0xff; // no next leaf yet
+			out.seek((long) page * PAGE_SIZE);
+			out.write(b.data);
+			return page;
+		}
+
+		// write the pages still being filled, returns the root page (-1 if empty)
+		int finish() throws IOException {
+			if (size == 0)
+				return -1;
+			if (previousLeaf < 0)
+				return write(leaf, LEAF); // a single leaf is the root
+			flushLeaf();
+			for (int i=0; ; i++) {
+				PageBuilder b = levels.get(i);
+				int p = write(b, INTERNAL);
+				if (i == levels.size() - 1 && !b.flushed)
+					return p; // the only page of the top level
+				b.flushed = true;
+				addEntry(i + 1, p, b);
+				b.reset();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+}
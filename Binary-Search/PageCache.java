@@ -0,0 +1,98 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class reads fixed-size pages of a file through a cache that holds
+ * at most a given number of pages, so the memory it uses does not depend on
+ * the size of the file. When the cache is full, the least recently used
+ * page is evicted and its buffer is reused for the page being read.
+ */
+public class PageCache implements Closeable {
+
+	// private data fields
+	private final RandomAccessFile file;
+	private final int pageSize;
+	private final int capacity;
+	private final LinkedHashMap<Integer, byte[]> pages; // in access order, eldest first
+	private long hits;
+	private long misses;
+
+	/**
+	 * Constructor that opens a file for reading.
+	 *
+	 * @param the file, the size of a page in bytes and the number of pages to cache
+	 * @throws IOException if the file cannot be opened
+	 * @throws IllegalArgumentException if pageSize or capacity is not positive
+	 */
+	public PageCache(File file, int pageSize, int capacity) throws IOException, IllegalArgumentException {
+		if (pageSize <= 0 || capacity <= 0)
+			throw new IllegalArgumentException("Page size and capacity must be positive.");
+		this.pageSize = pageSize;
+		this.capacity = capacity;
+		this.pages = new LinkedHashMap<Integer, byte[]>(2 * capacity, 0.75f, true);
+		this.file = new RandomAccessFile(file, "r");
+	}
+
+	/**
+	 * Returns the contents of a page, reading it from the file if it is
+	 * not cached. The returned buffer belongs to the cache and may be reused
+	 * for another page by the next call, so it must be decoded right away.
+	 *
+	 * @param int page number, starting at 0
+	 * @return buffer holding the page
+	 * @throws IOException if the page cannot be read
+	 */
+	public synchronized byte[] get(int page) throws IOException {
+		byte[] data = pages.get(page);
+		if (data != null) {
+			hits++;
+			return data;
+		}
+		misses++;
+		if (pages.size() == capacity) {
+			Iterator<Map.Entry<Integer, byte[]>> eldest = pages.entrySet().iterator();
+			data = eldest.next().getValue();
+			eldest.remove();
+		}
+		else {
+			data = new byte[pageSize];
+		}
+		file.seek((long) page * pageSize);
+		file.readFully(data);
+		pages.put(page, data);
+		return data;
+	}
+
+	/**
+	 * Getter methods for the cache statistics.
+	 *
+	 * @return number of requests answered from the cache, and number of pages read from the file
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the largest amount of memory used by the cached pages.
+	 *
+	 * @return number of bytes
+	 */
+	public long sizeInBytes() {
+		return (long) capacity * pageSize;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		pages.clear();
+		file.close();
+	}
+
+}
@@ -0,0 +1,221 @@
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * This class provides a persistent (immutable, path-copying) implementation
+ * of a binary search tree. Published nodes are never modified: every add or
+ * remove copies the O(log n) nodes on the path from the root to the change,
+ * shares all other nodes with the previous version, and publishes the new
+ * version with a compare-and-set on an AtomicReference.
+ *
+ * Readers call snapshot() once and get a read-only MyBST that stays
+ * consistent for as long as they hold it, without any locking, while
+ * writers keep publishing new versions. A version that is no longer
+ * referenced by anybody is reclaimed by the garbage collector.
+ */
+public class PersistentBST<E extends Comparable<E>> implements Iterable<E> {
+
+	// the currently published version
+	private final AtomicReference<MyBST<E>> current;
+
+	/**
+	 * A default constructor that publishes an empty version.
+	 */
+	public PersistentBST() {
+		current = new AtomicReference<MyBST<E>>();
+		current.set(newVersion(null, null, null, null));
+	}
+
+	/**
+	 * Adds the element by publishing a new version of the tree.
+	 * It does not allow duplicate entries. Safe to call from several threads.
+	 *
+	 * @param Generic datatype E that represents data to be added to the tree
+	 * @return true if the data was added; false if it was already present or
+	 * was not accepted
+	 * @throws NullPointerException if e is null
+	 */
+	public boolean add(E e) {
+		if (e == null)
+			throw new NullPointerException();
+		while (true) {
+			MyBST<E> previous = current.get();
+			if (!accepts(previous, e))
+				return false;
+			BSTNode<E> root = insert(previous.root, e);
+			if (root == previous.root)
+				return false; // duplicate, nothing was copied
+			if (current.compareAndSet(previous, newVersion(previous, root, e, null)))
+				return true;
+			// another writer published first, retry on top of its version
+		}
+	}
+
+	/**
+	 * Removes the element by publishing a new version of the tree.
+	 * Safe to call from several threads.
+	 *
+	 * @param Object o that represents the element to be removed
+	 * @return true if the element was removed; false if it was not present
+	 * @throws NullPointerException if o is null
+	 */
+	public boolean remove(Object o) {
+		if (o == null)
+			throw new NullPointerException();
+		while (true) {
+			MyBST<E> previous = current.get();
+			Object[] removed = new Object[1];
+			BSTNode<E> root = delete(previous.root, o, removed);
+			if (removed[0] == null)
+				return false;
+			@SuppressWarnings("unchecked")
+			E data = (E) removed[0];
+			if (current.compareAndSet(previous, newVersion(previous, root, null, data)))
+				return true;
+		}
+	}
+
+	/**
+	 * Returns the currently published version. The returned tree never
+	 * changes; calling add or remove on it throws UnsupportedOperationException.
+	 *
+	 * @return read-only, consistent version of the tree
+	 */
+	public MyBST<E> snapshot() {
+		return current.get();
+	}
+
+	/**
+	 * Returns the number of elements in the current version.
+	 *
+	 * @return number of elements in the tree
+	 */
+	public int size() {
+		return snapshot().size();
+	}
+
+	/**
+	 * Returns an in-order iterator over the current version.
+	 * Later updates are not visible through the iterator.
+	 *
+	 * @return iterator over a consistent version of the tree
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		return snapshot().iterator();
+	}
+
+	/**
+	 * Creates the read-only version that is published for a new root.
+	 * Subclasses override it to carry data derived from the elements
+	 * along with the tree (see PersistentTreeCollection).
+	 *
+	 * @param the previous version (null for the initial one), the new root,
+	 * and the element that was added or removed (null otherwise)
+	 * @return the version to be published
+	 */
+	protected MyBST<E> newVersion(MyBST<E> previous, BSTNode<E> root, E added, E removed) {
+		return new Version<E>(root);
+	}
+
+	/**
+	 * Decides whether an element may be added to a version, before it is
+	 * looked up in the tree. Subclasses override it to enforce a rule that
+	 * the order of the tree cannot, e.g. unique tree ids in
+	 * PersistentTreeCollection. It may be called again for a newer version
+	 * if another writer publishes first.
+	 *
+	 * @param the version the element would be added to, and the element
+	 * @return true if the element may be added
+	 */
+	protected boolean accepts(MyBST<E> previous, E e) {
+		return true;
+	}
+
+	// copy the path to the insertion point; returns node itself if e is already present
+	protected static <E extends Comparable<E>> BSTNode<E> insert(BSTNode<E> node, E e) {
+		if (node == null)
+			return new BSTNode<E>(e);
+		int cmp = e.compareTo(node.getData());
+		if (cmp < 0) {
+			BSTNode<E> left = insert(node.getLeft(), e);
+			return (left == node.getLeft()) ? node : copy(node.getData(), left, node.getRight());
+		}
+		else if (cmp > 0) {
+			BSTNode<E> right = insert(node.getRight(), e);
+			return (right == node.getRight()) ? node : copy(node.getData(), node.getLeft(), right);
+		}
+		return node;
+	}
+
+	// copy the path to the removed node; the removed data is stored in removed[0]
+	@SuppressWarnings("unchecked")
+	protected static <E extends Comparable<E>> BSTNode<E> delete(BSTNode<E> node, Object o, Object[] removed) {
+		if (node == null)
+			return null;
+		int cmp = ((Comparable<E>) o).compareTo(node.getData());
+		if (cmp < 0) {
+			BSTNode<E> left = delete(node.getLeft(), o, removed);
+			return (removed[0] == null) ? node : copy(node.getData(), left, node.getRight());
+		}
+		else if (cmp > 0) {
+			BSTNode<E> right = delete(node.getRight(), o, removed);
+			return (removed[0] == null) ? node : copy(node.getData(), node.getLeft(), right);
+		}
+		removed[0] = node.getData();
+		// case of zero or one child
+		if (node.getLeft() == null)
+			return node.getRight();
+		if (node.getRight() == null)
+			return node.getLeft();
+		// case of two children: replace with the predecessor
+		BSTNode<E> predecessor = node.getLeft();
+		while (predecessor.getRight() != null)
+			predecessor = predecessor.getRight();
+		return copy(predecessor.getData(), removeMax(node.getLeft()), node.getRight());
+	}
+
+	// copy the path to the rightmost node of the subtree and unlink that node
+	private static <E extends Comparable<E>> BSTNode<E> removeMax(BSTNode<E> node) {
+		if (node.getRight() == null)
+			return node.getLeft();
+		return copy(node.getData(), node.getLeft(), removeMax(node.getRight()));
+	}
+
+	// new node with the given contents; children are linked before publication
+	private static <E extends Comparable<E>> BSTNode<E> copy(E data, BSTNode<E> left, BSTNode<E> right) {
+		BSTNode<E> copy = new BSTNode<E>(data);
+		copy.setLeft(left);
+		copy.setRight(right);
+		return copy;
+	}
+
+	/*
+	 * Read-only version of the tree. All query methods of MyBST work on it;
+	 * the mutators throw, because its nodes are shared with other versions.
+	 */
+	private static class Version<E extends Comparable<E>> extends MyBST<E> {
+
+		Version(BSTNode<E> root) {
+			this.root = root;
+			this.size = sizeOf(root);
+		}
+
+		@Override
+		public boolean add(E e) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean removeIf(Predicate<? super E> filter) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}
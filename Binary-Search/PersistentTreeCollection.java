@@ -0,0 +1,188 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * This class is a persistent version of TreeCollection. Writers (for example
+ * an ingest or a cleanup running in the background) call add and remove,
+ * while readers take a snapshot() and run any number of TreeCollection
+ * queries on it, e.g. the whole report of NYCStreetTrees.outputData,
+ * without locks and without seeing a half-applied update.
+ *
+ * Every published version carries its own borough counts and list of
+ * unique species. The counts are copied on each update (5 ints); the
+ * species list is shared between versions until a species appears or
+ * disappears.
+ *
+ * Ids are unique, as in TreeCollection.add: a tree whose id is already used
+ * is not added, and is kept in getConflicts() if it is of another species.
+ * Every version also carries a persistent tree of its trees ordered by a
+ * scrambled id, so the id check and getById take O(log n) on any version
+ * and share all but one path with the previous version.
+ */
+public class PersistentTreeCollection extends PersistentBST<Tree> {
+
+	// default constructor that publishes an empty collection
+	public PersistentTreeCollection() {
+		super();
+	}
+
+	/**
+	 * Returns the currently published version of the collection.
+	 *
+	 * @return read-only TreeCollection that does not change while it is held
+	 */
+	@Override
+	public TreeCollection snapshot() {
+		return (TreeCollection) super.snapshot();
+	}
+
+	/**
+	 * Returns the trees that were not added because their id was already used
+	 * by a tree of a different species, in the order they were added. The
+	 * list is shared by all versions.
+	 *
+	 * @return list of conflicting trees
+	 */
+	public List<Tree> getConflicts() {
+		return snapshot().getConflicts();
+	}
+
+	/**
+	 * Accepts a tree only if no tree of the version has its id, as
+	 * TreeCollection.add.
+	 *
+	 * @param the version the tree would be added to, and the tree
+	 * @return true if the id is free
+	 */
+	@Override
+	protected boolean accepts(MyBST<Tree> previous, Tree t) {
+		Version prev = (Version) previous;
+		Tree stored = prev.getById(t.getId());
+		if (stored == null)
+			return true;
+		if (!stored.sameName(t))
+			prev.conflicts.add(t); // same id, different species: the first tree is kept
+		return false;
+	}
+
+	/**
+	 * Builds the next version of the collection together with its derived data.
+	 *
+	 * @param the previous version, the new root, and the tree that was added or removed
+	 * @return the read-only TreeCollection to be published
+	 */
+	@Override
+	protected MyBST<Tree> newVersion(MyBST<Tree> previous, BSTNode<Tree> root, Tree added, Tree removed) {
+		if (previous == null)
+			return new Version(root, new int[] {0, 0, 0, 0, 0}, new ArrayList<String>(), null,
+					Collections.synchronizedList(new ArrayList<Tree>()));
+
+		Version prev = (Version) previous;
+		int[] boroCount = prev.boroCount.clone();
+		ArrayList<String> species = prev.species;
+
+		if (added != null) {
+			int i = prev.boroIndex(added.getBoro());
+			if (i >= 0)
+				boroCount[i]++;
+			if (!species.contains(added.getSpeciesName())) {
+				species = new ArrayList<String>(species); // copy on write
+				species.add(added.getSpeciesName());
+			}
+			return new Version(root, boroCount, species, insert(prev.byId, new IdKey(added)), prev.conflicts);
+		}
+
+		int i = prev.boroIndex(removed.getBoro());
+		if (i >= 0)
+			boroCount[i]--;
+		BSTNode<IdKey> byId = delete(prev.byId, new IdKey(removed), new Object[1]);
+		Version next = new Version(root, boroCount, species, byId, prev.conflicts);
+		if (next.speciesRange(removed.getSpeciesName()).isEmpty()) {
+			species = new ArrayList<String>(species); // last tree of its species
+			species.remove(removed.getSpeciesName());
+			next = new Version(root, boroCount, species, byId, prev.conflicts);
+		}
+		return next;
+	}
+
+	// a one-to-one mix of the bits of an id, so that ids read in ascending
+	// order do not make the id tree a list
+	private static int scramble(int id) {
+		return id * 0x9E3779B9;
+	}
+
+	/*
+	 * Read-only TreeCollection published as one version. Its tree nodes and
+	 * species list may be shared with other versions, so it cannot be modified.
+	 */
+	private static class Version extends TreeCollection {
+
+		private final int[] boroCount;
+		private final ArrayList<String> species;
+		private final BSTNode<IdKey> byId; // the same trees, by scrambled id
+		private final List<Tree> conflicts;
+
+		Version(BSTNode<Tree> root, int[] boroCount, ArrayList<String> species, BSTNode<IdKey> byId,
+				List<Tree> conflicts) {
+			super(root, boroCount, species);
+			this.boroCount = boroCount;
+			this.species = species;
+			this.byId = byId;
+			this.conflicts = conflicts;
+		}
+
+		@Override
+		public Tree getById(int id) {
+			int key = scramble(id);
+			BSTNode<IdKey> node = byId;
+			while (node != null) {
+				int cmp = Integer.compare(key, node.getData().key);
+				if (cmp == 0)
+					return node.getData().tree;
+				node = (cmp < 0) ? node.getLeft() : node.getRight();
+			}
+			return null;
+		}
+
+		@Override
+		public List<Tree> getConflicts() {
+			return new ArrayList<Tree>(conflicts);
+		}
+
+		@Override
+		public boolean add(Tree t) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean removeIf(Predicate<? super Tree> filter) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/*
+	 * Entry of the id tree of a version.
+	 */
+	private static class IdKey implements Comparable<IdKey> {
+		private final int key;
+		private final Tree tree;
+
+		IdKey(Tree tree) {
+			this.key = scramble(tree.getId());
+			this.tree = tree;
+		}
+
+		@Override
+		public int compareTo(IdKey other) {
+			return Integer.compare(key, other.key);
+		}
+	}
+
+}
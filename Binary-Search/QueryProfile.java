@@ -0,0 +1,153 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class measures the work done by one query on the calling thread:
+ * the BST nodes visited while seeking and iterating, the calls of the
+ * Tree comparison methods (compareTo, compareName, sameName), the Tree
+ * objects created, the wall time, and the bytes allocated by the thread
+ * (from HotSpot's per thread allocation counter).
+ *
+ * A profile counts from start() until stop(). Work done on other threads,
+ * for example by parallel streams, is not counted. The counting hooks in
+ * MyBST and Tree only read an AtomicInteger (the number of profiles running
+ * on all threads) while no profile is running.
+ */
+public class QueryProfile {
+
+	private static final com.sun.management.ThreadMXBean THREADS = threads();
+	private static final ThreadLocal<QueryProfile> CURRENT = new ThreadLocal<QueryProfile>();
+	private static final AtomicInteger running = new AtomicInteger(); // profiles running on all threads
+
+	// private data fields
+	private final String query;
+	private long nodes, comparisons, trees;
+	private long nanos, bytes;
+	private final Thread thread;
+	private boolean stopped;
+
+	private QueryProfile(String query) {
+		this.query = query;
+		this.thread = Thread.currentThread();
+		this.bytes = allocatedBytes();
+		this.nanos = System.nanoTime();
+	}
+
+	// allocation counter of the JVM, if it has one
+	private static com.sun.management.ThreadMXBean threads() {
+		try {
+			com.sun.management.ThreadMXBean threads =
+					(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			if (!threads.isThreadAllocatedMemorySupported())
+				return null;
+			threads.setThreadAllocatedMemoryEnabled(true);
+			return threads;
+		}
+		catch (ClassCastException | UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	private static long allocatedBytes() {
+		return (THREADS == null) ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Starts the profile of a query on the calling thread.
+	 *
+	 * @param a description of the query, cannot be null
+	 * @return the running profile
+	 * @throws IllegalStateException if a profile is already running on this thread
+	 */
+	public static QueryProfile start(String query) throws IllegalStateException {
+		if (query == null)
+			throw new NullPointerException();
+		if (CURRENT.get() != null)
+			throw new IllegalStateException("A query is already being profiled on this thread.");
+		QueryProfile profile = new QueryProfile(query);
+		CURRENT.set(profile);
+		running.incrementAndGet();
+		return profile;
+	}
+
+	/**
+	 * Stops the profile and records the wall time and the bytes allocated.
+	 *
+	 * @return this profile
+	 * @throws IllegalStateException if the profile was already stopped or is
+	 * stopped by another thread than the one that started it
+	 */
+	public QueryProfile stop() throws IllegalStateException {
+		long end = System.nanoTime();
+		if (stopped || Thread.currentThread() != thread)
+			throw new IllegalStateException("The profile is not running on this thread.");
+		nanos = end - nanos;
+		bytes = (bytes < 0) ? -1 : allocatedBytes() - bytes;
+		stopped = true;
+		CURRENT.remove();
+		running.decrementAndGet();
+		return this;
+	}
+
+	/**
+	 * Hooks called by the data structures. They count for the profile running
+	 * on the calling thread, if any.
+	 *
+	 * @param the number of nodes visited
+	 */
+	static void countNodes(int n) {
+		if (running.get() != 0) {
+			QueryProfile profile = CURRENT.get();
+			if (profile != null)
+				profile.nodes += n;
+		}
+	}
+	static void countComparison() {
+		if (running.get() != 0) {
+			QueryProfile profile = CURRENT.get();
+			if (profile != null)
+				profile.comparisons++;
+		}
+	}
+	static void countTree() {
+		if (running.get() != 0) {
+			QueryProfile profile = CURRENT.get();
+			if (profile != null)
+				profile.trees++;
+		}
+	}
+
+	/**
+	 * Getter methods for the measurements. The time and the bytes are only
+	 * known once the profile is stopped.
+	 *
+	 * @return the query, the number of nodes visited, of comparisons and of
+	 * Tree objects created, the wall time in nanoseconds, and the bytes
+	 * allocated (-1 if the JVM does not count them)
+	 */
+	public String getQuery() {
+		return query;
+	}
+	public long getNodesVisited() {
+		return nodes;
+	}
+	public long getComparisons() {
+		return comparisons;
+	}
+	public long getTreesAllocated() {
+		return trees;
+	}
+	public long getNanos() {
+		return stopped ? nanos : 0;
+	}
+	public long getAllocatedBytes() {
+		return stopped ? bytes : 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %,d nodes, %,d comparisons, %,d trees, %.3f ms, %,d bytes",
+				query, nodes, comparisons, trees, getNanos() / 1e6, getAllocatedBytes());
+	}
+
+}
@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+/**
+ * This class answers the TreeCounts queries with another TreeCounts and
+ * keeps a QueryProfile of every call, so the work behind a query can be
+ * explained (see the "explain" command of NYCStreetTrees). Queries are
+ * profiled on the calling thread; a profiler must not be shared by threads.
+ */
+public class QueryProfiler implements TreeCounts {
+
+	// private data fields
+	private final TreeCounts counts;
+	private final ArrayList<QueryProfile> profiles = new ArrayList<QueryProfile>();
+
+	/**
+	 * Constructor for a profiler of the queries of a TreeCounts.
+	 *
+	 * @param the trees to be queried, cannot be null
+	 */
+	public QueryProfiler(TreeCounts counts) {
+		if (counts == null)
+			throw new NullPointerException();
+		this.counts = counts;
+	}
+
+	/**
+	 * Methods of TreeCounts, answered by the profiled TreeCounts.
+	 */
+	public int getTotalNumberOfTrees() {
+		return profile("all trees", () -> counts.getTotalNumberOfTrees());
+	}
+	public int getCountByTreeSpecies(String speciesName) {
+		return profile("species '" + speciesName + "'", () -> counts.getCountByTreeSpecies(speciesName));
+	}
+	public int getCountByBorough(String boroName) {
+		return profile("borough '" + boroName + "'", () -> counts.getCountByBorough(boroName));
+	}
+	public int getCountByTreeSpeciesBorough(String speciesName, String boroName) {
+		return profile("species '" + speciesName + "' in '" + boroName + "'",
+				() -> counts.getCountByTreeSpeciesBorough(speciesName, boroName));
+	}
+	public Collection<String> getMatchingSpecies(String speciesName) {
+		QueryProfile profile = QueryProfile.start("matching '" + speciesName + "'");
+		try {
+			return counts.getMatchingSpecies(speciesName);
+		}
+		finally {
+			profiles.add(profile.stop());
+		}
+	}
+
+	// runs an int query under a new profile (an IntSupplier does not box the result)
+	private int profile(String query, IntSupplier call) {
+		QueryProfile profile = QueryProfile.start(query);
+		try {
+			return call.getAsInt();
+		}
+		finally {
+			profiles.add(profile.stop());
+		}
+	}
+
+	/**
+	 * Returns the profiles of the queries answered so far, oldest first.
+	 *
+	 * @return list of stopped profiles
+	 */
+	public List<QueryProfile> getProfiles() {
+		return profiles;
+	}
+
+	// forgets the profiles of the queries answered so far
+	public void clear() {
+		profiles.clear();
+	}
+
+	/**
+	 * Returns a table with one line per distinct query, in the order they were
+	 * first asked (repeated queries are added up), and a line with the totals.
+	 *
+	 * @return the profile table
+	 */
+	public String report() {
+		// calls, nodes, comparisons, trees, nanoseconds and bytes of every query
+		LinkedHashMap<String, long[]> queries = new LinkedHashMap<String, long[]>();
+		long[] total = new long[6];
+		for (QueryProfile p : profiles) {
+			long[] sums = queries.computeIfAbsent(p.getQuery(), query -> new long[6]);
+			for (long[] line : new long[][] {sums, total}) {
+				line[0]++;
+				line[1] += p.getNodesVisited();
+				line[2] += p.getComparisons();
+				line[3] += p.getTreesAllocated();
+				line[4] += p.getNanos();
+				line[5] = (line[5] < 0 || p.getAllocatedBytes() < 0) ? -1 : line[5] + p.getAllocatedBytes();
+			}
+		}
+		StringBuilder str = new StringBuilder("Query profile:\n");
+		str.append(String.format("   %-40s%6s%10s%12s%8s%10s%12s\n",
+				"query", "calls", "nodes", "comparisons", "trees", "ms", "bytes"));
+		for (String query : queries.keySet())
+			append(str, query, queries.get(query));
+		append(str, "total", total);
+		return str.toString();
+	}
+
+	private static void append(StringBuilder str, String query, long[] line) {
+		str.append(String.format("   %-40s%,6d%,10d%,12d%,8d%10.3f%,12d\n",
+				query, line[0], line[1], line[2], line[3], line[4] / 1e6, line[5]));
+	}
+
+}
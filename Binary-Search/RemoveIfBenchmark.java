@@ -0,0 +1,105 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.function.Predicate;
+
+/**
+ * This program compares MyBST.removeIf with removing the same elements by
+ * calling remove once per element. For every filter it fills two trees with
+ * the trees of the data file in random order, times both ways of removing
+ * the matching trees, and checks that the two trees then hold the same
+ * elements. The remove calls are timed with the pass that finds the matching
+ * trees, as removeIf has to test every element too. The sample file can be scaled up to the size of the full census
+ * by repeating its rows with new tree ids.
+ *
+ * Usage: java RemoveIfBenchmark [data file] [copies of every row]
+ * (by default data/NYCstreettreesdataset-partial.csv, copied 80 times:
+ * about 700,000 trees, as many as the 2015 census)
+ */
+public class RemoveIfBenchmark {
+
+	private static final int ROUNDS = 3; // timed rounds, after as many warm-up rounds
+	private static final int ID_STEP = 10000000; // id offset of every copy of the rows
+
+	public static void main(String[] args) throws Exception {
+		File file = new File(args.length > 0 ? args[0] : "data/NYCstreettreesdataset-partial.csv");
+		int copies = (args.length > 1) ? Integer.parseInt(args[1]) : 80;
+
+		ArrayList<Tree> trees = new ArrayList<Tree>();
+		for (int c=0; c<copies; c++) {
+			Scanner info = new Scanner(file);
+			while (info.hasNextLine()) {
+				Tree t = NYCStreetTrees.parseLine(info.nextLine());
+				if (t != null)
+					trees.add(new Tree(t.getId() + c * ID_STEP, t.getDiam(), t.getStatus(), t.getHealth(),
+							t.getSpeciesName(), t.getZip(), t.getBoro(), t.getX(), t.getY()));
+			}
+			info.close();
+		}
+		Collections.shuffle(trees, new Random(42)); // sorted input would make MyBST a list
+		System.out.printf("%,d trees\n", trees.size());
+		System.out.printf("   %-28s%12s%16s%16s\n", "removed", "trees", "removeIf ms", "remove ms");
+
+		boolean same = true;
+		same &= compare(trees, "status is not alive", t -> !t.getStatus().equalsIgnoreCase("alive"));
+		same &= compare(trees, "species contains maple", t -> t.getSpeciesName().toLowerCase().contains("maple"));
+		same &= compare(trees, "odd ids", t -> t.getId() % 2 != 0);
+		same &= compare(trees, "all but queens", t -> !t.getBoro().equalsIgnoreCase("queens"));
+		System.exit(same ? 0 : 1);
+	}
+
+	// times removeIf and the remove calls for one filter, in milliseconds (best round)
+	private static boolean compare(ArrayList<Tree> trees, String name, Predicate<Tree> filter) throws Exception {
+		int matches = 0;
+		for (Tree t : trees) {
+			if (filter.test(t))
+				matches++;
+		}
+		long bulk = Long.MAX_VALUE, single = Long.MAX_VALUE;
+		boolean same = true;
+		for (int round=0; round<2*ROUNDS; round++) {
+			MyBST<Tree> byFilter = fill(trees);
+			MyBST<Tree> byElement = fill(trees);
+			long t0 = System.nanoTime();
+			byFilter.removeIf(filter);
+			long t1 = System.nanoTime();
+			ArrayList<Tree> removed = new ArrayList<Tree>();
+			for (Tree t : byElement) {
+				if (filter.test(t))
+					removed.add(t);
+			}
+			for (Tree t : removed)
+				byElement.remove(t);
+			long t2 = System.nanoTime();
+			if (round >= ROUNDS) {
+				bulk = Math.min(bulk, t1 - t0);
+				single = Math.min(single, t2 - t1);
+			}
+			same &= equal(byFilter, byElement) && byFilter.size() == trees.size() - matches;
+		}
+		System.out.printf("   %-28s%,12d%16.1f%16.1f%s\n", name, matches, bulk / 1e6, single / 1e6,
+				same ? "" : "   (the trees differ)");
+		return same;
+	}
+
+	private static MyBST<Tree> fill(ArrayList<Tree> trees) {
+		MyBST<Tree> bst = new MyBST<Tree>();
+		for (Tree t : trees)
+			bst.add(t);
+		return bst;
+	}
+
+	// same elements in the same order
+	private static boolean equal(MyBST<Tree> a, MyBST<Tree> b) {
+		Iterator<Tree> i = a.iterator(), j = b.iterator();
+		while (i.hasNext() && j.hasNext()) {
+			if (i.next() != j.next())
+				return false;
+		}
+		return !i.hasNext() && !j.hasNext();
+	}
+
+}
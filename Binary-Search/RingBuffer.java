@@ -0,0 +1,89 @@
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class implements a bounded blocking queue on a ring of slots
+ * that is allocated once, when the buffer is created. It connects the
+ * stages of the ingest pipeline: a producer that gets ahead blocks in put
+ * until a consumer frees a slot, which gives the pipeline backpressure.
+ */
+public class RingBuffer<T> {
+
+	// private data fields
+	private final Object[] slots;
+	private int head; // next slot to take from
+	private int tail; // next slot to put into
+	private int count;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * Constructor that allocates the ring.
+	 *
+	 * @param int capacity representing the number of slots
+	 * @throws IllegalArgumentException if capacity is not positive
+	 */
+	public RingBuffer(int capacity) throws IllegalArgumentException {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive.");
+		slots = new Object[capacity];
+	}
+
+	/**
+	 * Adds an item, waiting while every slot is in use.
+	 *
+	 * @param item to be added, cannot be null
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void put(T item) throws InterruptedException {
+		if (item == null)
+			throw new NullPointerException();
+		lock.lockInterruptibly();
+		try {
+			while (count == slots.length)
+				notFull.await();
+			slots[tail] = item;
+			tail = (tail + 1) % slots.length;
+			count++;
+			notEmpty.signal();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the oldest item, waiting while the buffer is empty.
+	 *
+	 * @return the oldest item
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	@SuppressWarnings("unchecked")
+	public T take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (count == 0)
+				notEmpty.await();
+			T item = (T) slots[head];
+			slots[head] = null;
+			head = (head + 1) % slots.length;
+			count--;
+			notFull.signal();
+			return item;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of slots of the ring.
+	 *
+	 * @return capacity of the buffer
+	 */
+	public int capacity() {
+		return slots.length;
+	}
+
+}
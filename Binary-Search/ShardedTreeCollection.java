@@ -0,0 +1,480 @@
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * This class splits the trees into one TreeCollection per borough (plus one
+ * for trees without a valid borough), each guarded by its own read-write
+ * lock. Threads that insert trees of different boroughs never wait for each
+ * other, and queries about one borough only lock and visit its shard.
+ * Citywide queries run on every shard in parallel and add up the answers.
+ *
+ * The getters answer exactly as TreeCollection's. getMatchingSpecies lists
+ * the species in the order their first tree was added, as TreeCollection
+ * does. Batches added by several threads at once can pass their position in
+ * the input, e.g. the line number, so that the order is still the order of
+ * the file and not the order in which the threads happened to run.
+ *
+ * Ids are unique across boroughs. They are resolved in input order against
+ * one map of ids, under its own lock, before any shard is locked: when two
+ * trees have the same id, the first one in the input is kept and the other
+ * is dropped (and kept in getConflicts() if it is of another species than
+ * the tree finally kept), as TreeCollection.add does, whichever shards they
+ * belong to. A species is ordered by its earliest tree that holds an id, so
+ * a tree replaced by one from earlier in the input no longer counts.
+ */
+public class ShardedTreeCollection implements TreeCounts {
+
+	// private data fields
+	private final TreeCollection[] shards;
+	private final ReentrantReadWriteLock[] locks;
+	private final ConcurrentHashMap<String, Long> firstAdded = new ConcurrentHashMap<String, Long>();
+	private final AtomicLong sequence = new AtomicLong(); // order of the first tree of every species
+	// guarded by ids
+	private final HashMap<Integer, Claim> ids = new HashMap<Integer, Claim>(); // ids stored or being added
+	private final HashMap<String, TreeSet<Long>> positions = new HashMap<String, TreeSet<Long>>(); // of the claims, by species
+	private final HashSet<Integer> contested = new HashSet<Integer>(); // ids whose claim has dropped trees
+	private final ArrayList<Claim> conflicts = new ArrayList<Claim>(); // dropped for ids given back since
+	private volatile FuzzySpeciesIndex fuzzy; // typo-tolerant lookup over all shards, built on first use
+	private static final int OTHER = 5; // shard of the trees without a valid borough
+	private static final int COMPLETIONS = 10; // as in TreeCollection
+
+	// default constructor that creates five empty borough shards and one for other trees
+	public ShardedTreeCollection() {
+		shards = new TreeCollection[OTHER + 1];
+		locks = new ReentrantReadWriteLock[OTHER + 1];
+		for (int i=0; i<shards.length; i++) {
+			shards[i] = new TreeCollection();
+			locks[i] = new ReentrantReadWriteLock();
+		}
+	}
+
+	// shard of a borough name, the same index as in TreeCollection's borough counts
+	private int shard(String boroName) {
+		int i = shards[0].boroIndex(boroName);
+		return (i < 0) ? OTHER : i;
+	}
+
+	// run a query on one shard under its read lock
+	private <T> T read(int i, Function<TreeCollection, T> query) {
+		Lock lock = locks[i].readLock();
+		lock.lock();
+		try {
+			return query.apply(shards[i]);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	// run a query on every shard in parallel and sum the answers
+	private int sum(Function<TreeCollection, Integer> query) {
+		return IntStream.range(0, shards.length).parallel().map(i -> read(i, query)).sum();
+	}
+
+	// run a query on every shard in parallel and collect the answers, in shard order
+	private <T> List<T> gather(Function<TreeCollection, T> query) {
+		return IntStream.range(0, shards.length).parallel().mapToObj(i -> read(i, query))
+				.collect(Collectors.toList());
+	}
+
+
+	/**
+	 * Adds a tree to the shard of its borough, as TreeCollection.add: a tree
+	 * whose id is already stored (in any shard) is not added.
+	 *
+	 * @param Tree object t
+	 * @return true if tree was successfully added; false otherwise
+	 * @throws NullPointerException if t is null
+	 */
+	public boolean add(Tree t) throws NullPointerException {
+		if (t == null)
+			throw new NullPointerException();
+		ArrayList<Tree> one = new ArrayList<Tree>(1);
+		one.add(t);
+		return addAll(one) == 1;
+	}
+
+	/**
+	 * Adds a batch of trees, locking every shard once for the whole batch.
+	 * The ids of the batch are first resolved in input order under the lock
+	 * of the id map, then every shard adds its trees under its write lock.
+	 *
+	 * @param the trees, none of them null
+	 * @return the number of trees added
+	 * @throws NullPointerException if a tree is null
+	 */
+	public int addAll(Collection<Tree> trees) throws NullPointerException {
+		return addAll(trees, sequence.getAndAdd(trees.size()));
+	}
+
+	/**
+	 * Adds a batch of trees that starts at a given position of the input.
+	 * Positions decide the order of getMatchingSpecies and which of two trees
+	 * with the same id is kept: if a batch from later in the input, added by
+	 * another thread, took the id first, its tree is replaced. Later calls
+	 * of add and addAll(trees) are numbered after the largest position seen.
+	 *
+	 * @param the trees, none of them null, and the position of the first one
+	 * @return the number of trees added
+	 * @throws NullPointerException if a tree is null
+	 */
+	public int addAll(Collection<Tree> trees, long position) throws NullPointerException {
+		for (Tree t : trees) {
+			if (t == null)
+				throw new NullPointerException();
+		}
+		sequence.accumulateAndGet(position + trees.size(), Math::max);
+		ArrayList<ArrayList<Tree>> byShard = new ArrayList<ArrayList<Tree>>();
+		for (int i=0; i<shards.length; i++)
+			byShard.add(new ArrayList<Tree>());
+		ArrayList<Tree> replaced = new ArrayList<Tree>(); // trees from later in the input, added by other calls
+
+		// resolve the ids in input order, before any shard is locked
+		synchronized (ids) {
+			for (Tree t : trees) {
+				Claim claim = ids.get(t.getId());
+				Claim mine = new Claim(t, position);
+				if (claim == null || claim.position > position) {
+					if (claim != null) {
+						replaced.add(claim.tree);
+						unclaim(claim, true);
+						mine.drop(claim);
+					}
+					ids.put(t.getId(), mine);
+					claim(mine);
+					byShard.get(shard(t.getBoro())).add(t);
+				}
+				else
+					claim.drop(mine);
+				if (claim != null)
+					contested.add(t.getId());
+				position++;
+			}
+		}
+
+		for (Tree t : replaced) {
+			int i = shard(t.getBoro());
+			Lock lock = locks[i].writeLock();
+			lock.lock();
+			try {
+				if (shards[i].getById(t.getId()) == t) // its call may not have added it yet
+					shards[i].remove(t);
+			}
+			catch (Exception e) { // remove only throws for null or objects that are not trees
+				throw new IllegalStateException(e);
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+
+		int added = 0;
+		for (int i=0; i<shards.length; i++) {
+			ArrayList<Tree> batch = byShard.get(i);
+			if (batch.isEmpty())
+				continue;
+			Lock lock = locks[i].writeLock();
+			lock.lock();
+			try {
+				for (Tree t : batch) {
+					if (!claimed(t))
+						continue; // replaced meanwhile by a tree from earlier in the input
+					Tree stale = shards[i].getById(t.getId());
+					if (stale != null) // replaced, but the call that replaced it has not removed it yet
+						shards[i].remove(stale);
+					if (shards[i].add(t))
+						added++;
+				}
+			}
+			catch (Exception e) { // remove only throws for null or objects that are not trees
+				throw new IllegalStateException(e);
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+		return added;
+	}
+
+	// count the position of a new claim in the order of its species; holding the lock of ids
+	private void claim(Claim claim) {
+		String name = claim.tree.getSpeciesName();
+		positions.computeIfAbsent(name, n -> new TreeSet<Long>()).add(claim.position);
+		if (firstAdded.merge(name, claim.position, Math::min) == claim.position)
+			fuzzy = null;
+	}
+
+	// take the position of a claim out of the order of its species; a replaced tree
+	// never counts, a removed one still orders its species while it has trees
+	private void unclaim(Claim claim, boolean replaced) {
+		String name = claim.tree.getSpeciesName();
+		TreeSet<Long> held = positions.get(name);
+		held.remove(claim.position);
+		if (held.isEmpty()) {
+			positions.remove(name);
+			firstAdded.remove(name);
+			fuzzy = null;
+		}
+		else if (replaced && firstAdded.get(name) == claim.position)
+			firstAdded.put(name, held.first());
+	}
+
+	// whether the id of t is still held by t
+	private boolean claimed(Tree t) {
+		synchronized (ids) {
+			Claim claim = ids.get(t.getId());
+			return claim != null && claim.tree == t;
+		}
+	}
+
+	// give up the id of a tree that was removed, unless another tree holds it;
+	// the trees dropped for it are settled as conflicts against it
+	private boolean release(Tree t) {
+		synchronized (ids) {
+			if (claimed(t)) {
+				Claim claim = ids.remove(t.getId());
+				unclaim(claim, false);
+				if (contested.remove(t.getId()))
+					claim.conflicts(conflicts);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a tree (the tree with the same species and id), as TreeCollection.remove.
+	 *
+	 * @param Object o representing the tree to be removed
+	 * @return true if the tree was removed; false if it was not in the collection
+	 * @throws NullPointerException if o is null
+	 */
+	public boolean remove(Object o) throws Exception {
+		if (o == null)
+			throw new NullPointerException();
+		Tree t = (Tree) o;
+		int first = shard(t.getBoro()); // the stored tree is normally in the shard of o's borough
+		for (int k=0; k<shards.length; k++) {
+			int i = (first + k) % shards.length;
+			boolean removed;
+			Lock lock = locks[i].writeLock();
+			lock.lock();
+			try {
+				Tree stored = shards[i].getById(t.getId());
+				removed = shards[i].remove(t);
+				if (removed)
+					release(stored);
+			}
+			finally {
+				lock.unlock();
+			}
+			if (removed)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all trees that match the filter, in every shard in parallel,
+	 * as TreeCollection.removeIf.
+	 *
+	 * @param filter that returns true for the trees to be removed
+	 * @return true if any tree was removed; false otherwise
+	 */
+	public boolean removeIf(Predicate<? super Tree> filter) {
+		return IntStream.range(0, shards.length).parallel().mapToObj(i -> {
+			Lock lock = locks[i].writeLock();
+			lock.lock();
+			try {
+				return shards[i].removeIf(t -> filter.test(t) && release(t));
+			}
+			finally {
+				lock.unlock();
+			}
+		}).reduce(false, Boolean::logicalOr);
+	}
+
+
+	/**
+	 * Getter methods with the same results as TreeCollection's. Citywide
+	 * queries visit every shard in parallel; queries about one borough
+	 * only visit its shard.
+	 */
+	public int getTotalNumberOfTrees() {
+		return sum(s -> s.size());
+	}
+	public int size() {
+		return getTotalNumberOfTrees();
+	}
+	public int getCountByTreeSpecies(String speciesName) {
+		return sum(s -> s.getCountByTreeSpecies(speciesName));
+	}
+	public int countByPrefix(String prefix) {
+		return sum(s -> s.countByPrefix(prefix));
+	}
+	public int getCountByBorough(String boroName) {
+		int i = shard(boroName);
+		return (i == OTHER) ? 0 : read(i, s -> s.getCountByBorough(boroName));
+	}
+	public int getCountByTreeSpeciesBorough(String speciesName, String boroName) {
+		int i = shard(boroName);
+		return (i == OTHER) ? 0 : read(i, s -> s.getCountByTreeSpecies(speciesName));
+	}
+	public Collection<String> getMatchingSpecies(String speciesName) {
+		LinkedHashSet<String> names = new LinkedHashSet<String>();
+		for (Collection<String> match : gather(s -> s.getMatchingSpecies(speciesName)))
+			names.addAll(match);
+		ArrayList<String> result = new ArrayList<String>(names);
+		result.sort((a, b) -> Long.compare(firstAdded.getOrDefault(a, Long.MAX_VALUE),
+				firstAdded.getOrDefault(b, Long.MAX_VALUE)));
+		return result;
+	}
+	public Tree getById(int id) {
+		for (int i=0; i<shards.length; i++) {
+			Tree t = read(i, s -> s.getById(id));
+			if (t != null)
+				return t;
+		}
+		return null;
+	}
+	public List<Tree> getConflicts() {
+		// the shards never see two trees with the same id; conflicts are decided
+		// against the tree that holds the id now, and listed in input order
+		ArrayList<Claim> found;
+		synchronized (ids) {
+			found = new ArrayList<Claim>(conflicts);
+			for (Integer id : contested)
+				ids.get(id).conflicts(found);
+		}
+		found.sort((a, b) -> Long.compare(a.position, b.position));
+		ArrayList<Tree> result = new ArrayList<Tree>(found.size());
+		for (Claim c : found)
+			result.add(c.tree);
+		return result;
+	}
+
+	/**
+	 * Methods that return the k most common species in a borough or in a zip
+	 * code, as TreeCollection.topSpecies. A zip code can cross a borough line,
+	 * so its counts are added up over all shards before the top k are picked.
+	 */
+	public List<Map.Entry<String, Integer>> topSpecies(String boroName, int k) {
+		int i = shard(boroName);
+		if (i == OTHER)
+			return new ArrayList<Map.Entry<String, Integer>>();
+		return read(i, s -> s.topSpecies(boroName, k));
+	}
+	public List<Map.Entry<String, Integer>> topSpecies(int zip, int k) {
+		HashMap<String, int[]> counts = new HashMap<String, int[]>();
+		for (List<Map.Entry<String, Integer>> shard :
+				gather(s -> s.topSpecies(zip, s.getMatchingSpecies("").size()))) {
+			for (Map.Entry<String, Integer> e : shard)
+				counts.computeIfAbsent(e.getKey(), name -> new int[1])[0] += e.getValue();
+		}
+		return TreeCollection.top(counts.entrySet(), 0, k);
+	}
+
+	/**
+	 * Returns the species close to a possibly misspelled name, as
+	 * TreeCollection.getSimilarSpecies, from one index over the species of
+	 * all shards.
+	 */
+	public List<String> getSimilarSpecies(String speciesName, int maxDistance) {
+		return fuzzyIndex().search(speciesName, maxDistance);
+	}
+
+	private synchronized FuzzySpeciesIndex fuzzyIndex() {
+		FuzzySpeciesIndex index = fuzzy;
+		if (index == null) {
+			index = new FuzzySpeciesIndex();
+			for (String name : getMatchingSpecies(""))
+				index.add(name);
+			fuzzy = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the most common species whose names start with the prefix, as
+	 * TreeCollection.completeSpecies. The counts of every species are added
+	 * up over the shards, so the ranking is citywide.
+	 */
+	public List<Map.Entry<String, Integer>> completeSpecies(String prefix, int limit) {
+		String start = prefix.toLowerCase();
+		HashSet<String> counted = new HashSet<String>(); // names are case insensitive
+		ArrayList<Map.Entry<String, Integer>> result = new ArrayList<Map.Entry<String, Integer>>();
+		for (String name : getMatchingSpecies("")) {
+			if (name.isEmpty())
+				continue; // stumps and dead trees have no species
+			if (name.toLowerCase().startsWith(start) && counted.add(name.toLowerCase()))
+				result.add(new AbstractMap.SimpleImmutableEntry<String, Integer>(name,
+						sum(s -> s.speciesRange(name).size())));
+		}
+		// most trees first, ties in alphabetical order (as SpeciesAutocomplete)
+		result.sort((a, b) -> a.getValue().equals(b.getValue()) ? a.getKey().compareToIgnoreCase(b.getKey())
+				: Integer.compare(b.getValue(), a.getValue()));
+		return new ArrayList<Map.Entry<String, Integer>>(result.subList(0,
+				Math.max(0, Math.min(result.size(), Math.min(limit, COMPLETIONS)))));
+	}
+
+	/**
+	 * Overrides the toString method to display the total number of trees
+	 * stored in this collection as a string.
+	 *
+	 * @return a string that states how many trees there are across all boroughs
+	 */
+	@Override
+	public String toString() {
+		return String.format("There are a total of %,d trees in NYC. Nice!", getTotalNumberOfTrees());
+	}
+
+	/*
+	 * The tree that holds an id, its position in the input, and the trees
+	 * dropped for the id so far (null if none).
+	 */
+	private static class Claim {
+		private final Tree tree;
+		private final long position;
+		private ArrayList<Claim> dropped;
+
+		Claim(Tree tree, long position) {
+			this.tree = tree;
+			this.position = position;
+		}
+
+		// note that another claim on the id lost to this one, with the trees it had beaten
+		void drop(Claim other) {
+			if (dropped == null)
+				dropped = new ArrayList<Claim>();
+			if (other.dropped != null)
+				dropped.addAll(other.dropped);
+			other.dropped = null;
+			dropped.add(other);
+		}
+
+		// add the dropped trees of another species than the tree kept
+		void conflicts(List<Claim> list) {
+			if (dropped == null)
+				return;
+			for (Claim c : dropped) {
+				if (!tree.sameName(c.tree))
+					list.add(c);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,188 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This program checks that ShardedTreeCollection answers as TreeCollection
+ * when trees share ids and batches arrive out of input order: the tree
+ * kept for every id, the conflicts, the order of getMatchingSpecies and
+ * the borough counts. It runs small cases with a known answer, concurrent
+ * adds of the same ids, and rounds of the data file with duplicate ids
+ * injected, added by several threads in a shuffled order of batches and
+ * compared with a TreeCollection that read the trees in input order. It
+ * prints one line per check and exits with status 1 if a check failed.
+ *
+ * Usage: java ShardedTreeCollectionCheck [data file]
+ * (by default data/NYCstreettreesdataset-partial.csv)
+ */
+public class ShardedTreeCollectionCheck {
+
+	private static final int ROUNDS = 5; // rounds of the data file
+	private static final int THREADS = 4; // threads adding the batches
+	private static final int BATCH = 256; // trees per batch
+	private static final int DUPLICATES = 10; // percentage of trees that get a copy of another id
+
+	private static int failures;
+
+	public static void main(String[] args) throws Exception {
+		File file = new File(args.length > 0 ? args[0] : "data/NYCstreettreesdataset-partial.csv");
+
+		checkFirstKept();
+		checkConflictsAgainstKept();
+		checkReplacedSpeciesOrder();
+		checkConcurrentIds();
+		List<Tree> trees = parse(file);
+		for (int round=0; round<ROUNDS; round++)
+			checkDifferential(trees, new Random(round), round);
+
+		System.out.println((failures == 0) ? "All checks passed." : failures + " check(s) failed.");
+		System.exit((failures == 0) ? 0 : 1);
+	}
+
+	private static void check(boolean passed, String description) {
+		System.out.println((passed ? "ok     " : "FAILED ") + description);
+		if (!passed)
+			failures++;
+	}
+
+	private static Tree tree(int id, String species, String boro) {
+		return new Tree(id, 10, "alive", "good", species, 10001, boro, 0, 0);
+	}
+
+	// [5 oak Queens, 5 maple Brooklyn] keeps oak and records maple
+	private static void checkFirstKept() {
+		ShardedTreeCollection sharded = new ShardedTreeCollection();
+		sharded.addAll(Arrays.asList(tree(5, "oak", "Queens"), tree(5, "maple", "Brooklyn")));
+		check(sharded.getById(5).getSpeciesName().equals("oak") && describe(sharded.getConflicts()).equals("[5 maple]"),
+				"same id in two boroughs: the first tree is kept, the other is a conflict");
+	}
+
+	// A(0, oak), B(1, maple), C(2, oak) with the same id, arriving C, B, A:
+	// only B is of another species than A, the tree kept
+	private static void checkConflictsAgainstKept() {
+		ShardedTreeCollection sharded = new ShardedTreeCollection();
+		sharded.addAll(Arrays.asList(tree(9, "oak", "Bronx")), 2);
+		sharded.addAll(Arrays.asList(tree(9, "maple", "Queens")), 1);
+		sharded.addAll(Arrays.asList(tree(9, "oak", "Manhattan")), 0);
+		check(sharded.getById(9).getBoro().equalsIgnoreCase("manhattan")
+				&& describe(sharded.getConflicts()).equals("[9 maple]"),
+				"batches in reverse order: conflicts against the tree kept, " + describe(sharded.getConflicts()));
+	}
+
+	// F(0, ash, id 7), E(1, elm, id 7), G(2, maple), H(3, elm), with [E, G, H] before [F]:
+	// E is replaced, so elm is ordered by H
+	private static void checkReplacedSpeciesOrder() {
+		ShardedTreeCollection sharded = new ShardedTreeCollection();
+		sharded.addAll(Arrays.asList(tree(7, "elm", "Queens"), tree(8, "maple", "Queens"), tree(10, "elm", "Bronx")), 1);
+		sharded.addAll(Arrays.asList(tree(7, "ash", "Brooklyn")), 0);
+		check(sharded.getMatchingSpecies("").toString().equals("[ash, maple, elm]"),
+				"replaced first tree of a species: order " + sharded.getMatchingSpecies(""));
+	}
+
+	// 8 threads add the same ids, each in another borough: every id is stored once
+	private static void checkConcurrentIds() throws InterruptedException {
+		ShardedTreeCollection sharded = new ShardedTreeCollection();
+		String[] boros = {"Manhattan", "Bronx", "Brooklyn", "Queens", "Staten Island"};
+		Thread[] threads = new Thread[8];
+		for (int k=0; k<threads.length; k++) {
+			String boro = boros[k % boros.length];
+			threads[k] = new Thread(() -> {
+				for (int id=1; id<=20000; id++)
+					sharded.add(tree((int) ((id * 0x9E3779B1L) & 0x3FFFFFFF) + 1, "oak", boro));
+			});
+			threads[k].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		check(sharded.getTotalNumberOfTrees() == 20000,
+				String.format("8 threads, same 20,000 ids: %,d trees stored", sharded.getTotalNumberOfTrees()));
+	}
+
+	// the file with duplicate ids injected, added in shuffled batches by several threads
+	private static void checkDifferential(List<Tree> file, Random random, int round) throws Exception {
+		ArrayList<Tree> trees = new ArrayList<Tree>(file);
+		String[] boros = {"Manhattan", "Bronx", "Brooklyn", "Queens", "Staten Island"};
+		for (int n=file.size()*DUPLICATES/100; n>0; n--) {
+			Tree other = file.get(random.nextInt(file.size()));
+			String species = file.get(random.nextInt(file.size())).getSpeciesName();
+			trees.add(random.nextInt(trees.size() + 1), tree(other.getId(), species, boros[random.nextInt(boros.length)]));
+		}
+
+		TreeCollection expected = new TreeCollection();
+		for (Tree t : trees)
+			expected.add(t);
+
+		ConcurrentLinkedQueue<Integer> starts = new ConcurrentLinkedQueue<Integer>();
+		ArrayList<Integer> order = new ArrayList<Integer>();
+		for (int start=0; start<trees.size(); start+=BATCH)
+			order.add(start);
+		Collections.shuffle(order, random);
+		starts.addAll(order);
+		ShardedTreeCollection sharded = new ShardedTreeCollection();
+		Thread[] threads = new Thread[THREADS];
+		for (int k=0; k<threads.length; k++) {
+			threads[k] = new Thread(() -> {
+				Integer start;
+				while ((start = starts.poll()) != null)
+					sharded.addAll(trees.subList(start, Math.min(start + BATCH, trees.size())), start);
+			});
+			threads[k].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		check(same(sharded, expected, trees), String.format("round %d: %,d trees with %,d conflicts, as TreeCollection",
+				round, sharded.getTotalNumberOfTrees(), sharded.getConflicts().size()));
+
+		expected.removeIf(t -> !t.getStatus().equals("alive"));
+		sharded.removeIf(t -> !t.getStatus().equals("alive"));
+		check(same(sharded, expected, trees), String.format("round %d: %,d trees after removing the trees not alive",
+				round, sharded.getTotalNumberOfTrees()));
+	}
+
+	private static boolean same(ShardedTreeCollection sharded, TreeCollection expected, List<Tree> trees) {
+		if (sharded.getTotalNumberOfTrees() != expected.getTotalNumberOfTrees())
+			return false;
+		for (String boro : TreeColumns.BORO) {
+			if (sharded.getCountByBorough(boro) != expected.getCountByBorough(boro))
+				return false;
+		}
+		if (!new ArrayList<String>(sharded.getMatchingSpecies("")).equals(new ArrayList<String>(expected.getMatchingSpecies(""))))
+			return false;
+		if (!describe(sharded.getConflicts()).equals(describe(expected.getConflicts())))
+			return false;
+		for (Tree t : trees) {
+			if (!describe(sharded.getById(t.getId())).equals(describe(expected.getById(t.getId()))))
+				return false;
+		}
+		return true;
+	}
+
+	private static String describe(Tree t) {
+		return (t == null) ? "none" : t.getId() + " " + t.getSpeciesName() + " " + t.getBoro().toLowerCase();
+	}
+
+	private static String describe(List<Tree> trees) {
+		ArrayList<String> names = new ArrayList<String>();
+		for (Tree t : trees)
+			names.add(t.getId() + " " + t.getSpeciesName());
+		return names.toString();
+	}
+
+	private static List<Tree> parse(File file) throws Exception {
+		ArrayList<Tree> trees = new ArrayList<Tree>();
+		Scanner info = new Scanner(file);
+		while (info.hasNextLine()) {
+			Tree t = NYCStreetTrees.parseLine(info.nextLine());
+			if (t != null)
+				trees.add(t);
+		}
+		info.close();
+		return trees;
+	}
+
+}
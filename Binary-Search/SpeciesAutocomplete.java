@@ -0,0 +1,156 @@
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class completes the beginning of a species name with the species
+ * that have the most trees. The names are stored (lower case) in a trie,
+ * and every node keeps the top n species of its subtree, most trees first
+ * (ties in alphabetical order). A completion walks down the prefix and
+ * copies the list of the node it ends on, so it costs O(prefix length + n)
+ * no matter how many species or trees there are.
+ *
+ * When the count of a species changes, only the lists of the nodes on the
+ * path to its name can change: they are updated from the bottom up, and a
+ * list is only rebuilt from the lists of the children when a species that
+ * lost trees drops to the end of a full list, where a species outside
+ * the list may now beat it.
+ */
+public class SpeciesAutocomplete {
+
+	// private data fields
+	private final int n; // length of the lists
+	private final Node root = new Node();
+
+	/**
+	 * Constructor for an empty trie that keeps the top n species per node.
+	 *
+	 * @param int n representing the largest number of completions returned
+	 * @throws IllegalArgumentException if n is not positive
+	 */
+	public SpeciesAutocomplete(int n) throws IllegalArgumentException {
+		if (n <= 0)
+			throw new IllegalArgumentException("The number of completions must be positive.");
+		this.n = n;
+	}
+
+	/**
+	 * Changes the number of trees of a species, e.g. by 1 when a tree is
+	 * added and by -1 when it is removed. Names are case insensitive; the
+	 * spelling first added is the one returned. The empty name (stumps and
+	 * dead trees have no species) is not a completion and is ignored.
+	 *
+	 * @param the species name, cannot be null, and the change of its count
+	 */
+	public void add(String species, int delta) {
+		String key = species.toLowerCase();
+		if (key.isEmpty())
+			return;
+		Node[] path = new Node[key.length() + 1];
+		path[0] = root;
+		for (int i=0; i<key.length(); i++) {
+			Node child = path[i].children.get(key.charAt(i));
+			if (child == null) {
+				child = new Node();
+				path[i].children.put(key.charAt(i), child);
+			}
+			path[i + 1] = child;
+		}
+		Node terminal = path[key.length()];
+		if (terminal.name == null || terminal.count == 0)
+			terminal.name = species;
+		terminal.count = Math.max(0, terminal.count + delta);
+		for (int i=path.length-1; i>=0; i--)
+			update(path[i], terminal, delta < 0);
+	}
+
+	// fix the list of a node on the path of terminal, whose count has just changed
+	private void update(Node node, Node terminal, boolean decreased) {
+		ArrayList<Node> top = node.top;
+		int i = top.indexOf(terminal);
+		if (i < 0) {
+			if (terminal.count == 0)
+				return;
+			if (top.size() == n && !before(terminal, top.get(n - 1)))
+				return; // not good enough for this list
+			if (top.size() == n)
+				top.remove(n - 1);
+			top.add(terminal);
+			i = top.size() - 1;
+		}
+		else if (terminal.count == 0) {
+			top.remove(i);
+			if (top.size() == n - 1)
+				rebuild(node); // a species outside the list may take the free place
+			return;
+		}
+		// move the terminal to its place, up or down
+		while (i > 0 && before(terminal, top.get(i - 1))) {
+			top.set(i, top.get(i - 1));
+			top.set(--i, terminal);
+		}
+		while (i < top.size() - 1 && before(top.get(i + 1), terminal)) {
+			top.set(i, top.get(i + 1));
+			top.set(++i, terminal);
+		}
+		if (decreased && i == n - 1)
+			rebuild(node);
+	}
+
+	// rebuild the list of a node from its own species and the lists of its children
+	private void rebuild(Node node) {
+		ArrayList<Node> candidates = new ArrayList<Node>();
+		if (node.count > 0)
+			candidates.add(node);
+		for (Node child : node.children.values())
+			candidates.addAll(child.top);
+		candidates.sort((a, b) -> before(a, b) ? -1 : before(b, a) ? 1 : 0);
+		node.top.clear();
+		for (int i=0; i<candidates.size() && i<n; i++)
+			node.top.add(candidates.get(i));
+	}
+
+	// whether species a comes before species b: more trees, then alphabetical
+	private static boolean before(Node a, Node b) {
+		if (a.count != b.count)
+			return a.count > b.count;
+		return a.name.compareToIgnoreCase(b.name) < 0;
+	}
+
+	/**
+	 * Returns the species whose names start with the prefix (case insensitive),
+	 * with the most trees first.
+	 *
+	 * @param the prefix, cannot be null, and the largest number of completions
+	 * (no more than the n given to the constructor are kept)
+	 * @return list of (species name, number of trees) entries
+	 */
+	public List<Map.Entry<String, Integer>> complete(String prefix, int limit) {
+		ArrayList<Map.Entry<String, Integer>> result = new ArrayList<Map.Entry<String, Integer>>();
+		Node node = root;
+		String key = prefix.toLowerCase();
+		for (int i=0; i<key.length() && node != null; i++)
+			node = node.children.get(key.charAt(i));
+		if (node == null)
+			return result;
+		for (int i=0; i<node.top.size() && i<limit; i++) {
+			Node t = node.top.get(i);
+			result.add(new AbstractMap.SimpleImmutableEntry<String, Integer>(t.name, t.count));
+		}
+		return result;
+	}
+
+	/*
+	 * Node of the trie. A node that ends a species name also holds its
+	 * spelling and count.
+	 */
+	private static class Node {
+		private final HashMap<Character, Node> children = new HashMap<Character, Node>(4);
+		private final ArrayList<Node> top = new ArrayList<Node>(2);
+		private String name;
+		private int count;
+	}
+
+}
@@ -0,0 +1,161 @@
+/**
+ * This class summarizes a stream of trees without keeping them, for files
+ * too large to load into a TreeCollection. Species and species-by-borough
+ * frequencies go into Count-Min sketches, and the numbers of distinct
+ * species and zip codes into HyperLogLog estimators, so the memory used is
+ * fixed when the census is created. The total and the per-borough totals
+ * are only six counters and are kept exactly.
+ *
+ * Species names are matched exactly (case insensitive): the sketches cannot
+ * list the names they have seen, so unlike TreeCollection a query for
+ * "maple" does not include "red maple".
+ */
+public class StreamingCensus {
+
+	// same order as TreeColumns.BORO
+	private static final String[] BORO = TreeColumns.BORO;
+
+	// private data fields
+	private final CountMinSketch species;
+	private final CountMinSketch speciesBoro;
+	private final HyperLogLog distinctSpecies;
+	private final HyperLogLog distinctZips;
+	private long total;
+	private long[] boroCount = new long[BORO.length];
+
+	/**
+	 * Default constructor: frequencies within 0.1% of the number of trees with
+	 * 99% confidence, distinct counts within about 1.6% (4096 registers).
+	 */
+	public StreamingCensus() {
+		this(0.001, 0.01, 12);
+	}
+
+	/**
+	 * Constructor for a census with the given error bounds.
+	 *
+	 * @param epsilon and delta of the Count-Min sketches, and the precision
+	 * of the HyperLogLog estimators
+	 * @throws IllegalArgumentException if a parameter is out of range
+	 */
+	public StreamingCensus(double epsilon, double delta, int precision) throws IllegalArgumentException {
+		species = new CountMinSketch(epsilon, delta);
+		speciesBoro = new CountMinSketch(epsilon, delta);
+		distinctSpecies = new HyperLogLog(precision);
+		distinctZips = new HyperLogLog(precision);
+	}
+
+	/**
+	 * Counts a tree. The tree is not kept.
+	 *
+	 * @param the tree, cannot be null
+	 */
+	public void add(Tree t) {
+		String name = t.getSpeciesName().toLowerCase();
+		int i = TreeColumns.code(BORO, t.getBoro());
+		species.add(name);
+		if (i >= 0) {
+			speciesBoro.add(key(name, i));
+			boroCount[i]++;
+		}
+		distinctSpecies.offer(name);
+		distinctZips.offer(Integer.toString(t.getZip()));
+		total++;
+	}
+
+	// key of a species in a borough in the species-by-borough sketch
+	private static String key(String name, int boro) {
+		return name + '\u0000' + boro;
+	}
+
+	/**
+	 * Getter methods for the exact totals.
+	 *
+	 * @param string 'boroName' (case insensitive) for the borough total
+	 * @return number of trees counted in the city or in the borough (0 for an unknown name)
+	 */
+	public long getTotalNumberOfTrees() {
+		return total;
+	}
+	public long getCountByBorough(String boroName) {
+		int i = TreeColumns.code(BORO, boroName);
+		return (i < 0) ? 0 : boroCount[i];
+	}
+
+	/**
+	 * Returns the estimated number of trees of a species, in the city or in
+	 * one borough. The estimate is never too low, and is too high by at most
+	 * getErrorBound() trees with probability getConfidence().
+	 *
+	 * @param string 'speciesName' (case insensitive) and string 'boroName'
+	 * @return estimated number of trees
+	 */
+	public long getCountByTreeSpecies(String speciesName) {
+		return species.estimate(speciesName.toLowerCase());
+	}
+	public long getCountByTreeSpeciesBorough(String speciesName, String boroName) {
+		int i = TreeColumns.code(BORO, boroName);
+		if (i < 0)
+			return 0;
+		// a species count cannot exceed the borough total, which is exact
+		return Math.min(boroCount[i], speciesBoro.estimate(key(speciesName.toLowerCase(), i)));
+	}
+
+	/**
+	 * Returns the largest overcount of the species estimates, in trees.
+	 * Both sketches count every tree once, so the bound is the same for both.
+	 *
+	 * @return epsilon times the number of trees, rounded up
+	 */
+	public long getErrorBound() {
+		return species.getErrorBound();
+	}
+
+	/**
+	 * Returns the probability that a species estimate is within the bound.
+	 *
+	 * @return 1 - delta
+	 */
+	public double getConfidence() {
+		return 1 - species.getDelta();
+	}
+
+	/**
+	 * Getter methods for the estimated numbers of distinct species and zip codes.
+	 *
+	 * @return estimated number of distinct values
+	 */
+	public long getDistinctSpecies() {
+		return distinctSpecies.cardinality();
+	}
+	public long getDistinctZips() {
+		return distinctZips.cardinality();
+	}
+
+	/**
+	 * Returns the relative standard error of the distinct counts.
+	 *
+	 * @return relative error, e.g. 0.016 for 1.6%
+	 */
+	public double getDistinctError() {
+		return distinctSpecies.getRelativeError();
+	}
+
+	/**
+	 * Returns the memory used by the sketches and counters, which does not
+	 * depend on the number of trees counted.
+	 *
+	 * @return number of bytes
+	 */
+	public long sizeInBytes() {
+		return species.sizeInBytes() + speciesBoro.sizeInBytes() + distinctSpecies.sizeInBytes()
+				+ distinctZips.sizeInBytes() + 8L * (boroCount.length + 1);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Counted %,d trees in %,d bytes: about %,d species in %,d zip codes (%.1f%% error).",
+				total, sizeInBytes(), getDistinctSpecies(), getDistinctZips(), 100 * getDistinctError());
+	}
+
+}
@@ -0,0 +1,96 @@
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.function.ToLongFunction;
+
+/**
+ * This program checks the estimates of StreamingCensus against the exact
+ * counts of a TreeCollection loaded from the same file: the totals must be
+ * equal, the Count-Min estimates of every species (in the city and in every
+ * borough) must never be too low and too high by at most epsilon * N, and
+ * the HyperLogLog counts of distinct species and zip codes must be within
+ * their relative standard error. It runs with the default bounds and with
+ * small sketches, whose collisions actually use the error bounds, prints
+ * one line per check and exits with status 1 if a check failed.
+ *
+ * Usage: java StreamingCensusCheck [data file]
+ * (by default data/NYCstreettreesdataset-partial.csv)
+ */
+public class StreamingCensusCheck {
+
+	private static int failures;
+
+	public static void main(String[] args) throws Exception {
+		File file = new File(args.length > 0 ? args[0] : "data/NYCstreettreesdataset-partial.csv");
+		TreeCollection treeCollect = new TreeCollection();
+		NYCStreetTrees.readFile(treeCollect, file);
+
+		// exact counts by species, by species and borough, and the distinct values
+		HashMap<String, Integer> bySpecies = new HashMap<String, Integer>();
+		HashMap<String, Integer> bySpeciesBoro = new HashMap<String, Integer>();
+		HashSet<Integer> zips = new HashSet<Integer>();
+		for (Tree t : treeCollect) {
+			String name = t.getSpeciesName().toLowerCase();
+			bySpecies.merge(name, 1, Integer::sum);
+			bySpeciesBoro.merge(name + '\u0000' + t.getBoro().toLowerCase(), 1, Integer::sum);
+			zips.add(t.getZip());
+		}
+
+		check(file, treeCollect, bySpecies, bySpeciesBoro, zips, new StreamingCensus(), "default census");
+		check(file, treeCollect, bySpecies, bySpeciesBoro, zips, new StreamingCensus(0.01, 0.01, 8),
+				"small census (epsilon 0.01, 256 registers)");
+
+		System.out.println((failures == 0) ? "All checks passed." : failures + " check(s) failed.");
+		System.exit((failures == 0) ? 0 : 1);
+	}
+
+	private static void check(boolean passed, String description) {
+		System.out.println((passed ? "ok     " : "FAILED ") + description);
+		if (!passed)
+			failures++;
+	}
+
+	private static void check(File file, TreeCollection treeCollect, HashMap<String, Integer> bySpecies,
+			HashMap<String, Integer> bySpeciesBoro, HashSet<Integer> zips, StreamingCensus census, String title)
+			throws Exception {
+		System.out.println(title + ":");
+		NYCStreetTrees.readFile(census, file);
+
+		boolean totals = census.getTotalNumberOfTrees() == treeCollect.getTotalNumberOfTrees();
+		for (String boro : TreeColumns.BORO)
+			totals &= census.getCountByBorough(boro) == treeCollect.getCountByBorough(boro);
+		check(totals, String.format("totals: %,d trees, borough totals exact", census.getTotalNumberOfTrees()));
+
+		long bound = census.getErrorBound();
+		long[] species = overcounts(bySpecies, name -> census.getCountByTreeSpecies(name));
+		check(species[0] >= 0 && species[1] <= bound, String.format(
+				"%,d species: overcount %,d to %,d trees, bound %,d", bySpecies.size(), species[0], species[1], bound));
+		long[] speciesBoro = overcounts(bySpeciesBoro, key -> {
+			int split = key.indexOf('\u0000');
+			return census.getCountByTreeSpeciesBorough(key.substring(0, split), key.substring(split + 1));
+		});
+		check(speciesBoro[0] >= 0 && speciesBoro[1] <= bound, String.format(
+				"%,d species by borough: overcount %,d to %,d trees, bound %,d",
+				bySpeciesBoro.size(), speciesBoro[0], speciesBoro[1], bound));
+
+		double error = census.getDistinctError();
+		check(Math.abs(census.getDistinctSpecies() - bySpecies.size()) <= error * bySpecies.size(), String.format(
+				"distinct species: %,d estimated, %,d exact, standard error %.1f%%",
+				census.getDistinctSpecies(), bySpecies.size(), 100 * error));
+		check(Math.abs(census.getDistinctZips() - zips.size()) <= error * zips.size(), String.format(
+				"distinct zip codes: %,d estimated, %,d exact, standard error %.1f%%",
+				census.getDistinctZips(), zips.size(), 100 * error));
+	}
+
+	// smallest and largest difference between the estimate and the exact count of every key
+	private static long[] overcounts(HashMap<String, Integer> exact, ToLongFunction<String> estimate) {
+		long[] range = {Long.MAX_VALUE, Long.MIN_VALUE};
+		for (String key : exact.keySet()) {
+			long over = estimate.applyAsLong(key) - exact.get(key);
+			range[0] = Math.min(range[0], over);
+			range[1] = Math.max(range[1], over);
+		}
+		return range;
+	}
+
+}
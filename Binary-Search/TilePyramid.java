@@ -0,0 +1,276 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class counts trees on square grids over the state plane coordinates
+ * (x_sp, y_sp, in feet) at several zoom levels, for density heat maps. At
+ * zoom z the area is cut into 2^z by 2^z cells, and the count of every cell
+ * is kept in a flat int array (row by row, southern row first), so the
+ * counts of a viewport are read directly instead of scanning the trees.
+ *
+ * Counts are kept in layers: one for all trees, one per status, and one per
+ * combination of species and status that occurs (both case insensitive).
+ * Only the layer of all trees keeps every zoom level in full. The other
+ * layers hold the counts of their non-empty cells at the finest level in a
+ * small hash table, and the coarser cells of a query are added up from
+ * them, so a species takes memory in proportion to the cells it occupies
+ * and a query costs O(cells returned + cells of the layers read). A query
+ * by species alone adds up the few layers of that species. Adding or
+ * removing a tree changes one cell per zoom level of the first layer and
+ * one cell of two other layers.
+ */
+public class TilePyramid {
+
+	// default area: a square that covers the five boroughs
+	public static final double NYC_MIN_X = 910000;
+	public static final double NYC_MIN_Y = 115000;
+	public static final double NYC_SIDE = 163840; // cells of 1,280 feet at zoom 7
+	public static final int DEFAULT_MAX_ZOOM = 7;
+
+	// private data fields
+	private final double minX, minY, side;
+	private final int maxZoom;
+	private final int[][] all; // counts of all trees, one array per zoom level
+	private final HashMap<String, Cells> byStatus = new HashMap<String, Cells>();
+	private final HashMap<String, Cells> bySpeciesStatus = new HashMap<String, Cells>();
+	private final HashMap<String, ArrayList<Cells>> bySpecies = new HashMap<String, ArrayList<Cells>>();
+	private int outside; // trees whose coordinates are not in the area
+
+	// default constructor for the NYC area with zoom levels 0 to 7
+	public TilePyramid() {
+		this(NYC_MIN_X, NYC_MIN_Y, NYC_SIDE, DEFAULT_MAX_ZOOM);
+	}
+
+	/**
+	 * Constructor for a square area and a number of zoom levels.
+	 *
+	 * @param the south-west corner and the side of the area (state plane feet),
+	 * and the finest zoom level (each level takes 4^zoom ints in the layer of
+	 * all trees)
+	 * @throws IllegalArgumentException if side is not positive or maxZoom is not
+	 * between 0 and 12
+	 */
+	public TilePyramid(double minX, double minY, double side, int maxZoom) throws IllegalArgumentException {
+		if (!(side > 0))
+			throw new IllegalArgumentException("The side of the area must be positive.");
+		if (maxZoom < 0 || maxZoom > 12)
+			throw new IllegalArgumentException("The finest zoom level must be between 0 and 12.");
+		this.minX = minX;
+		this.minY = minY;
+		this.side = side;
+		this.maxZoom = maxZoom;
+		this.all = new int[maxZoom + 1][];
+		for (int z=0; z<=maxZoom; z++)
+			all[z] = new int[1 << (2 * z)];
+	}
+
+	/**
+	 * Methods that count a tree in, or out of, every zoom level.
+	 *
+	 * @param the tree, cannot be null
+	 */
+	public void add(Tree t) {
+		update(t, 1);
+	}
+	public void remove(Tree t) {
+		update(t, -1);
+	}
+
+	private void update(Tree t, int delta) {
+		int column = getColumn(maxZoom, t.getX());
+		int row = getRow(maxZoom, t.getY());
+		int cells = 1 << maxZoom;
+		if (column < 0 || column >= cells || row < 0 || row >= cells) {
+			outside += delta;
+			return;
+		}
+		String status = key(t.getStatus());
+		String species = key(t.getSpeciesName());
+		Cells statusLayer = byStatus.get(status);
+		if (statusLayer == null) {
+			statusLayer = new Cells();
+			byStatus.put(status, statusLayer);
+		}
+		Cells speciesLayer = bySpeciesStatus.get(species + '\u0000' + status);
+		if (speciesLayer == null) {
+			speciesLayer = new Cells();
+			bySpeciesStatus.put(species + '\u0000' + status, speciesLayer);
+			bySpecies.computeIfAbsent(species, name -> new ArrayList<Cells>()).add(speciesLayer);
+		}
+		for (int z=maxZoom; z>=0; z--) {
+			int shift = maxZoom - z;
+			all[z][((row >> shift) << z) + (column >> shift)] += delta;
+		}
+		int cell = (row << maxZoom) + column;
+		statusLayer.add(cell, delta);
+		speciesLayer.add(cell, delta);
+	}
+
+	private static String key(String name) {
+		return (name == null) ? "" : name.toLowerCase();
+	}
+
+	/**
+	 * Returns the counts of the cells that intersect a viewport at a zoom level,
+	 * for all trees or only those of a species and/or a status. The time taken is
+	 * proportional to the number of cells returned, plus the number of non-empty
+	 * cells of the species or status.
+	 *
+	 * @param the zoom level, the viewport corners (state plane feet), and the
+	 * species and status (case insensitive; null for any)
+	 * @return counts[row][column], southern row and western column first, for the
+	 * cells from getRow(zoom, minY) to getRow(zoom, maxY) and from getColumn(zoom, minX)
+	 * to getColumn(zoom, maxX), clipped to the area; empty if the viewport is outside it
+	 * @throws IllegalArgumentException if the zoom level is not between 0 and
+	 * getMaxZoom(), or the viewport has a negative width or height
+	 */
+	public int[][] getCounts(int zoom, double minX, double minY, double maxX, double maxY,
+			String species, String status) throws IllegalArgumentException {
+		if (zoom < 0 || zoom > maxZoom)
+			throw new IllegalArgumentException("The zoom level must be between 0 and " + maxZoom + ".");
+		if (maxX < minX || maxY < minY)
+			throw new IllegalArgumentException("The viewport has a negative width or height.");
+		int cells = 1 << zoom;
+		int c0 = Math.max(0, getColumn(zoom, minX)), c1 = Math.min(cells - 1, getColumn(zoom, maxX));
+		int r0 = Math.max(0, getRow(zoom, minY)), r1 = Math.min(cells - 1, getRow(zoom, maxY));
+		if (c0 > c1 || r0 > r1)
+			return new int[0][0];
+
+		int[][] counts = new int[r1 - r0 + 1][c1 - c0 + 1];
+		if (species == null && status == null) {
+			int[] level = all[zoom];
+			for (int r=r0; r<=r1; r++) {
+				int[] line = counts[r - r0];
+				for (int c=c0, cell=(r << zoom) + c0; c<=c1; c++, cell++)
+					line[c - c0] = level[cell];
+			}
+			return counts;
+		}
+
+		ArrayList<Cells> layers = new ArrayList<Cells>(4);
+		if (species == null) {
+			if (byStatus.containsKey(key(status)))
+				layers.add(byStatus.get(key(status)));
+		}
+		else if (status == null) {
+			if (bySpecies.containsKey(key(species)))
+				layers.addAll(bySpecies.get(key(species)));
+		}
+		else if (bySpeciesStatus.containsKey(key(species) + '\u0000' + key(status)))
+			layers.add(bySpeciesStatus.get(key(species) + '\u0000' + key(status)));
+
+		// add up the finest cells into the cells of the zoom level
+		int shift = maxZoom - zoom, mask = (1 << maxZoom) - 1;
+		for (Cells layer : layers) {
+			for (int i=0; i<layer.cells.length; i++) {
+				if (layer.counts[i] == 0)
+					continue; // free slot, or a cell whose trees were removed
+				int cell = layer.cells[i] - 1;
+				int r = (cell >> maxZoom) >> shift;
+				int c = (cell & mask) >> shift;
+				if (r >= r0 && r <= r1 && c >= c0 && c <= c1)
+					counts[r - r0][c - c0] += layer.counts[i];
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Methods that locate a coordinate on the grid of a zoom level. The results
+	 * can be outside 0 to 2^zoom - 1 for coordinates outside the area.
+	 *
+	 * @param the zoom level and the x (or y) state plane coordinate
+	 * @return the column (or row) of the cell that holds the coordinate
+	 */
+	public int getColumn(int zoom, double x) {
+		return (int) Math.floor((x - minX) / side * (1 << zoom));
+	}
+	public int getRow(int zoom, double y) {
+		return (int) Math.floor((y - minY) / side * (1 << zoom));
+	}
+
+	/**
+	 * Getter methods for the grid.
+	 *
+	 * @return the side of a cell at a zoom level (feet), the finest zoom level,
+	 * the number of trees outside the area, and the heap used by the counts
+	 */
+	public double getCellSize(int zoom) {
+		return side / (1 << zoom);
+	}
+	public int getMaxZoom() {
+		return maxZoom;
+	}
+	public int getOutside() {
+		return outside;
+	}
+	public long sizeInBytes() {
+		long bytes = MemoryFootprint.arraySize(all.length, MemoryFootprint.REFERENCE);
+		for (int[] cells : all)
+			bytes += MemoryFootprint.arraySize(cells.length, 4);
+		bytes += MemoryFootprint.hashMapSize(byStatus.size()) + MemoryFootprint.hashMapSize(bySpeciesStatus.size())
+				+ MemoryFootprint.hashMapSize(bySpecies.size());
+		for (Cells layer : byStatus.values())
+			bytes += layer.sizeInBytes();
+		for (Cells layer : bySpeciesStatus.values())
+			bytes += layer.sizeInBytes();
+		for (ArrayList<Cells> layers : bySpecies.values())
+			bytes += MemoryFootprint.arrayListSize(layers.size());
+		return bytes; // the keys are the strings of the trees, counted with them
+	}
+
+
+	/*
+	 * Counts of the non-empty cells of a layer at the finest zoom level, in an
+	 * open addressing hash table (linear probing) of cell numbers. A cell whose
+	 * count falls back to 0 keeps its slot, so it is found again if trees are
+	 * added to it; queries skip it.
+	 */
+	private static class Cells {
+
+		private int[] cells = new int[8]; // cell number + 1, 0 for a free slot
+		private int[] counts = new int[8];
+		private int used; // slots taken
+
+		void add(int cell, int delta) {
+			int i = slot(cells, cell);
+			if (cells[i] == 0) {
+				if (2 * (used + 1) > cells.length) { // at most half full
+					grow();
+					i = slot(cells, cell);
+				}
+				cells[i] = cell + 1;
+				used++;
+			}
+			counts[i] += delta;
+		}
+
+		// slot of a cell, or the free slot where it goes
+		private static int slot(int[] cells, int cell) {
+			int mask = cells.length - 1;
+			int hash = cell * 0x9E3779B9;
+			int i = (hash ^ (hash >>> 16)) & mask;
+			while (cells[i] != 0 && cells[i] != cell + 1)
+				i = (i + 1) & mask;
+			return i;
+		}
+
+		private void grow() {
+			int[] oldCells = cells, oldCounts = counts;
+			cells = new int[2 * oldCells.length];
+			counts = new int[2 * oldCells.length];
+			for (int j=0; j<oldCells.length; j++) {
+				if (oldCells[j] != 0) {
+					int i = slot(cells, oldCells[j] - 1);
+					cells[i] = oldCells[j];
+					counts[i] = oldCounts[j];
+				}
+			}
+		}
+
+		long sizeInBytes() {
+			return MemoryFootprint.objectSize(2, 4) + 2 * MemoryFootprint.arraySize(cells.length, 4);
+		}
+	}
+
+}
@@ -19,6 +19,7 @@ public class Tree implements Comparable<Tree> {
 	private String boroname; // valid values: "Manhattan", "Bronx", "Brooklyn", "Queens", "Staten Island"
 	private double x_sp;
 	private double y_sp;
+	private boolean probe; // only a search key (see probe), never stored
 
 	
 	// create a 9 parameter constructor
@@ -105,6 +106,27 @@ public class Tree implements Comparable<Tree> {
 		catch (IllegalArgumentException e) {
 			System.err.println("Invalid argument for borough name!");
 		}
+		
+		// state plane coordinates, any value is valid
+		x_sp = x;
+		y_sp = y;
+		QueryProfile.countTree();
+	}
+	
+	
+	/**
+	 * Returns a tree that only serves as a search key with the given species
+	 * name and tree id, e.g. the bounds of a range of species. Comparing it
+	 * with a stored tree of the same id and another species does not report
+	 * a conflict of ids.
+	 * 
+	 * @param species name and tree id of the key
+	 * @return the probe tree
+	 */
+	static Tree probe(String spc, int id) {
+		Tree t = new Tree(id, 0, "", "", spc, 0, "Manhattan", 0, 0);
+		t.probe = true;
+		return t;
 	}
 	
 	
@@ -171,9 +193,10 @@ public class Tree implements Comparable<Tree> {
 					this.spc_common.equalsIgnoreCase(((Tree) o).spc_common) ) {
 				return true;
 			}
-			// identical id but different species name
+			// identical id but different species name (a probe is not a real tree)
 			else if ( this.tree_id == ((Tree) o).tree_id &&
-					!( this.spc_common.equalsIgnoreCase(((Tree) o).spc_common) ) ) {
+					!( this.spc_common.equalsIgnoreCase(((Tree) o).spc_common) ) &&
+					!this.probe && !((Tree) o).probe ) {
 				throw new IllegalArgumentException();
 			}
 			// different id or different species name
@@ -229,6 +252,7 @@ public class Tree implements Comparable<Tree> {
 	@Override
 	public int compareTo(Tree o) {
 		
+		QueryProfile.countComparison();
 		// same species name and tree id
 		if (this.equals(o)) { // calls overridden equals method of Tree class
 			return 0;
@@ -263,6 +287,7 @@ public class Tree implements Comparable<Tree> {
 	 * @author Kelly Xie (kyx203)
 	 */
 	public boolean sameName(Tree t) {
+		QueryProfile.countComparison();
 		if ( (this.spc_common).equalsIgnoreCase(t.spc_common) )
 			return true;
 		else
@@ -281,6 +306,7 @@ public class Tree implements Comparable<Tree> {
 	 * @author Kelly Xie (kyx203)
 	 */
 	public int compareName(Tree t) {
+		QueryProfile.countComparison();
 		if ( (this.spc_common).compareToIgnoreCase(t.spc_common) < 0 )
 			return -1;
 		else if ( (this.spc_common).compareToIgnoreCase(t.spc_common) > 0 )
@@ -1,5 +1,17 @@
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Flow;
+import java.util.function.Predicate;
 
 /**
  * This class inherits from the MyBST<Tree> class 
@@ -8,23 +20,49 @@ import java.util.Collection;
  * 
  * @author Kelly Xie (kyx203)
  */
-public class TreeCollection extends MyBST<Tree> {
+public class TreeCollection extends MyBST<Tree> implements TreeCounts {
 	
 	// private data fields
 	private String[] boro = {"manhattan", "brooklyn", "bronx", "queens", "staten island"};
 	private int[] boroCount = {0, 0, 0, 0, 0};
 	private ArrayList<String> uniqueSpecies = new ArrayList<String>();
-	private Collection<String> matchingSpecies;
+	// number of trees of every species per borough (indexed like boro) and per zip code,
+	// kept up to date on add and remove for the top species leaderboards
+	private HashMap<String, int[]> speciesByBoro = new HashMap<String, int[]>();
+	private HashMap<Integer, HashMap<String, int[]>> speciesByZip = new HashMap<Integer, HashMap<String, int[]>>();
+	private FuzzySpeciesIndex fuzzy; // typo-tolerant lookup, built on first use
+	private SpeciesAutocomplete completions; // ranked completions, built on first use
+	private static final int COMPLETIONS = 10; // completions kept per prefix
+	private TilePyramid tiles; // heat map counts, kept up on add (built on first use by the versions)
+	private TreeIdIndex ids = new TreeIdIndex(); // every tree by its id
+	private ArrayList<Tree> conflicts = new ArrayList<Tree>(); // rejected: id taken by another species
 	
 	// default constructor that creates an empty tree
 	public TreeCollection() {
 		super();
+		this.tiles = new TilePyramid();
+	}
+	
+	// constructor for a collection over an existing tree and its derived data
+	// (used for the read-only versions published by PersistentTreeCollection)
+	protected TreeCollection(BSTNode<Tree> root, int[] boroCount, ArrayList<String> uniqueSpecies) {
+		super();
+		this.root = root;
+		this.size = sizeOf(root);
+		this.boroCount = boroCount;
+		this.uniqueSpecies = uniqueSpecies;
+		this.speciesByBoro = null; // counted on first use, see tallies()
+		this.speciesByZip = null;
+		this.ids = null; // indexed on first use, see idIndex()
 	}
 	
 	
 	/** 
 	 * Overrides the add method from MyBST class.
 	 * Helper method is implemented recursively.
+	 * Duplicates are found by tree id in the id index, without a descent of
+	 * the tree. A tree whose id is already used by a tree of another species
+	 * is rejected as well, since ids are unique; it is kept in getConflicts().
 	 * 
 	 * @param Tree object t
 	 * @return true if tree was successfully added; false otherwise
@@ -35,17 +73,26 @@ public class TreeCollection extends MyBST<Tree> {
 	public boolean add(Tree t) {
 		if (t == null)
         	throw new NullPointerException();
-		if (root != null && contains(t)) {
+		Tree stored = idIndex().putIfAbsent(t);
+		if (stored != null) {
+			if (!stored.sameName(t))
+				conflicts.add(t); // same id, different species: the first tree is kept
 			return false; // duplicate tree, not stored in collection
 		}
 		else {
-			for (int i=0; i<boro.length; i++) {
-				if ((t.getBoro()).equalsIgnoreCase(boro[i]))
-					boroCount[i]++; // increment corresponding borough in list
-			}
+			int i = boroIndex(t.getBoro());
+			if (i >= 0)
+				boroCount[i]++; // increment corresponding borough in list
 			if (!uniqueSpecies.contains( t.getSpeciesName() )) {
 					uniqueSpecies.add( t.getSpeciesName() ); // add all unique species to list
+					if (fuzzy != null)
+						fuzzy.add( t.getSpeciesName() );
 			}
+			tally(t, 1);
+			if (completions != null)
+				completions.add(t.getSpeciesName(), 1);
+			if (tiles != null)
+				tiles.add(t);
 			root = add(root, t);
 			size++; // increment size
 			return true;
@@ -67,6 +114,96 @@ public class TreeCollection extends MyBST<Tree> {
     }
 	
     
+	/**
+	 * Overrides the remove method from MyBST class so that the borough
+	 * counts and the list of unique species stay correct.
+	 * 
+	 * @param Object o representing the tree to be removed
+	 * @return true if the tree was removed; false if it was not in the collection
+	 * @throws NullPointerException if o is null
+	 */
+	@Override
+	public boolean remove(Object o) throws Exception {
+		if (o == null)
+			throw new NullPointerException();
+		Tree t = delete(o); // the stored tree, which holds the actual borough
+		if (t == null)
+			return false;
+		unindex(t);
+		return true;
+	}
+	
+	// takes a removed tree out of the counts and indexes
+	private void unindex(Tree t) {
+		idIndex().remove(t.getId());
+		int i = boroIndex(t.getBoro());
+		if (i >= 0)
+			boroCount[i]--;
+		tally(t, -1);
+		if (completions != null)
+			completions.add(t.getSpeciesName(), -1);
+		if (tiles != null)
+			tiles.remove(t);
+		if (speciesRange(t.getSpeciesName()).isEmpty()) {
+			uniqueSpecies.remove(t.getSpeciesName()); // last tree of its species
+			fuzzy = null;
+		}
+	}
+	
+	
+	/**
+	 * Overrides the removeIf method from MyBST class, e.g. to drop all
+	 * stumps and dead trees: removeIf(t -> !t.getStatus().equals("alive")).
+	 * When only a few trees are removed, they are taken out of the counts
+	 * and indexes one by one, as by remove; otherwise the borough counts and
+	 * unique species are recomputed from the survivors in one linear pass.
+	 * 
+	 * @param filter that returns true for the trees to be removed
+	 * @return true if any tree was removed; false otherwise
+	 */
+	@Override
+	public boolean removeIf(Predicate<? super Tree> filter) {
+		if (filter == null)
+			throw new NullPointerException();
+		ArrayList<Tree> removed = new ArrayList<Tree>();
+		if (!super.removeIf(t -> filter.test(t) && removed.add(t)))
+			return false;
+		if (removed.size() < (size + removed.size()) / FEW) {
+			for (Tree t : removed)
+				unindex(t);
+			return true;
+		}
+		for (int i=0; i<boroCount.length; i++)
+			boroCount[i] = 0;
+		speciesByBoro = new HashMap<String, int[]>();
+		speciesByZip = new HashMap<Integer, HashMap<String, int[]>>();
+		ids = new TreeIdIndex(size);
+		tiles = new TilePyramid();
+		for (Tree t : this) {
+			ids.putIfAbsent(t);
+			tiles.add(t);
+			int i = boroIndex(t.getBoro());
+			if (i >= 0)
+				boroCount[i]++;
+			tally(t, 1);
+		}
+		// keep the original order of the species that still have trees
+		uniqueSpecies.removeIf(name -> speciesRange(name).isEmpty());
+		fuzzy = null;
+		completions = null;
+		return true;
+	}
+	
+	// index of the borough in the boro array, or -1 if it is not a valid name
+	protected int boroIndex(String boroName) {
+		for (int i=0; i<boro.length; i++) {
+			if (boro[i].equalsIgnoreCase(boroName))
+				return i;
+		}
+		return -1;
+	}
+	
+    
 	/**
 	 * Returns the total number of Tree objects stored in this list.
 	 * Efficient implementation of this method is O(1).
@@ -95,31 +232,114 @@ public class TreeCollection extends MyBST<Tree> {
 	 */
 	public int getCountByTreeSpecies(String speciesName) { // includes all names that contain parameter as substring
 		int countByTreeSpecies = 0;
-		//ArrayList<String> matching = (ArrayList<String>)getMatchingSpecies(speciesName);
-		ArrayList<Tree> tempTreeList = new ArrayList<Tree>();
-		for (String name : matchingSpecies) {
-			Tree tempTree = new Tree(1, 0, "", "", name, 0, "Manhattan", 0, 0);
-			tempTreeList.add(tempTree);
-		}
-		for (Tree tempTree : tempTreeList) {
-			BSTNode<Tree> current = root;
-			countByTreeSpecies += count(current, tempTree);
+		for (String name : matching(speciesName)) {
+			// all trees of one species form a contiguous range of the tree
+			countByTreeSpecies += speciesRange(name).size();
 		}
 		// if non-existent species, the return value will be 0
 		return countByTreeSpecies;
 	}
 	
-	private int count(BSTNode<Tree> current, Tree tempTree) { // helper method
-		  // base case: does not exist
-		  if (current == null) 
-			  return 0;
-		  else if (current.getData().sameName(tempTree))
-			  return ( 1 + count(current.getLeft(), tempTree) + 
-					  count(current.getRight(), tempTree) );
-		  else
-			  return ( count(current.getLeft(), tempTree) + 
-					  count(current.getRight(), tempTree) );
-		}
+	
+	/**
+	 * Returns a publisher of the Tree objects whose species matches speciesName,
+	 * as counted by getCountByTreeSpecies: species in the order of
+	 * getMatchingSpecies, and the trees of each species by id. The trees are
+	 * read from the tree as the subscribers request them (see TreePublisher),
+	 * so only the path to the next tree is held, however many trees match.
+	 * The collection must not be modified while a subscription is active.
+	 * 
+	 * @param string 'speciesName' representing the tree species, cannot be null
+	 * @return publisher of the matching trees, to any number of subscribers
+	 */
+	public Flow.Publisher<Tree> publishBySpecies(String speciesName) {
+		if (speciesName == null)
+			throw new NullPointerException();
+		return new TreePublisher(() -> speciesTrees(matching(speciesName)));
+	}
+	
+	// iterator over the trees of the given species, one species range after the other
+	private Iterator<Tree> speciesTrees(List<String> names) {
+		Iterator<String> species = names.iterator();
+		return new Iterator<Tree>() {
+			private Iterator<Tree> range = Collections.emptyIterator();
+			
+			@Override
+			public boolean hasNext() {
+				while (!range.hasNext() && species.hasNext())
+					range = speciesRange(species.next()).iterator();
+				return range.hasNext();
+			}
+			
+			@Override
+			public Tree next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return range.next();
+			}
+		};
+	}
+	
+	
+	/**
+	 * Returns one page of the trees of a species, in tree id order, starting
+	 * after a given tree id (keyset pagination): the next page starts after the
+	 * id of the last tree of this one. The resume key (species, id) is found
+	 * with O(height) descents, as speciesRange does, and only the trees of the
+	 * page are visited, so a page deep into a large species costs the same as
+	 * the first one. Trees added or removed between pages do not shift the pages.
+	 * 
+	 * @param string 'speciesName' (the exact species name, case insensitive,
+	 * cannot be null), the id after which the page starts (0 for the first
+	 * page), and the largest number of trees on the page
+	 * @return list of at most limit trees; shorter than limit only on the last page
+	 * @throws IllegalArgumentException if limit is negative
+	 */
+	public List<Tree> page(String speciesName, int afterTreeId, int limit) throws IllegalArgumentException {
+		if (speciesName == null)
+			throw new NullPointerException();
+		if (limit < 0)
+			throw new IllegalArgumentException("The page size cannot be negative.");
+		BSTRange<Tree> rest = (afterTreeId < 1) ? speciesRange(speciesName) // ids are positive
+				: subSet(treeKey(speciesName, afterTreeId), false, speciesKey(speciesName + '\u0000'), false);
+		ArrayList<Tree> page = new ArrayList<Tree>(Math.min(limit, 1024));
+		Iterator<Tree> trees = rest.iterator();
+		while (page.size() < limit && trees.hasNext())
+			page.add(trees.next());
+		return page;
+	}
+	
+	
+	/**
+	 * Returns the number of Tree objects whose species name starts with the
+	 * given prefix. Method is case insensitive. Since the collection is ordered
+	 * by species name first, those trees form one contiguous key range;
+	 * its size is found with two O(log n) descents and no other node is visited.
+	 * 
+	 * @param string 'prefix' representing the start of a species name. It can be
+	 * empty (all trees match), but cannot be null.
+	 * @return integer representing the number of trees whose species starts with prefix
+	 */
+	public int countByPrefix(String prefix) {
+		return subSet(speciesKey(prefix), true, speciesKey(prefix + '\uffff'), false).size();
+	}
+	
+	// range view holding every tree of exactly the given species
+	protected BSTRange<Tree> speciesRange(String name) {
+		// name + '\u0000' is the smallest name that sorts after name itself
+		return subSet(speciesKey(name), true, speciesKey(name + '\u0000'), false);
+	}
+	
+	// probe tree that sorts before every real tree with the given species name
+	// (tree ids are positive, so id 1 is the smallest possible key)
+	private static Tree speciesKey(String name) {
+		return treeKey(name, 1);
+	}
+	
+	// probe tree with the key (species name, tree id)
+	private static Tree treeKey(String name, int id) {
+		return Tree.probe(name, id);
+	}
 	
 	
 	/**
@@ -159,31 +379,147 @@ public class TreeCollection extends MyBST<Tree> {
 	 */
 	public int getCountByTreeSpeciesBorough(String speciesName, String boroName) {
 		int countByTreeSpeciesBoro = 0;
-		ArrayList<Tree> tempTreeList = new ArrayList<Tree>();
-		for (String name : matchingSpecies) {
-			Tree tempTree = new Tree(1, 0, "", "", name, 0, boroName, 0, 0);
-			tempTreeList.add(tempTree);
-		}
-		for (Tree tempTree : tempTreeList) {
-			BSTNode<Tree> current = root;
-			countByTreeSpeciesBoro += count2(current, tempTree, boroName);
+		for (String name : matching(speciesName)) {
+			// only visit the trees of the matching species
+			for (Tree t : speciesRange(name)) {
+				if (t.getBoro().equalsIgnoreCase(boroName))
+					countByTreeSpeciesBoro++;
+			}
 		}
 		// if non-existent species, the return value will be 0
 		return countByTreeSpeciesBoro;
 	}
 	
-	private int count2(BSTNode<Tree> current, Tree tempTree, String boroName) { // helper method
-		// base case: does not exist 
-		if (current == null) 
-			  return 0;
-		  else if ((current.getData().sameName(tempTree)) &
-				  (current.getData().getBoro().toLowerCase().equals(boroName)) )
-			  return ( 1 + count2(current.getLeft(), tempTree, boroName) + 
-					  count2(current.getRight(), tempTree, boroName) );
-		  else
-			  return ( count2(current.getLeft(), tempTree, boroName) + 
-					  count2(current.getRight(), tempTree, boroName) );
+	
+	/**
+	 * Methods that return the k most common species in a borough or in a zip code,
+	 * most common first (ties in alphabetical order). The per-species counts are
+	 * maintained on add and remove, and a heap that never holds more than k
+	 * entries picks the top ones, so a query costs O(S log k) for S species.
+	 * Trees without a species name (stumps, dead trees) are not ranked.
+	 * 
+	 * @param string 'boroName' (case insensitive) or int 'zip', and the number k of species
+	 * @return list of (species name, number of trees) entries, at most k long;
+	 * empty for an unknown borough or zip code
+	 */
+	public List<Map.Entry<String, Integer>> topSpecies(String boroName, int k) {
+		int i = boroIndex(boroName);
+		if (i < 0)
+			return new ArrayList<Map.Entry<String, Integer>>();
+		return top(tallies().entrySet(), i, k);
+	}
+	public List<Map.Entry<String, Integer>> topSpecies(int zip, int k) {
+		tallies();
+		HashMap<String, int[]> counts = speciesByZip.get(zip);
+		if (counts == null)
+			return new ArrayList<Map.Entry<String, Integer>>();
+		return top(counts.entrySet(), 0, k);
+	}
+	
+	// pick the k entries with the largest count in the given column
+	static List<Map.Entry<String, Integer>> top(Collection<Map.Entry<String, int[]>> entries,
+			int column, int k) {
+		// heap order: smallest count first, so the root is the entry to replace
+		Comparator<Map.Entry<String, Integer>> order = new Comparator<Map.Entry<String, Integer>>() {
+			@Override
+			public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+				int cmp = Integer.compare(a.getValue(), b.getValue());
+				return (cmp != 0) ? cmp : b.getKey().compareTo(a.getKey());
+			}
+		};
+		PriorityQueue<Map.Entry<String, Integer>> heap = new PriorityQueue<Map.Entry<String, Integer>>(
+				Math.max(1, k), order);
+		for (Map.Entry<String, int[]> e : entries) {
+			int count = e.getValue()[column];
+			if (count == 0 || k <= 0 || e.getKey().isEmpty())
+				continue; // stumps and dead trees have no species
+			Map.Entry<String, Integer> entry = new AbstractMap.SimpleImmutableEntry<String, Integer>(e.getKey(), count);
+			if (heap.size() < k)
+				heap.add(entry);
+			else if (order.compare(entry, heap.peek()) > 0) {
+				heap.poll();
+				heap.add(entry);
+			}
+		}
+		ArrayList<Map.Entry<String, Integer>> result = new ArrayList<Map.Entry<String, Integer>>(heap);
+		result.sort(order.reversed());
+		return result;
+	}
+	
+	// add delta to the per-borough and per-zip counts of the tree's species
+	private void tally(Tree t, int delta) {
+		if (speciesByBoro == null)
+			return; // not counted yet, tallies() will count everything
+		String name = t.getSpeciesName().toLowerCase();
+		int i = boroIndex(t.getBoro());
+		if (i >= 0) {
+			int[] counts = speciesByBoro.get(name);
+			if (counts == null) {
+				counts = new int[boro.length];
+				speciesByBoro.put(name, counts);
+			}
+			counts[i] += delta;
+		}
+		HashMap<String, int[]> zipCounts = speciesByZip.get(t.getZip());
+		if (zipCounts == null) {
+			zipCounts = new HashMap<String, int[]>();
+			speciesByZip.put(t.getZip(), zipCounts);
+		}
+		int[] count = zipCounts.get(name);
+		if (count == null) {
+			count = new int[1];
+			zipCounts.put(name, count);
+		}
+		count[0] += delta;
+		if (count[0] == 0) {
+			zipCounts.remove(name);
+			if (zipCounts.isEmpty())
+				speciesByZip.remove(t.getZip());
+		}
+	}
+	
+	/**
+	 * Returns the tree with the given id, in constant time.
+	 * 
+	 * @param int 'id' representing the tree id
+	 * @return the tree, or null if no tree has this id
+	 */
+	public Tree getById(int id) {
+		return idIndex().get(id);
+	}
+	
+	/**
+	 * Returns the trees that add rejected because their id was already used
+	 * by a tree of a different species, in the order they were added.
+	 * 
+	 * @return list of conflicting trees
+	 */
+	public List<Tree> getConflicts() {
+		return new ArrayList<Tree>(conflicts);
+	}
+	
+	// id index, built in one pass for a collection built from an existing tree
+	private synchronized TreeIdIndex idIndex() {
+		if (ids == null) {
+			TreeIdIndex index = new TreeIdIndex(size);
+			for (Tree t : this)
+				index.putIfAbsent(t);
+			ids = index;
+		}
+		return ids;
+	}
+	
+	// per-borough counts, counted in one pass for a collection built from an existing tree
+	private synchronized HashMap<String, int[]> tallies() {
+		if (speciesByBoro == null) {
+			HashMap<String, int[]> byBoro = new HashMap<String, int[]>();
+			speciesByZip = new HashMap<Integer, HashMap<String, int[]>>();
+			speciesByBoro = byBoro;
+			for (Tree t : this)
+				tally(t, 1);
 		}
+		return speciesByBoro;
+	}
 	
 	
 	/**
@@ -201,7 +537,126 @@ public class TreeCollection extends MyBST<Tree> {
 	 * @author Kelly Xie (kyx203)
 	 */
 	public Collection<String> getMatchingSpecies(String speciesName) {
-		matchingSpecies = new ArrayList<String>(); // create new list
+		return matching(speciesName);
+	}
+	
+	/**
+	 * Returns the species whose names are close to a possibly misspelled name,
+	 * for suggestions when getMatchingSpecies finds nothing. A species matches
+	 * if its name, or its name from the start of any word onwards, begins with
+	 * a string that is at most maxDistance edits (inserted, deleted or replaced
+	 * characters) away from speciesName. Method is case insensitive.
+	 * 
+	 * @param string 'speciesName' and the largest number of edits
+	 * @return list of species names, closest first
+	 */
+	public List<String> getSimilarSpecies(String speciesName, int maxDistance) {
+		return fuzzyIndex().search(speciesName, maxDistance);
+	}
+	
+	private synchronized FuzzySpeciesIndex fuzzyIndex() {
+		if (fuzzy == null) {
+			FuzzySpeciesIndex index = new FuzzySpeciesIndex();
+			for (String name : uniqueSpecies)
+				index.add(name);
+			fuzzy = index;
+		}
+		return fuzzy;
+	}
+	
+	/**
+	 * Returns the species whose names start with the given prefix, with the
+	 * most trees first (ties in alphabetical order), for autocompletion.
+	 * The ranked completions of every prefix are kept in a trie that is
+	 * updated on add and remove, so a request costs O(prefix length) and
+	 * no tree is visited. Method is case insensitive.
+	 * 
+	 * @param string 'prefix' and the number of completions (at most 10)
+	 * @return list of (species name, number of trees) entries
+	 */
+	public List<Map.Entry<String, Integer>> completeSpecies(String prefix, int limit) {
+		return completionIndex().complete(prefix, limit);
+	}
+	
+	private synchronized SpeciesAutocomplete completionIndex() {
+		if (completions == null) {
+			SpeciesAutocomplete index = new SpeciesAutocomplete(COMPLETIONS);
+			HashSet<String> counted = new HashSet<String>(); // names are case insensitive
+			for (String name : uniqueSpecies) {
+				if (counted.add(name.toLowerCase()))
+					index.add(name, speciesRange(name).size());
+			}
+			completions = index;
+		}
+		return completions;
+	}
+	
+	/**
+	 * Estimates the heap retained by this collection (see MemoryFootprint):
+	 * the trees and their strings, the nodes of the binary search tree, the
+	 * list of species and the per-borough and per-zip species counts. The
+	 * fuzzy and autocomplete tries are built on first use and not counted.
+	 *
+	 * @return the estimate, by category
+	 */
+	public synchronized MemoryFootprint footprint() {
+		MemoryFootprint footprint = new MemoryFootprint("TreeCollection");
+		footprint.addTrees(this);
+		footprint.add("BST nodes", size * MemoryFootprint.objectSize(3, 4)); // data, left, right, size
+		footprint.add("Arrays", MemoryFootprint.arrayListSize(uniqueSpecies.size())
+				+ MemoryFootprint.arraySize(boro.length, MemoryFootprint.REFERENCE)
+				+ MemoryFootprint.arraySize(boroCount.length, 4));
+		for (String name : uniqueSpecies)
+			footprint.addString(name);
+		if (speciesByBoro != null) {
+			long bytes = MemoryFootprint.hashMapSize(speciesByBoro.size())
+					+ speciesByBoro.size() * MemoryFootprint.arraySize(boro.length, 4);
+			for (String name : speciesByBoro.keySet())
+				footprint.addString(name);
+			bytes += MemoryFootprint.hashMapSize(speciesByZip.size())
+					+ speciesByZip.size() * MemoryFootprint.objectSize(0, 4); // Integer keys
+			for (HashMap<String, int[]> counts : speciesByZip.values()) {
+				bytes += MemoryFootprint.hashMapSize(counts.size()) + counts.size() * MemoryFootprint.arraySize(1, 4);
+				for (String name : counts.keySet())
+					footprint.addString(name);
+			}
+			footprint.add("Index overhead", bytes);
+		}
+		if (ids != null)
+			footprint.add("Index overhead", ids.sizeInBytes());
+		if (tiles != null)
+			footprint.add("Index overhead", tiles.sizeInBytes());
+		return footprint;
+	}
+
+	/**
+	 * Returns the number of trees in every cell of a viewport at a zoom level,
+	 * for heat maps (see TilePyramid: zoom z cuts the city into 2^z by 2^z
+	 * cells, up to zoom 7). The cell counts are kept up to date on add and
+	 * remove, so no tree is visited by a query.
+	 * 
+	 * @param the zoom level, the viewport corners in state plane feet, and the
+	 * species and status to count (case insensitive; null for any)
+	 * @return counts[row][column], southern row and western column first
+	 * @throws IllegalArgumentException if the zoom level or the viewport is invalid
+	 */
+	public int[][] getTileCounts(int zoom, double minX, double minY, double maxX, double maxY,
+			String species, String status) throws IllegalArgumentException {
+		return tilePyramid().getCounts(zoom, minX, minY, maxX, maxY, species, status);
+	}
+	
+	private synchronized TilePyramid tilePyramid() {
+		if (tiles == null) {
+			TilePyramid pyramid = new TilePyramid();
+			for (Tree t : this)
+				pyramid.add(t);
+			tiles = pyramid;
+		}
+		return tiles;
+	}
+	
+	private ArrayList<String> matching(String speciesName) { // helper method
+		ArrayList<String> matchingSpecies = new ArrayList<String>(); // create new list
 		for (int i=0; i<uniqueSpecies.size(); i++) {
 			if ((uniqueSpecies.get(i)).contains(speciesName))
 				matchingSpecies.add(uniqueSpecies.get(i));
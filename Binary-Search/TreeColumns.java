@@ -0,0 +1,157 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class stores the fields of a set of Tree objects column by column,
+ * in primitive arrays indexed by row ordinal (the position of the tree in
+ * the order it was added). The low-cardinality fields (status, health and
+ * borough) are stored as byte codes and the species as an int code into a
+ * dictionary of names, so filters can be evaluated with tight loops over
+ * arrays instead of calling getters and comparing strings on every object.
+ *
+ * The arrays are read directly by TreeFilter and must not be modified.
+ */
+public class TreeColumns {
+
+	// code tables for the low-cardinality fields; the code is the index
+	public static final String[] STATUS = {"", "alive", "dead", "stump"};
+	public static final String[] HEALTH = {"", "good", "fair", "poor"};
+	public static final String[] BORO = {"manhattan", "bronx", "brooklyn", "queens", "staten island"};
+	public static final byte UNKNOWN_BORO = (byte) BORO.length; // code of a borough that is not in BORO
+
+	// columns, one entry per row
+	int size;
+	int[] id;
+	int[] dbh;
+	int[] zip;
+	int[] species; // code into speciesNames
+	byte[] status; // code into STATUS
+	byte[] health; // code into HEALTH
+	byte[] boro; // code into BORO, or UNKNOWN_BORO
+	double[] x;
+	double[] y;
+
+	// species dictionary
+	private ArrayList<String> speciesNames = new ArrayList<String>();
+	private HashMap<String, Integer> speciesCodes = new HashMap<String, Integer>();
+
+	/**
+	 * Constructor that copies the trees into columns.
+	 *
+	 * @param trees to be stored, e.g. a TreeCollection
+	 */
+	public TreeColumns(Iterable<Tree> trees) {
+		int capacity = 1024;
+		id = new int[capacity];
+		dbh = new int[capacity];
+		zip = new int[capacity];
+		species = new int[capacity];
+		status = new byte[capacity];
+		health = new byte[capacity];
+		boro = new byte[capacity];
+		x = new double[capacity];
+		y = new double[capacity];
+		for (Tree t : trees)
+			append(t);
+		trim();
+	}
+
+	// add one tree at the end of every column
+	private void append(Tree t) {
+		if (size == id.length) {
+			int capacity = 2 * size;
+			id = Arrays.copyOf(id, capacity);
+			dbh = Arrays.copyOf(dbh, capacity);
+			zip = Arrays.copyOf(zip, capacity);
+			species = Arrays.copyOf(species, capacity);
+			status = Arrays.copyOf(status, capacity);
+			health = Arrays.copyOf(health, capacity);
+			boro = Arrays.copyOf(boro, capacity);
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+		}
+		id[size] = t.getId();
+		dbh[size] = t.getDiam();
+		zip[size] = t.getZip();
+		species[size] = speciesCode(t.getSpeciesName());
+		status[size] = (byte) Math.max(0, code(STATUS, t.getStatus()));
+		health[size] = (byte) Math.max(0, code(HEALTH, t.getHealth()));
+		int b = code(BORO, t.getBoro());
+		boro[size] = (b < 0) ? UNKNOWN_BORO : (byte) b;
+		x[size] = t.getX();
+		y[size] = t.getY();
+		size++;
+	}
+
+	// shrink the columns to the number of rows
+	private void trim() {
+		id = Arrays.copyOf(id, size);
+		dbh = Arrays.copyOf(dbh, size);
+		zip = Arrays.copyOf(zip, size);
+		species = Arrays.copyOf(species, size);
+		status = Arrays.copyOf(status, size);
+		health = Arrays.copyOf(health, size);
+		boro = Arrays.copyOf(boro, size);
+		x = Arrays.copyOf(x, size);
+		y = Arrays.copyOf(y, size);
+	}
+
+	// dictionary code of a species name, adding it if it is new
+	private int speciesCode(String name) {
+		String key = (name == null) ? "" : name.toLowerCase();
+		Integer code = speciesCodes.get(key);
+		if (code == null) {
+			code = speciesNames.size();
+			speciesNames.add(key);
+			speciesCodes.put(key, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Returns the code of a value in one of the code tables (case insensitive).
+	 * A null value is treated as the empty string.
+	 *
+	 * @param the code table and the value
+	 * @return index of the value in the table, or -1 if it is not in the table
+	 */
+	public static int code(String[] table, String value) {
+		if (value == null)
+			value = "";
+		for (int i=0; i<table.length; i++) {
+			if (table[i].equalsIgnoreCase(value))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of rows.
+	 *
+	 * @return number of trees stored
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of distinct species.
+	 *
+	 * @return size of the species dictionary
+	 */
+	public int getSpeciesCount() {
+		return speciesNames.size();
+	}
+
+	/**
+	 * Returns the species name for a dictionary code.
+	 *
+	 * @param int code between 0 and getSpeciesCount()-1
+	 * @return lower case species name
+	 */
+	public String getSpeciesName(int code) {
+		return speciesNames.get(code);
+	}
+
+}
@@ -0,0 +1,50 @@
+import java.util.Collection;
+
+/**
+ * This interface lists the queries that the program answers about a set of
+ * trees (see NYCStreetTrees.outputData). It is implemented by the in-memory
+ * TreeCollection and by the disk-based OutOfCoreTreeCollection, so the same
+ * output code works with both.
+ */
+public interface TreeCounts {
+
+	/**
+	 * Returns the total number of trees.
+	 *
+	 * @return integer representing the total number of trees
+	 */
+	int getTotalNumberOfTrees();
+
+	/**
+	 * Returns the number of trees whose species name contains speciesName.
+	 *
+	 * @param string 'speciesName' representing the tree species, cannot be null
+	 * @return integer representing the number of trees of all matching species
+	 */
+	int getCountByTreeSpecies(String speciesName);
+
+	/**
+	 * Returns the number of trees located in a borough (case insensitive).
+	 *
+	 * @param string 'boroName' representing the borough's name
+	 * @return integer representing the number of trees in the borough
+	 */
+	int getCountByBorough(String boroName);
+
+	/**
+	 * Returns the number of trees of the matching species located in a borough.
+	 *
+	 * @param string 'speciesName' and string 'boroName'
+	 * @return integer representing the number of trees of the species in the borough
+	 */
+	int getCountByTreeSpeciesBorough(String speciesName, String boroName);
+
+	/**
+	 * Returns the actual species names that contain speciesName, without duplicates.
+	 *
+	 * @param string speciesName representing the tree species
+	 * @return Collection<String> of all matching species names
+	 */
+	Collection<String> getMatchingSpecies(String speciesName);
+
+}
@@ -0,0 +1,591 @@
+import java.util.ArrayList;
+
+/**
+ * This class implements a small filter language over the fields of a Tree,
+ * for example
+ *
+ *   status = alive AND health = poor AND borough = queens AND dbh > 20
+ *   (species ~ maple OR species = "london planetree") AND NOT zip = 10001
+ *
+ * Fields: status, health, species, zip, borough (or boro), dbh, x, y.
+ * Operators: = != < <= > >= and ~ (substring, for the text fields).
+ * Conditions are combined with AND, OR, NOT and parentheses; keywords
+ * and text values are case insensitive, values with spaces are quoted.
+ *
+ * A filter is parsed once into a tree of nodes. It is evaluated over a
+ * TreeColumns store one batch of rows at a time: every node receives the
+ * ascending list of row ordinals that are still candidates (a selection
+ * vector) and returns the ones that pass, using a primitive loop over one
+ * column. AND passes the survivors of one child to the next and stops as
+ * soon as none are left; OR only tests a row against the next child if no
+ * earlier child matched it. A filter keeps its scratch buffers in its
+ * nodes, so one instance must not be evaluated by two threads at once.
+ */
+public class TreeFilter {
+
+	// rows evaluated together
+	private static final int BATCH = 1024;
+
+	// comparison operators
+	private static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5, CONTAINS = 6;
+	private static final String[] OPERATORS = {"=", "!=", "<", "<=", ">", ">=", "~"};
+
+	// private data fields
+	private final String expression;
+	private final Node root;
+
+	// constructor used by parse
+	private TreeFilter(String expression, Node root) {
+		this.expression = expression;
+		this.root = root;
+	}
+
+	/**
+	 * Parses a filter expression.
+	 *
+	 * @param string 'expression' in the filter language described above
+	 * @return the compiled filter
+	 * @throws IllegalArgumentException if the expression is not valid
+	 */
+	public static TreeFilter parse(String expression) throws IllegalArgumentException {
+		Parser parser = new Parser(expression);
+		Node root = parser.parseOr();
+		if (parser.pos < parser.tokens.size())
+			throw new IllegalArgumentException("Unexpected '" + parser.tokens.get(parser.pos) + "' in filter.");
+		return new TreeFilter(expression, root);
+	}
+
+	/**
+	 * Returns the number of rows that pass the filter.
+	 * 
+	 * @param the columns to be filtered
+	 * @return number of matching trees
+	 */
+	public int count(TreeColumns columns) {
+		return count(columns, null);
+	}
+	
+	/**
+	 * Returns the number of rows that pass the filter. If the filter only
+	 * tests status, health and borough, the answer comes from the bitmaps of
+	 * the index (built over the same columns) without scanning any rows.
+	 *
+	 * @param the columns to be filtered and their bitmap index (may be null)
+	 * @return number of matching trees
+	 */
+	public int count(TreeColumns columns, BitmapIndex index) {
+		CompressedBitmap bitmap = (index == null) ? null : root.toBitmap(index);
+		if (bitmap != null)
+			return bitmap.cardinality();
+		int count = 0;
+		int[] sel = new int[BATCH];
+		int[] out = new int[BATCH];
+		for (int start=0; start<columns.size; start+=BATCH) {
+			int n = fill(sel, start, Math.min(BATCH, columns.size - start));
+			count += root.eval(columns, sel, n, out);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of rows that pass the filter in every borough,
+	 * in the order of TreeColumns.BORO. Rows of an unknown borough are
+	 * not counted in any borough.
+	 *
+	 * @param the columns to be filtered
+	 * @return array with one count per borough
+	 */
+	public int[] countByBorough(TreeColumns columns) {
+		return countByBorough(columns, null);
+	}
+	
+	/**
+	 * Returns the number of rows that pass the filter in every borough,
+	 * using the bitmap index when the filter only tests indexed fields.
+	 *
+	 * @param the columns to be filtered and their bitmap index (may be null)
+	 * @return array with one count per borough
+	 */
+	public int[] countByBorough(TreeColumns columns, BitmapIndex index) {
+		int[] counts = new int[TreeColumns.BORO.length];
+		CompressedBitmap bitmap = (index == null) ? null : root.toBitmap(index);
+		if (bitmap != null) {
+			CompressedBitmap[] boro = index.getBitmaps(2);
+			for (int i=0; i<counts.length; i++)
+				counts[i] = bitmap.andCardinality(boro[i]);
+			return counts;
+		}
+		int[] sel = new int[BATCH];
+		int[] out = new int[BATCH];
+		byte[] boro = columns.boro;
+		for (int start=0; start<columns.size; start+=BATCH) {
+			int n = fill(sel, start, Math.min(BATCH, columns.size - start));
+			int k = root.eval(columns, sel, n, out);
+			for (int j=0; j<k; j++) {
+				int b = boro[out[j]];
+				if (b != TreeColumns.UNKNOWN_BORO)
+					counts[b]++;
+			}
+		}
+		return counts;
+	}
+
+	// selection vector holding the rows start .. start+n-1
+	private static int fill(int[] sel, int start, int n) {
+		for (int j=0; j<n; j++)
+			sel[j] = start + j;
+		return n;
+	}
+
+	/**
+	 * Overrides the toString method to display the filter.
+	 *
+	 * @return the expression the filter was parsed from
+	 */
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+
+	// ============== COMPILED NODES ==============
+
+	/*
+	 * Node of the compiled filter. eval reads the n candidate rows in sel
+	 * (ascending) and writes the rows that pass to out (ascending), returning
+	 * their number. out may not be the same array as sel.
+	 */
+	private static abstract class Node {
+		abstract int eval(TreeColumns c, int[] sel, int n, int[] out);
+
+		// the matching rows as a bitmap, or null if the node tests a field that is not indexed
+		CompressedBitmap toBitmap(BitmapIndex index) {
+			return null;
+		}
+	}
+
+	private static class And extends Node {
+		private final Node[] children;
+		private final int[] scratch = new int[BATCH];
+
+		And(Node[] children) {
+			this.children = children;
+		}
+
+		@Override
+		int eval(TreeColumns c, int[] sel, int n, int[] out) {
+			// the children narrow the selection one after another,
+			// alternating between out and scratch
+			int[] in = sel;
+			int[] target = (children.length % 2 == 1) ? out : scratch;
+			for (Node child : children) {
+				n = child.eval(c, in, n, target);
+				if (n == 0)
+					return 0; // short circuit, nothing left to test
+				in = target;
+				target = (target == out) ? scratch : out;
+			}
+			return n;
+		}
+
+		@Override
+		CompressedBitmap toBitmap(BitmapIndex index) {
+			CompressedBitmap result = null;
+			for (Node child : children) {
+				CompressedBitmap b = child.toBitmap(index);
+				if (b == null)
+					return null;
+				result = (result == null) ? b : result.and(b);
+			}
+			return result;
+		}
+	}
+
+	private static class Or extends Node {
+		private final Node[] children;
+		private final int[] rest = new int[BATCH];
+		private final int[] matched = new int[BATCH];
+		private final int[] merged = new int[BATCH];
+
+		Or(Node[] children) {
+			this.children = children;
+		}
+
+		@Override
+		int eval(TreeColumns c, int[] sel, int n, int[] out) {
+			System.arraycopy(sel, 0, rest, 0, n);
+			int restCount = n;
+			int outCount = 0;
+			for (Node child : children) {
+				int m = child.eval(c, rest, restCount, matched);
+				if (m == 0)
+					continue;
+				// add the matches to the result and drop them from the candidates
+				outCount = union(out, outCount, matched, m, merged);
+				System.arraycopy(merged, 0, out, 0, outCount);
+				restCount = difference(rest, restCount, matched, m, rest);
+				if (restCount == 0)
+					break; // short circuit, every row already matched
+			}
+			return outCount;
+		}
+
+		@Override
+		CompressedBitmap toBitmap(BitmapIndex index) {
+			CompressedBitmap result = null;
+			for (Node child : children) {
+				CompressedBitmap b = child.toBitmap(index);
+				if (b == null)
+					return null;
+				result = (result == null) ? b : result.or(b);
+			}
+			return result;
+		}
+	}
+
+	private static class Not extends Node {
+		private final Node child;
+		private final int[] matched = new int[BATCH];
+
+		Not(Node child) {
+			this.child = child;
+		}
+
+		@Override
+		int eval(TreeColumns c, int[] sel, int n, int[] out) {
+			int m = child.eval(c, sel, n, matched);
+			return difference(sel, n, matched, m, out);
+		}
+
+		@Override
+		CompressedBitmap toBitmap(BitmapIndex index) {
+			CompressedBitmap b = child.toBitmap(index);
+			return (b == null) ? null : index.getAll().andNot(b);
+		}
+	}
+
+	// merge two ascending lists into target
+	private static int union(int[] a, int na, int[] b, int nb, int[] target) {
+		int i = 0, j = 0, k = 0;
+		while (i < na && j < nb) {
+			if (a[i] < b[j])
+				target[k++] = a[i++];
+			else if (a[i] > b[j])
+				target[k++] = b[j++];
+			else {
+				target[k++] = a[i++];
+				j++;
+			}
+		}
+		while (i < na)
+			target[k++] = a[i++];
+		while (j < nb)
+			target[k++] = b[j++];
+		return k;
+	}
+
+	// rows of a that are not in b (b is a subset of a); target may be a
+	private static int difference(int[] a, int na, int[] b, int nb, int[] target) {
+		int j = 0, k = 0;
+		for (int i=0; i<na; i++) {
+			if (j < nb && a[i] == b[j])
+				j++;
+			else
+				target[k++] = a[i];
+		}
+		return k;
+	}
+
+	// comparison of an int column (dbh, zip) with a constant
+	private static class IntCompare extends Node {
+		private final boolean zipColumn;
+		private final int op;
+		private final int value;
+
+		IntCompare(boolean zipColumn, int op, int value) {
+			this.zipColumn = zipColumn;
+			this.op = op;
+			this.value = value;
+		}
+
+		@Override
+		int eval(TreeColumns c, int[] sel, int n, int[] out) {
+			int[] col = zipColumn ? c.zip : c.dbh;
+			int v = value;
+			int k = 0;
+			switch (op) { // one loop per operator keeps the loop body minimal
+			case EQ: for (int j=0; j<n; j++) { int r = sel[j]; if (col[r] == v) out[k++] = r; } break;
+			case NE: for (int j=0; j<n; j++) { int r = sel[j]; if (col[r] != v) out[k++] = r; } break;
+			case LT: for (int j=0; j<n; j++) { int r = sel[j]; if (col[r] < v) out[k++] = r; } break;
+			case LE: for (int j=0; j<n; j++) { int r = sel[j]; if (col[r] <= v) out[k++] = r; } break;
+			case GT: for (int j=0; j<n; j++) { int r = sel[j]; if (col[r] > v) out[k++] = r; } break;
+			default: for (int j=0; j<n; j++) { int r = sel[j]; if (col[r] >= v) out[k++] = r; } break;
+			}
+			return k;
+		}
+	}
+
+	// comparison of a coordinate column with a constant
+	private static class DoubleCompare extends Node {
+		private final boolean yColumn;
+		private final int op;
+		private final double value;
+
+		DoubleCompare(boolean yColumn, int op, double value) {
+			this.yColumn = yColumn;
+			this.op = op;
+			this.value = value;
+		}
+
+		@Override
+		int eval(TreeColumns c, int[] sel, int n, int[] out) {
+			double[] col = yColumn ? c.y : c.x;
+			double v = value;
+			int k = 0;
+			switch (op) {
+			case EQ: for (int j=0; j<n; j++) { int r = sel[j]; if (col[r] == v) out[k++] = r; } break;
+			case NE: for (int j=0; j<n; j++) { int r = sel[j]; if (col[r] != v) out[k++] = r; } break;
+			case LT: for (int j=0; j<n; j++) { int r = sel[j]; if (col[r] < v) out[k++] = r; } break;
+			case LE: for (int j=0; j<n; j++) { int r = sel[j]; if (col[r] <= v) out[k++] = r; } break;
+			case GT: for (int j=0; j<n; j++) { int r = sel[j]; if (col[r] > v) out[k++] = r; } break;
+			default: for (int j=0; j<n; j++) { int r = sel[j]; if (col[r] >= v) out[k++] = r; } break;
+			}
+			return k;
+		}
+	}
+
+	// test of a byte coded column (status, health, borough) against the set of accepted codes
+	private static class CodeIn extends Node {
+		private final int column; // 0 status, 1 health, 2 borough
+		private final boolean[] accept;
+
+		CodeIn(int column, boolean[] accept) {
+			this.column = column;
+			this.accept = accept;
+		}
+
+		@Override
+		int eval(TreeColumns c, int[] sel, int n, int[] out) {
+			byte[] col = (column == 0) ? c.status : (column == 1) ? c.health : c.boro;
+			boolean[] a = accept;
+			int k = 0;
+			for (int j=0; j<n; j++) {
+				int r = sel[j];
+				if (a[col[r]])
+					out[k++] = r;
+			}
+			return k;
+		}
+
+		@Override
+		CompressedBitmap toBitmap(BitmapIndex index) {
+			CompressedBitmap[] bitmaps = index.getBitmaps(column);
+			CompressedBitmap result = new CompressedBitmap();
+			for (int i=0; i<accept.length; i++) {
+				if (accept[i])
+					result = result.or(bitmaps[i]);
+			}
+			return result;
+		}
+	}
+
+	// test of the species column; the accepted codes depend on the dictionary
+	// of the columns, so they are resolved once per TreeColumns and cached
+	private static class SpeciesIn extends Node {
+		private final int op; // EQ, NE or CONTAINS
+		private final String value;
+		private TreeColumns resolvedFor;
+		private boolean[] accept;
+
+		SpeciesIn(int op, String value) {
+			this.op = op;
+			this.value = value.toLowerCase();
+		}
+
+		@Override
+		int eval(TreeColumns c, int[] sel, int n, int[] out) {
+			if (resolvedFor != c) {
+				accept = new boolean[c.getSpeciesCount()];
+				for (int i=0; i<accept.length; i++) {
+					String name = c.getSpeciesName(i);
+					boolean match = (op == CONTAINS) ? name.contains(value) : name.equals(value);
+					accept[i] = (op == NE) ? !match : match;
+				}
+				resolvedFor = c;
+			}
+			int[] col = c.species;
+			boolean[] a = accept;
+			int k = 0;
+			for (int j=0; j<n; j++) {
+				int r = sel[j];
+				if (a[col[r]])
+					out[k++] = r;
+			}
+			return k;
+		}
+	}
+
+
+	// ============== PARSER ==============
+
+	/*
+	 * Recursive descent parser:
+	 *   or      := and ( OR and )*
+	 *   and     := unary ( AND unary )*
+	 *   unary   := NOT unary | '(' or ')' | field operator value
+	 */
+	private static class Parser {
+		private final ArrayList<String> tokens = new ArrayList<String>();
+		private int pos;
+
+		Parser(String text) {
+			int i = 0;
+			while (i < text.length()) {
+				char ch = text.charAt(i);
+				if (Character.isWhitespace(ch))
+					i++;
+				else if (ch == '"') { // quoted value, kept with its quotes
+					int end = text.indexOf('"', i + 1);
+					if (end < 0)
+						throw new IllegalArgumentException("Missing closing quote in filter.");
+					tokens.add(text.substring(i, end + 1));
+					i = end + 1;
+				}
+				else if (ch == '(' || ch == ')' || ch == '~') {
+					tokens.add(String.valueOf(ch));
+					i++;
+				}
+				else if (ch == '=' || ch == '!' || ch == '<' || ch == '>') {
+					boolean twoChars = i + 1 < text.length() && text.charAt(i + 1) == '=';
+					tokens.add(text.substring(i, twoChars ? i + 2 : i + 1));
+					i += twoChars ? 2 : 1;
+				}
+				else {
+					int start = i;
+					while (i < text.length() && "()~=!<>\"".indexOf(text.charAt(i)) < 0
+							&& !Character.isWhitespace(text.charAt(i)))
+						i++;
+					tokens.add(text.substring(start, i));
+				}
+			}
+		}
+
+		private String peek() {
+			return (pos < tokens.size()) ? tokens.get(pos) : null;
+		}
+
+		private String next() {
+			if (pos >= tokens.size())
+				throw new IllegalArgumentException("Unexpected end of filter.");
+			return tokens.get(pos++);
+		}
+
+		Node parseOr() {
+			ArrayList<Node> children = new ArrayList<Node>();
+			children.add(parseAnd());
+			while ("or".equalsIgnoreCase(peek())) {
+				pos++;
+				children.add(parseAnd());
+			}
+			return (children.size() == 1) ? children.get(0) : new Or(children.toArray(new Node[0]));
+		}
+
+		Node parseAnd() {
+			ArrayList<Node> children = new ArrayList<Node>();
+			children.add(parseUnary());
+			while ("and".equalsIgnoreCase(peek())) {
+				pos++;
+				children.add(parseUnary());
+			}
+			return (children.size() == 1) ? children.get(0) : new And(children.toArray(new Node[0]));
+		}
+
+		Node parseUnary() {
+			String token = next();
+			if (token.equalsIgnoreCase("not"))
+				return new Not(parseUnary());
+			if (token.equals("(")) {
+				Node inner = parseOr();
+				if (!")".equals(next()))
+					throw new IllegalArgumentException("Missing ')' in filter.");
+				return inner;
+			}
+			return parseComparison(token.toLowerCase());
+		}
+
+		Node parseComparison(String field) {
+			String opToken = next();
+			int op = -1;
+			for (int i=0; i<OPERATORS.length; i++) {
+				if (OPERATORS[i].equals(opToken))
+					op = i;
+			}
+			if (op < 0)
+				throw new IllegalArgumentException("Expected an operator after '" + field + "'.");
+			String value = next();
+			if (value.startsWith("\""))
+				value = value.substring(1, value.length() - 1);
+
+			switch (field) {
+			case "dbh":
+			case "zip":
+				if (op == CONTAINS)
+					throw new IllegalArgumentException("Operator '~' needs a text field.");
+				return new IntCompare(field.equals("zip"), op, parseInt(value));
+			case "x":
+			case "y":
+				if (op == CONTAINS)
+					throw new IllegalArgumentException("Operator '~' needs a text field.");
+				return new DoubleCompare(field.equals("y"), op, parseDouble(value));
+			case "species":
+				if (op != EQ && op != NE && op != CONTAINS)
+					throw new IllegalArgumentException("Species can only be compared with =, != or ~.");
+				return new SpeciesIn(op, value);
+			case "status":
+				return codeIn(0, TreeColumns.STATUS, op, value);
+			case "health":
+				return codeIn(1, TreeColumns.HEALTH, op, value);
+			case "borough":
+			case "boro":
+				return codeIn(2, TreeColumns.BORO, op, value);
+			default:
+				throw new IllegalArgumentException("Unknown field '" + field + "'.");
+			}
+		}
+
+		// the accepted codes are known at parse time for the fixed code tables
+		private Node codeIn(int column, String[] table, int op, String value) {
+			if (op != EQ && op != NE && op != CONTAINS)
+				throw new IllegalArgumentException("Text fields can only be compared with =, != or ~.");
+			// the borough column has one more code, for boroughs that are not in the table
+			boolean[] accept = new boolean[(column == 2) ? table.length + 1 : table.length];
+			for (int i=0; i<table.length; i++) {
+				boolean match = (op == CONTAINS) ? table[i].contains(value.toLowerCase())
+						: table[i].equalsIgnoreCase(value);
+				accept[i] = (op == NE) ? !match : match;
+			}
+			if (column == 2)
+				accept[TreeColumns.UNKNOWN_BORO] = (op == NE);
+			return new CodeIn(column, accept);
+		}
+
+		private int parseInt(String value) {
+			try {
+				return Integer.parseInt(value);
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException("'" + value + "' is not a whole number.");
+			}
+		}
+
+		private double parseDouble(String value) {
+			try {
+				return Double.parseDouble(value);
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException("'" + value + "' is not a number.");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.function.Predicate;
+
+/**
+ * This program compares TreeFilter with hand-written loops over the Tree
+ * objects, the way the linear search version of the program answers its
+ * queries: for every expression it times the count from the columns, the
+ * count from the bitmap index (for filters on status, health and borough
+ * only) and the loop calling the getters, and checks that all of them find
+ * the same number of trees. The sample file can be scaled up to the size
+ * of the full census by repeating its rows with new tree ids.
+ *
+ * Usage: java TreeFilterBenchmark [data file] [copies of every row]
+ * (by default data/NYCstreettreesdataset-partial.csv, copied 80 times:
+ * about 700,000 trees, as many as the 2015 census)
+ */
+public class TreeFilterBenchmark {
+
+	private static final int ROUNDS = 10; // timed rounds, after as many warm-up rounds
+	private static final int ID_STEP = 10000000; // id offset of every copy of the rows
+
+	public static void main(String[] args) throws Exception {
+		File file = new File(args.length > 0 ? args[0] : "data/NYCstreettreesdataset-partial.csv");
+		int copies = (args.length > 1) ? Integer.parseInt(args[1]) : 80;
+
+		ArrayList<Tree> trees = new ArrayList<Tree>();
+		for (int c=0; c<copies; c++) {
+			Scanner info = new Scanner(file);
+			while (info.hasNextLine()) {
+				Tree t = NYCStreetTrees.parseLine(info.nextLine());
+				if (t != null)
+					trees.add(new Tree(t.getId() + c * ID_STEP, t.getDiam(), t.getStatus(), t.getHealth(),
+							t.getSpeciesName(), t.getZip(), t.getBoro(), t.getX(), t.getY()));
+			}
+			info.close();
+		}
+		TreeColumns columns = new TreeColumns(trees);
+		BitmapIndex bitmaps = new BitmapIndex(columns);
+		System.out.printf("%,d trees\n", trees.size());
+
+		boolean same = true;
+		same &= compare(trees, columns, bitmaps, "status = alive AND health = poor AND borough = queens AND dbh > 20",
+				t -> t.getStatus().equalsIgnoreCase("alive") && t.getHealth().equalsIgnoreCase("poor")
+						&& t.getBoro().equalsIgnoreCase("queens") && t.getDiam() > 20);
+		same &= compare(trees, columns, bitmaps,
+				"(species ~ maple OR species = \"london planetree\") AND NOT boro = \"staten island\"",
+				t -> (t.getSpeciesName().toLowerCase().contains("maple")
+						|| t.getSpeciesName().equalsIgnoreCase("london planetree"))
+						&& !t.getBoro().equalsIgnoreCase("staten island"));
+		same &= compare(trees, columns, bitmaps, "status = alive AND (health = fair OR health = poor)",
+				t -> t.getStatus().equalsIgnoreCase("alive")
+						&& (t.getHealth().equalsIgnoreCase("fair") || t.getHealth().equalsIgnoreCase("poor")));
+		same &= compare(trees, columns, bitmaps, "x > 1000000 AND x < 1010000 AND y > 200000 AND y < 210000",
+				t -> t.getX() > 1000000 && t.getX() < 1010000 && t.getY() > 200000 && t.getY() < 210000);
+		System.exit(same ? 0 : 1);
+	}
+
+	// times the three ways of counting one filter, in microseconds (best round)
+	private static boolean compare(ArrayList<Tree> trees, TreeColumns columns, BitmapIndex bitmaps,
+			String expression, Predicate<Tree> loop) {
+		TreeFilter filter = TreeFilter.parse(expression);
+		long scan = Long.MAX_VALUE, index = Long.MAX_VALUE, objects = Long.MAX_VALUE;
+		int scanned = 0, indexed = 0, looped = 0;
+		for (int round=0; round<2*ROUNDS; round++) {
+			long t0 = System.nanoTime();
+			scanned = filter.count(columns);
+			long t1 = System.nanoTime();
+			indexed = filter.count(columns, bitmaps);
+			long t2 = System.nanoTime();
+			looped = 0;
+			for (int i=0; i<trees.size(); i++) {
+				if (loop.test(trees.get(i)))
+					looped++;
+			}
+			long t3 = System.nanoTime();
+			if (round >= ROUNDS) {
+				scan = Math.min(scan, t1 - t0);
+				index = Math.min(index, t2 - t1);
+				objects = Math.min(objects, t3 - t2);
+			}
+		}
+		boolean same = scanned == looped && indexed == looped;
+		System.out.println("\n" + filter + ":");
+		System.out.printf("   %,d trees%s\n", looped, same ? "" : String.format(
+				" by the loop, but %,d by the columns and %,d with the index", scanned, indexed));
+		System.out.printf("   %-24s%,10d us\n", "loop over Tree objects", objects / 1000);
+		System.out.printf("   %-24s%,10d us\n", "TreeFilter on columns", scan / 1000);
+		System.out.printf("   %-24s%,10d us\n", "TreeFilter with bitmaps", index / 1000);
+		return same;
+	}
+
+}
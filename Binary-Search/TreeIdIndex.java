@@ -0,0 +1,140 @@
+/**
+ * This class maps tree ids to trees with an open-addressing hash table:
+ * the ids are kept in a plain int array (no Integer objects) and the trees
+ * in a parallel array, so a lookup hashes the id and reads a few adjacent
+ * slots (linear probing) instead of descending a tree. The table is kept
+ * at most half full and doubles when it grows past that.
+ *
+ * An empty slot is one without a tree, so every int is a valid id.
+ */
+public class TreeIdIndex {
+
+	// private data fields
+	private int[] ids;
+	private Tree[] trees;
+	private int size;
+
+	// default constructor that creates an empty index
+	public TreeIdIndex() {
+		this(16);
+	}
+
+	/**
+	 * Constructor for an index that holds the expected number of trees
+	 * without growing.
+	 *
+	 * @param the expected number of trees
+	 * @throws IllegalArgumentException if expected is negative
+	 */
+	public TreeIdIndex(int expected) throws IllegalArgumentException {
+		if (expected < 0)
+			throw new IllegalArgumentException("The expected number of trees cannot be negative.");
+		int capacity = 16;
+		while (capacity < 2L * expected)
+			capacity *= 2;
+		ids = new int[capacity];
+		trees = new Tree[capacity];
+	}
+
+	// slot where the id is stored, or the empty slot where it would be stored
+	private int slot(int id) {
+		int mask = ids.length - 1;
+		int i = mix(id) & mask;
+		while (trees[i] != null && ids[i] != id)
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	// spread consecutive ids over the whole table
+	private static int mix(int id) {
+		int h = id * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns the tree with the given id.
+	 *
+	 * @param the tree id
+	 * @return the tree, or null if there is none
+	 */
+	public Tree get(int id) {
+		return trees[slot(id)];
+	}
+
+	/**
+	 * Adds a tree unless a tree with the same id is already stored.
+	 *
+	 * @param the tree, cannot be null
+	 * @return null if the tree was added; otherwise the tree already stored
+	 * under its id, which is left in place
+	 */
+	public Tree putIfAbsent(Tree t) {
+		int i = slot(t.getId());
+		if (trees[i] != null)
+			return trees[i];
+		ids[i] = t.getId();
+		trees[i] = t;
+		if (++size * 2 > ids.length)
+			resize(ids.length * 2);
+		return null;
+	}
+
+	/**
+	 * Removes the tree with the given id.
+	 *
+	 * @param the tree id
+	 * @return the tree removed, or null if there was none
+	 */
+	public Tree remove(int id) {
+		int mask = ids.length - 1;
+		int i = slot(id);
+		Tree removed = trees[i];
+		if (removed == null)
+			return null;
+		// shift back the following trees of the run that would no longer be reachable
+		for (int j=(i + 1) & mask; trees[j] != null; j=(j + 1) & mask) {
+			int home = mix(ids[j]) & mask;
+			if (((j - home) & mask) >= ((j - i) & mask)) {
+				ids[i] = ids[j];
+				trees[i] = trees[j];
+				i = j;
+			}
+		}
+		trees[i] = null;
+		size--;
+		return removed;
+	}
+
+	private void resize(int capacity) {
+		int[] oldIds = ids;
+		Tree[] oldTrees = trees;
+		ids = new int[capacity];
+		trees = new Tree[capacity];
+		for (int i=0; i<oldIds.length; i++) {
+			if (oldTrees[i] != null) {
+				int j = slot(oldIds[i]);
+				ids[j] = oldIds[i];
+				trees[j] = oldTrees[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of trees in the index.
+	 *
+	 * @return number of trees
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the heap used by the two arrays of the table.
+	 *
+	 * @return number of bytes
+	 */
+	public long sizeInBytes() {
+		return MemoryFootprint.arraySize(ids.length, 4) + MemoryFootprint.arraySize(trees.length, MemoryFootprint.REFERENCE);
+	}
+
+}
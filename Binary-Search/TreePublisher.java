@@ -0,0 +1,172 @@
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * This class publishes the trees of an iterator to Flow subscribers, reading
+ * the next tree only when a subscriber has requested it. Nothing is buffered,
+ * so the memory used does not depend on the number of trees published, and a
+ * slow subscriber simply slows down the walk over the data.
+ *
+ * Every subscriber gets its own iterator from the source. Its signals are
+ * sent from tasks of the executor, one task at a time: a task sends at most
+ * batchSize trees and then hands the thread back to the executor, so a
+ * subscriber that requests everything does not hold a thread for the whole
+ * walk. A subscriber that blocks in onNext blocks an executor thread, so
+ * slow subscribers should be given their own executor.
+ */
+public class TreePublisher implements Flow.Publisher<Tree> {
+
+	public static final int DEFAULT_BATCH = 256; // trees sent by one task
+
+	// private data fields
+	private final Supplier<Iterator<Tree>> source;
+	private final Executor executor;
+	private final int batchSize;
+
+	// constructor for a publisher on the common fork-join pool with the default batch size
+	public TreePublisher(Supplier<Iterator<Tree>> source) {
+		this(source, ForkJoinPool.commonPool(), DEFAULT_BATCH);
+	}
+
+	/**
+	 * Constructor for a publisher.
+	 *
+	 * @param the source of an iterator per subscriber (called on the executor),
+	 * the executor that sends the signals, and the largest number of trees sent
+	 * by one task
+	 * @throws IllegalArgumentException if batchSize is not positive
+	 */
+	public TreePublisher(Supplier<Iterator<Tree>> source, Executor executor, int batchSize)
+			throws IllegalArgumentException {
+		if (source == null || executor == null)
+			throw new NullPointerException();
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("The batch size must be positive.");
+		this.source = source;
+		this.executor = executor;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Subscribes a subscriber, which then receives onSubscribe from the executor.
+	 *
+	 * @param the subscriber, cannot be null
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super Tree> subscriber) {
+		if (subscriber == null)
+			throw new NullPointerException();
+		new Emission(subscriber).schedule();
+	}
+
+	/*
+	 * Subscription of one subscriber. Demand is added by request() from any
+	 * thread; the trees are sent by run(), of which the counter of pending
+	 * work ensures that only one task runs at a time.
+	 */
+	private final class Emission implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super Tree> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger pending = new AtomicInteger(); // calls of schedule() not yet served
+		private volatile boolean cancelled;
+		private volatile IllegalArgumentException badRequest;
+		// only used by the running task
+		private boolean subscribed;
+		private boolean done;
+		private Iterator<Tree> trees;
+
+		Emission(Flow.Subscriber<? super Tree> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0)
+				badRequest = new IllegalArgumentException("The number of trees requested must be positive.");
+			else
+				demand.getAndUpdate(d -> (d + n < 0) ? Long.MAX_VALUE : d + n); // at most unbounded
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			schedule(); // lets the running task drop the iterator
+		}
+
+		void schedule() {
+			if (pending.getAndIncrement() == 0)
+				executor.execute(this);
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			while (true) {
+				if (send() == batchSize && !done && !cancelled && demand.get() > 0) {
+					executor.execute(this); // batch sent, continue in a new task
+					return;
+				}
+				missed = pending.addAndGet(-missed);
+				if (missed == 0)
+					return;
+			}
+		}
+
+		// send up to batchSize signals and return the number of trees sent
+		private int send() {
+			int sent = 0;
+			try {
+				if (!subscribed) {
+					subscribed = true;
+					subscriber.onSubscribe(this);
+				}
+				while (!done && sent < batchSize) {
+					if (cancelled) {
+						finish();
+						break;
+					}
+					if (badRequest != null) {
+						finish();
+						subscriber.onError(badRequest);
+						break;
+					}
+					if (trees == null)
+						trees = source.get();
+					if (!trees.hasNext()) {
+						finish();
+						subscriber.onComplete();
+						break;
+					}
+					if (demand.get() == 0)
+						break;
+					Tree t = trees.next();
+					if (demand.get() != Long.MAX_VALUE)
+						demand.decrementAndGet();
+					sent++;
+					subscriber.onNext(t);
+				}
+			}
+			catch (RuntimeException e) { // from the source, or a subscriber that broke the rules
+				if (!done) {
+					finish();
+					subscriber.onError(e);
+				}
+			}
+			return sent;
+		}
+
+		private void finish() {
+			done = true;
+			cancelled = true;
+			trees = null;
+		}
+	}
+
+}
@@ -0,0 +1,265 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This program checks TreePublisher and TreeCollection.publishBySpecies:
+ * every matching tree is published once, a subscriber never receives more
+ * trees than it requested, cancel stops the trees, request(0) ends with
+ * onError, and the heap stays flat while a slow subscriber reads a million
+ * trees. It prints one line per check and exits with status 1 if a check
+ * failed.
+ *
+ * Usage: java TreePublisherCheck [data file]
+ * (by default data/NYCstreettreesdataset-partial.csv)
+ */
+public class TreePublisherCheck {
+
+	private static final long WAIT = 10; // seconds to wait for a subscriber
+	private static final int GENERATED = 1000000; // trees published to the slow subscriber
+	private static final long HEAP_SLACK = 1 << 20; // heap growth allowed while they are published, in bytes
+
+	private static int failures;
+
+	public static void main(String[] args) throws Exception {
+		File file = new File(args.length > 0 ? args[0] : "data/NYCstreettreesdataset-partial.csv");
+		TreeCollection treeCollect = new TreeCollection();
+		NYCStreetTrees.readFile(treeCollect, file);
+
+		checkAllPublished(treeCollect, "london planetree");
+		checkAllPublished(treeCollect, "oak");
+		checkAllPublished(treeCollect, "zzz");
+		checkBoundedDemand(treeCollect, "london planetree");
+		checkCancel(treeCollect, "london planetree");
+		checkBadRequest(treeCollect, "london planetree");
+		checkFlatHeap();
+
+		System.out.println((failures == 0) ? "All checks passed." : failures + " check(s) failed.");
+		System.exit((failures == 0) ? 0 : 1);
+	}
+
+	private static void check(boolean passed, String description) {
+		System.out.println((passed ? "ok     " : "FAILED ") + description);
+		if (!passed)
+			failures++;
+	}
+
+	// every tree of the species is published once, with unbounded demand
+	private static void checkAllPublished(TreeCollection treeCollect, String species) throws InterruptedException {
+		List<Tree> received = new ArrayList<Tree>();
+		CountDownLatch done = new CountDownLatch(1);
+		AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		treeCollect.publishBySpecies(species).subscribe(new Flow.Subscriber<Tree>() {
+			public void onSubscribe(Flow.Subscription s) {
+				s.request(Long.MAX_VALUE);
+			}
+			public void onNext(Tree t) {
+				received.add(t);
+			}
+			public void onError(Throwable e) {
+				error.set(e);
+				done.countDown();
+			}
+			public void onComplete() {
+				done.countDown();
+			}
+		});
+		boolean completed = done.await(WAIT, TimeUnit.SECONDS) && error.get() == null;
+		HashSet<Integer> ids = new HashSet<Integer>();
+		for (Tree t : received)
+			ids.add(t.getId());
+		int expected = treeCollect.getCountByTreeSpecies(species);
+		check(completed && received.size() == expected && ids.size() == expected,
+				String.format("'%s': %,d trees published once each (%,d expected)", species, ids.size(), expected));
+	}
+
+	// a subscriber that requests 8 trees at a time never has more than 8 outstanding,
+	// and one that stops requesting receives nothing more
+	private static void checkBoundedDemand(TreeCollection treeCollect, String species) throws InterruptedException {
+		AtomicLong requested = new AtomicLong();
+		AtomicLong received = new AtomicLong();
+		AtomicLong overDemand = new AtomicLong();
+		CountDownLatch done = new CountDownLatch(1);
+		treeCollect.publishBySpecies(species).subscribe(new Flow.Subscriber<Tree>() {
+			private Flow.Subscription s;
+			private int sinceRequest;
+			public void onSubscribe(Flow.Subscription s) {
+				this.s = s;
+				requested.addAndGet(8);
+				s.request(8);
+			}
+			public void onNext(Tree t) {
+				overDemand.accumulateAndGet(received.incrementAndGet() - requested.get(), Math::max);
+				if (++sinceRequest == 8) {
+					sinceRequest = 0;
+					requested.addAndGet(8);
+					s.request(8);
+				}
+			}
+			public void onError(Throwable e) {
+				done.countDown();
+			}
+			public void onComplete() {
+				done.countDown();
+			}
+		});
+		boolean completed = done.await(WAIT, TimeUnit.SECONDS);
+		check(completed && overDemand.get() <= 0 && received.get() == treeCollect.getCountByTreeSpecies(species),
+				String.format("requests of 8: %,d trees received, never more than requested", received.get()));
+
+		AtomicInteger stopped = new AtomicInteger();
+		AtomicInteger ended = new AtomicInteger();
+		treeCollect.publishBySpecies(species).subscribe(new Flow.Subscriber<Tree>() {
+			public void onSubscribe(Flow.Subscription s) {
+				s.request(5);
+			}
+			public void onNext(Tree t) {
+				stopped.incrementAndGet();
+			}
+			public void onError(Throwable e) {
+				ended.incrementAndGet();
+			}
+			public void onComplete() {
+				ended.incrementAndGet();
+			}
+		});
+		Thread.sleep(500);
+		check(stopped.get() == 5 && ended.get() == 0,
+				String.format("request(5) and no more: %d trees received, subscription still open", stopped.get()));
+	}
+
+	// no tree and no end signal after cancel
+	private static void checkCancel(TreeCollection treeCollect, String species) throws InterruptedException {
+		AtomicInteger received = new AtomicInteger();
+		AtomicInteger ended = new AtomicInteger();
+		CountDownLatch cancelled = new CountDownLatch(1);
+		treeCollect.publishBySpecies(species).subscribe(new Flow.Subscriber<Tree>() {
+			private Flow.Subscription s;
+			public void onSubscribe(Flow.Subscription s) {
+				this.s = s;
+				s.request(100);
+			}
+			public void onNext(Tree t) {
+				if (received.incrementAndGet() == 10) {
+					s.cancel();
+					cancelled.countDown();
+				}
+			}
+			public void onError(Throwable e) {
+				ended.incrementAndGet();
+			}
+			public void onComplete() {
+				ended.incrementAndGet();
+			}
+		});
+		boolean wasCancelled = cancelled.await(WAIT, TimeUnit.SECONDS);
+		Thread.sleep(500);
+		check(wasCancelled && received.get() == 10 && ended.get() == 0,
+				String.format("cancel after 10 trees: %d trees received, no end signal", received.get()));
+	}
+
+	// request(0) breaks rule 3.9 of the Reactive Streams specification
+	private static void checkBadRequest(TreeCollection treeCollect, String species) throws InterruptedException {
+		AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		AtomicInteger received = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(1);
+		treeCollect.publishBySpecies(species).subscribe(new Flow.Subscriber<Tree>() {
+			public void onSubscribe(Flow.Subscription s) {
+				s.request(0);
+			}
+			public void onNext(Tree t) {
+				received.incrementAndGet();
+			}
+			public void onError(Throwable e) {
+				error.set(e);
+				done.countDown();
+			}
+			public void onComplete() {
+				done.countDown();
+			}
+		});
+		boolean ended = done.await(WAIT, TimeUnit.SECONDS);
+		check(ended && received.get() == 0 && error.get() instanceof IllegalArgumentException,
+				"request(0): onError with " + error.get());
+	}
+
+	// a slow subscriber that requests one tree at a time reads a million generated
+	// trees, and the heap measured along the way does not grow with them
+	private static void checkFlatHeap() throws InterruptedException {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		TreePublisher publisher = new TreePublisher(() -> generate(GENERATED), executor, TreePublisher.DEFAULT_BATCH);
+		long[] heap = new long[10];
+		AtomicInteger received = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(1);
+		heap[0] = usedHeap();
+		publisher.subscribe(new Flow.Subscriber<Tree>() {
+			private Flow.Subscription s;
+			public void onSubscribe(Flow.Subscription s) {
+				this.s = s;
+				s.request(1);
+			}
+			public void onNext(Tree t) {
+				int n = received.incrementAndGet();
+				if (n % (GENERATED / 10) == 0 && n < GENERATED)
+					heap[n / (GENERATED / 10)] = usedHeap();
+				if (n % 10000 == 0) {
+					try {
+						Thread.sleep(1); // slow consumer
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				s.request(1);
+			}
+			public void onError(Throwable e) {
+				done.countDown();
+			}
+			public void onComplete() {
+				done.countDown();
+			}
+		});
+		boolean completed = done.await(10 * WAIT, TimeUnit.SECONDS);
+		executor.shutdown();
+		long growth = 0;
+		for (int i=1; i<heap.length; i++)
+			growth = Math.max(growth, heap[i] - heap[0]);
+		check(completed && received.get() == GENERATED && growth < HEAP_SLACK,
+				String.format("slow subscriber: %,d trees, heap grew at most %,d bytes", received.get(), growth));
+	}
+
+	// trees made one by one, so only the publisher or the subscriber can keep them
+	private static Iterator<Tree> generate(int count) {
+		return new Iterator<Tree>() {
+			private int next = 1;
+			public boolean hasNext() {
+				return next <= count;
+			}
+			public Tree next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return new Tree(next++, 10, "alive", "good", "london planetree", 10001, "Manhattan", 0, 0);
+			}
+		};
+	}
+
+	// heap in use after garbage collection
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i=0; i<3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
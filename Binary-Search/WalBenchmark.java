@@ -0,0 +1,193 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * This program measures DurableTreeCollection as the -wal mode of
+ * NYCStreetTrees uses it, in a temporary directory that is deleted at the
+ * end: the import of the data file, an import cut short by a crash and
+ * finished at the next start, the recovery time from the checkpoint alone
+ * and with a log tail to replay, and the adds per second with every commit
+ * forced to the disk, from 1 to 64 threads, and without forcing. The
+ * collections recovered must hold the same trees as a TreeCollection read
+ * from the file; the program prints one line per check and exits with
+ * status 1 if a check failed.
+ *
+ * Usage: java WalBenchmark [data file]
+ * (by default data/NYCstreettreesdataset-partial.csv)
+ */
+public class WalBenchmark {
+
+	private static final int BATCH = 4096; // trees committed at once, as by NYCStreetTrees.readFile
+	private static final int TAIL = 8000; // log records replayed by the second recovery
+	private static final int ADDS = 8000; // adds timed per number of threads
+	private static final int FIRST_ID = 1000000000; // ids of the added trees, above those of the census
+
+	private static int failures;
+
+	public static void main(String[] args) throws Exception {
+		File file = new File(args.length > 0 ? args[0] : "data/NYCstreettreesdataset-partial.csv");
+		TreeCollection expected = new TreeCollection();
+		NYCStreetTrees.readFile(expected, file);
+		System.out.printf("%,d trees in '%s'\n", expected.getTotalNumberOfTrees(), file);
+
+		File directory = Files.createTempDirectory("wal").toFile();
+		try {
+			checkImport(file, expected, new File(directory, "import"));
+			checkInterruptedImport(file, expected, new File(directory, "crash"));
+			checkRecovery(new File(directory, "import"));
+			for (int threads : new int[] {1, 4, 16, 64})
+				throughput(new File(directory, "forced-" + threads), threads, true);
+			throughput(new File(directory, "unforced"), 16, false);
+		}
+		finally {
+			delete(directory);
+		}
+
+		System.out.println((failures == 0) ? "All checks passed." : failures + " check(s) failed.");
+		System.exit((failures == 0) ? 0 : 1);
+	}
+
+	private static void check(boolean passed, String description) {
+		System.out.println((passed ? "ok     " : "FAILED ") + description);
+		if (!passed)
+			failures++;
+	}
+
+	// a first start imports the file, a second one only recovers it
+	private static void checkImport(File file, TreeCollection expected, File directory) throws IOException {
+		long start = System.nanoTime();
+		DurableTreeCollection durable = NYCStreetTrees.openDurable(file, directory);
+		long nanos = System.nanoTime() - start;
+		check(same(durable, expected), String.format("import: %,d trees in %,d ms, %,d commits",
+				durable.getTotalNumberOfTrees(), nanos / 1000000, durable.getSyncs()));
+		durable.close();
+
+		durable = NYCStreetTrees.openDurable(file, directory);
+		check(same(durable, expected) && durable.getRecordsWritten() == 0,
+				String.format("restart: %,d trees recovered, %,d records written",
+						durable.getTotalNumberOfTrees(), durable.getRecordsWritten()));
+		durable.close();
+	}
+
+	// the first half of the file is committed and the program stops before the
+	// import ends, as in a crash: the next start must finish the import
+	private static void checkInterruptedImport(File file, TreeCollection expected, File directory)
+			throws IOException {
+		List<Tree> trees = parse(file);
+		DurableTreeCollection durable = new DurableTreeCollection(directory);
+		List<Tree> half = trees.subList(0, trees.size() / 2);
+		for (int from=0; from<half.size(); from+=BATCH)
+			durable.addAll(half.subList(from, Math.min(from + BATCH, half.size())));
+		int committed = durable.getTotalNumberOfTrees();
+		durable.close();
+
+		durable = NYCStreetTrees.openDurable(file, directory);
+		check(same(durable, expected), String.format("import cut short after %,d trees: %,d trees after the restart",
+				committed, durable.getTotalNumberOfTrees()));
+		durable.close();
+	}
+
+	// recovery from the checkpoint alone, then with TAIL records to replay
+	private static void checkRecovery(File directory) throws IOException {
+		DurableTreeCollection durable = new DurableTreeCollection(directory);
+		int trees = durable.getTotalNumberOfTrees();
+		System.out.print("   " + durable.report().replace("\n", "\n   ").trim() + "\n");
+		ArrayList<Tree> added = new ArrayList<Tree>();
+		for (int i=0; i<TAIL; i++)
+			added.add(generate(i));
+		durable.addAll(added);
+		durable.close();
+
+		durable = new DurableTreeCollection(directory);
+		check(durable.getTotalNumberOfTrees() == trees + TAIL && durable.getReplayedRecords() == TAIL,
+				String.format("recovery: %,d trees from the checkpoint and %,d log records in %,d ms",
+						durable.getCheckpointTrees(), durable.getReplayedRecords(),
+						durable.getRecoveryNanos() / 1000000));
+		durable.close();
+	}
+
+	// ADDS single adds split between the threads, each one committed before it returns
+	private static void throughput(File directory, int threads, boolean force) throws Exception {
+		DurableTreeCollection durable = new DurableTreeCollection(directory, force, 0);
+		int perThread = ADDS / threads;
+		Thread[] writers = new Thread[threads];
+		Exception[] failure = new Exception[1];
+		long start = System.nanoTime();
+		for (int k=0; k<threads; k++) {
+			int first = k * perThread;
+			writers[k] = new Thread(() -> {
+				try {
+					for (int i=0; i<perThread; i++)
+						durable.add(generate(first + i));
+				}
+				catch (IOException e) {
+					synchronized (failure) {
+						failure[0] = e;
+					}
+				}
+			});
+			writers[k].start();
+		}
+		for (Thread writer : writers)
+			writer.join();
+		long nanos = System.nanoTime() - start;
+		if (failure[0] != null)
+			throw failure[0];
+		check(durable.getTotalNumberOfTrees() == threads * perThread, String.format(
+				"%2d thread(s)%s: %,d adds in %,d ms, %,.0f adds/s, %,d commits", threads,
+				force ? ", forced" : ", not forced", threads * perThread, nanos / 1000000,
+				threads * perThread / (nanos / 1e9), durable.getSyncs()));
+		durable.close();
+	}
+
+	private static List<Tree> parse(File file) throws IOException {
+		ArrayList<Tree> trees = new ArrayList<Tree>();
+		Scanner info = new Scanner(file);
+		while (info.hasNextLine()) {
+			Tree t = NYCStreetTrees.parseLine(info.nextLine());
+			if (t != null)
+				trees.add(t);
+		}
+		info.close();
+		return trees;
+	}
+
+	// the n-th added tree; its id is scrambled, as trees added in id order would make MyBST a list
+	private static Tree generate(int n) {
+		int id = FIRST_ID + (int) ((n * 0x9E3779B1L) & 0x3FFFFFFF); // distinct for n below 2^30
+		return new Tree(id, 10, "alive", "good", "london planetree", 10001, "Manhattan", n % 1000, n % 997);
+	}
+
+	// same totals, borough counts and species counts
+	private static boolean same(TreeCounts a, TreeCounts b) {
+		if (a.getTotalNumberOfTrees() != b.getTotalNumberOfTrees())
+			return false;
+		for (String boro : TreeColumns.BORO) {
+			if (a.getCountByBorough(boro) != b.getCountByBorough(boro))
+				return false;
+		}
+		Collection<String> species = b.getMatchingSpecies("");
+		if (!new ArrayList<String>(a.getMatchingSpecies("")).equals(new ArrayList<String>(species)))
+			return false;
+		for (String name : species) {
+			if (a.getCountByTreeSpecies(name) != b.getCountByTreeSpecies(name))
+				return false;
+		}
+		return true;
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File f : files)
+				delete(f);
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,207 @@
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class estimates the heap retained by a collection of trees, by
+ * category (Tree objects, strings, nodes, arrays, index structures), from
+ * the object layout of the running HotSpot JVM: object headers, reference
+ * size (4 bytes with compressed references, 8 without) and 8-byte
+ * alignment. Strings use the compact layout (one byte per character when
+ * every character fits in Latin-1).
+ *
+ * Strings are counted once per instance. Instances with the same contents
+ * are reported as duplicated: that is the memory that deduplicating or
+ * interning the strings (e.g. the repeated status, health, species and
+ * borough values of every row) would save.
+ */
+public class MemoryFootprint {
+
+	// layout of the running JVM
+	public static final boolean COMPRESSED_OOPS = compressedOops();
+	public static final int REFERENCE = COMPRESSED_OOPS ? 4 : 8;
+	public static final int HEADER = COMPRESSED_OOPS ? 12 : 16; // mark word and class pointer
+	public static final int ARRAY_HEADER = HEADER + 4; // plus the length
+
+	// private data fields
+	private final String name;
+	private final LinkedHashMap<String, Long> categories = new LinkedHashMap<String, Long>();
+	private final IdentityHashMap<String, Boolean> strings = new IdentityHashMap<String, Boolean>();
+	private final HashMap<String, Integer> contents = new HashMap<String, Integer>(); // instances per contents
+	private long duplicateBytes;
+	private int trees;
+
+	/**
+	 * Constructor for an empty estimate.
+	 *
+	 * @param the name of the structure being measured
+	 */
+	public MemoryFootprint(String name) {
+		this.name = name;
+	}
+
+	private static boolean compressedOops() {
+		try {
+			return Boolean.parseBoolean(ManagementFactory.getPlatformMXBean(
+					com.sun.management.HotSpotDiagnosticMXBean.class).getVMOption("UseCompressedOops").getValue());
+		}
+		catch (RuntimeException | LinkageError e) {
+			// not HotSpot: compressed references are the default below 32 GB of heap
+			return Runtime.getRuntime().maxMemory() < (32L << 30);
+		}
+	}
+
+	/**
+	 * Returns the size of an object with the given fields, including the
+	 * header and the alignment padding.
+	 *
+	 * @param the number of reference fields and the bytes of primitive fields
+	 * @return number of bytes
+	 */
+	public static long objectSize(int references, int primitiveBytes) {
+		return align(HEADER + (long) references * REFERENCE + primitiveBytes);
+	}
+
+	/**
+	 * Returns the size of an array.
+	 *
+	 * @param the length of the array and the size of an element in bytes
+	 * (REFERENCE for an array of objects)
+	 * @return number of bytes
+	 */
+	public static long arraySize(int length, int elementBytes) {
+		return align(ARRAY_HEADER + (long) length * elementBytes);
+	}
+
+	/**
+	 * Returns the size of a string and its character array.
+	 *
+	 * @param the string
+	 * @return number of bytes
+	 */
+	public static long stringSize(String s) {
+		boolean latin1 = true;
+		for (int i=0; i<s.length() && latin1; i++)
+			latin1 = s.charAt(i) <= 0xff;
+		// value, hash, coder and hashIsZero
+		return objectSize(1, 6) + arraySize(s.length(), latin1 ? 1 : 2);
+	}
+
+	/**
+	 * Returns the size of an ArrayList (or of a HashMap or HashSet) with the
+	 * given number of elements, not counting the elements themselves.
+	 *
+	 * @param the number of elements
+	 * @return number of bytes
+	 */
+	public static long arrayListSize(int size) {
+		return objectSize(1, 8) + arraySize(size, REFERENCE); // the capacity is at least the size
+	}
+	public static long hashMapSize(int size) {
+		int table = 16;
+		while (table * 0.75 < size)
+			table *= 2;
+		// map object, table and one node (hash, key, value, next) per entry
+		return objectSize(4, 16) + arraySize(table, REFERENCE) + (long) size * objectSize(3, 4);
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	/**
+	 * Adds the Tree objects and their strings.
+	 *
+	 * @param the trees
+	 */
+	public void addTrees(Iterable<Tree> trees) {
+		long bytes = 0;
+		for (Tree t : trees) {
+			// tree_id, tree_dbh, zip, x_sp, y_sp and four strings
+			bytes += objectSize(4, 3 * 4 + 2 * 8);
+			addString(t.getStatus());
+			addString(t.getHealth());
+			addString(t.getSpeciesName());
+			addString(t.getBoro());
+			this.trees++;
+		}
+		add("Tree objects", bytes);
+	}
+
+	/**
+	 * Adds a string, unless this very instance has already been counted.
+	 *
+	 * @param the string, may be null
+	 */
+	public void addString(String s) {
+		if (s == null || strings.put(s, Boolean.TRUE) != null)
+			return; // shared with an object counted before
+		long size = stringSize(s);
+		add("Strings", size);
+		Integer copies = contents.get(s);
+		if (copies != null)
+			duplicateBytes += size; // same contents as a string counted before
+		contents.put(s, (copies == null) ? 1 : copies + 1);
+	}
+
+	/**
+	 * Adds bytes to a category, e.g. "BST nodes" or "Index overhead".
+	 *
+	 * @param the category and the number of bytes
+	 */
+	public void add(String category, long bytes) {
+		Long total = categories.get(category);
+		categories.put(category, (total == null) ? bytes : total + bytes);
+	}
+
+	/**
+	 * Getter methods for the results.
+	 *
+	 * @return total bytes, bytes of one category (0 if absent), bytes per tree,
+	 * and the bytes of strings whose contents were already counted
+	 */
+	public long getTotal() {
+		long total = 0;
+		for (long bytes : categories.values())
+			total += bytes;
+		return total;
+	}
+	public long getBytes(String category) {
+		Long bytes = categories.get(category);
+		return (bytes == null) ? 0 : bytes;
+	}
+	public double getBytesPerTree() {
+		return (trees == 0) ? 0 : (double) getTotal() / trees;
+	}
+	public long getDuplicateStringBytes() {
+		return duplicateBytes;
+	}
+
+	/**
+	 * Returns a report with one line per category, the total, and the
+	 * savings of string deduplication.
+	 *
+	 * @return the report
+	 */
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+		str.append(String.format("Memory footprint of %s (%,d trees, %d-byte references, %d-byte headers):\n",
+				name, trees, REFERENCE, HEADER));
+		for (Map.Entry<String, Long> e : categories.entrySet()) {
+			str.append(String.format("   %-20s:%,14d bytes%10.1f per tree\n", e.getKey(), e.getValue(),
+					(trees == 0) ? 0 : (double) e.getValue() / trees));
+		}
+		str.append(String.format("   %-20s:%,14d bytes%10.1f per tree\n", "Total", getTotal(), getBytesPerTree()));
+		long stringBytes = getBytes("Strings");
+		str.append(String.format("   %,d string instances hold %,d distinct values; deduplicating or interning\n"
+				+ "   them would save %,d bytes (%.0f%% of the strings, %.0f%% of the total).\n",
+				strings.size(), contents.size(), duplicateBytes,
+				(stringBytes == 0) ? 0 : 100.0 * duplicateBytes / stringBytes,
+				(getTotal() == 0) ? 0 : 100.0 * duplicateBytes / getTotal()));
+		return str.toString();
+	}
+
+}
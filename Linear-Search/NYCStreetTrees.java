@@ -61,6 +61,12 @@ public class NYCStreetTrees {
 			System.out.print("\nEnter a tree species to learn more about it (\"quit\" to stop): ");
 			choice = in.nextLine();
 			
+			// "footprint" estimates the memory used by the list
+			if (choice.trim().equalsIgnoreCase("footprint")) {
+				System.out.print("\n" + treeList.footprint());
+				continue;
+			}
+			
 			// check if the tree species that user entered exists
 			boolean treeExists = false;
 			if (treeList.getCountByTreeSpecies(choice) > 0) {
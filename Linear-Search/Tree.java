@@ -104,6 +104,10 @@ public class Tree implements Comparable<Tree> {
 		catch (IllegalArgumentException e) {
 			System.err.println("Invalid argument for borough name!");
 		}
+		
+		// state plane coordinates, any value is valid
+		x_sp = x;
+		y_sp = y;
 	}
 	
 	
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.concurrent.Flow;
 
 /**
  * This class inherits from the ArrayList<Tree> class and performs getter methods 
@@ -125,6 +126,37 @@ public class TreeList extends ArrayList<Tree> {
 	}
 	
 	
+	/**
+	 * Returns a publisher of the Tree objects in the list whose species matches
+	 * speciesName (case insensitive), in the order of the list. The list is
+	 * scanned as the subscribers request trees (see TreePublisher), so no list
+	 * of results is built, however many trees match. The list must not be
+	 * modified while a subscription is active.
+	 * 
+	 * @param string 'speciesName' representing the tree species, cannot be null
+	 * @return publisher of the matching trees, to any number of subscribers
+	 */
+	public Flow.Publisher<Tree> publishBySpecies(String speciesName) {
+		String name = speciesName.toLowerCase();
+		return new TreePublisher(() -> stream()
+				.filter(t -> t.getSpeciesName().toLowerCase().contains(name)).iterator());
+	}
+	
+	
+	/**
+	 * Estimates the heap retained by this list (see MemoryFootprint): the
+	 * trees, their strings and the backing array of the list.
+	 * 
+	 * @return the estimate, by category
+	 */
+	public MemoryFootprint footprint() {
+		MemoryFootprint footprint = new MemoryFootprint("TreeList");
+		footprint.addTrees(this);
+		footprint.add("Arrays", MemoryFootprint.arrayListSize(size()));
+		return footprint;
+	}
+	
+	
 	/**
 	 * Overrides the toString method to display the total number of trees
 	 * stored in this list as a string.